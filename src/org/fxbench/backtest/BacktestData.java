@@ -0,0 +1,154 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.backtest;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.fxbench.chart.Dataset;
+import org.fxbench.chart.ta.Indicator;
+import org.fxbench.entity.TPriceBar;
+import org.fxbench.entity.TPriceBar.Interval;
+import org.fxbench.util.properties.Property;
+import org.fxbench.util.properties.PropertySheet;
+import org.fxbench.util.properties.TemplateManager;
+
+/**
+ * Bars replayed by a backtest and the indicators calculated over them.<br>
+ * Shared read only by all the runs of a sweep: an indicator with the same parameters,
+ * e.g. the fast EMA of every stop distance, is calculated once for the whole sweep.
+ */
+public class BacktestData
+{
+	private final String symbol;
+	private final Interval interval;
+	private final double pointSize;
+	private final Dataset askDataset;
+	private final Dataset bidDataset;
+	private final ConcurrentMap<String, FutureTask<double[][]>> indicators;
+
+	public BacktestData(String symbol, Interval interval, double pointSize, List<TPriceBar> priceBarList) {
+		this.symbol = symbol;
+		this.interval = interval;
+		this.pointSize = pointSize;
+		this.askDataset = Dataset.valueOf(priceBarList);
+		this.bidDataset = Dataset.valueOfB(priceBarList);
+		this.indicators = new ConcurrentHashMap<String, FutureTask<double[][]>>();
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public Interval getInterval() {
+		return interval;
+	}
+
+	public double getPointSize() {
+		return pointSize;
+	}
+
+	public int getSize() {
+		return askDataset.getSize();
+	}
+
+	public long getTimeAt(int index) {
+		return askDataset.getTimeAt(index);
+	}
+
+	public Dataset getAskDataset() {
+		return askDataset;
+	}
+
+	public Dataset getBidDataset() {
+		return bidDataset;
+	}
+
+	//A copy of the overlay or indicator template of the chart, null if there is none
+	public static PropertySheet getTemplate(String title) {
+		TemplateManager templateManager = TemplateManager.getInstance();
+		PropertySheet propSheet = findTemplate(templateManager.getOverlayPropSheets(), title);
+		if (propSheet == null) {
+			propSheet = findTemplate(templateManager.getIndicatorPropSheets(), title);
+		}
+		return propSheet == null ? null : propSheet.clone();
+	}
+
+	private static PropertySheet findTemplate(List<PropertySheet> propSheets, String title) {
+		if (propSheets != null) {
+			for (PropertySheet propSheet : propSheets) {
+				if (propSheet.getTitle().equals(title)) {
+					return propSheet;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Values of an indicator over the bid or ask prices, calculated by the first run asking for them.
+	 * Undefined values are 0.
+	 * @return one array per output of the indicator, shared, never to be changed
+	 */
+	public double[][] getIndicator(final PropertySheet propSheet, boolean bid) {
+		final Dataset dataset = bid ? bidDataset : askDataset;
+		String key = getKey(propSheet, bid);
+		FutureTask<double[][]> task = indicators.get(key);
+		if (task == null) {
+			FutureTask<double[][]> newTask = new FutureTask<double[][]>(new Callable<double[][]>() {
+				public double[][] call() {
+					//The derived price column of a dataset is shared by its indicators
+					synchronized (dataset) {
+						return Indicator.calculate(propSheet, dataset);
+					}
+				}
+			});
+			task = indicators.putIfAbsent(key, newTask);
+			if (task == null) {
+				task = newTask;
+				task.run();
+			}
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static String getKey(PropertySheet propSheet, boolean bid) {
+		StringBuilder sb = new StringBuilder(64);
+		sb.append(bid ? 'B' : 'A').append('|').append(propSheet.getTitle());
+		for (Property property : propSheet.getPropertyList()) {
+			Object value = property.getValue();
+			if (value instanceof Color || value instanceof Font) {
+				continue;
+			}
+			sb.append('|').append(property.getId()).append('=').append(value);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,142 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.backtest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.fxbench.entity.TPriceBar;
+import org.fxbench.entity.TPriceBar.Interval;
+import org.fxbench.trader.local.DataReader;
+
+/**
+ * Replays local history through strategies.<br>
+ * The combinations of a parameter grid run in parallel on a fork-join pool, each on its
+ * own strategy instance and SimAccount; the bars and the indicators calculated over them
+ * are shared by all of them.
+ */
+public class BacktestEngine
+{
+	private final static Log logger = LogFactory.getLog(BacktestEngine.class);
+
+	private final ForkJoinPool pool;
+
+	public BacktestEngine() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public BacktestEngine(int parallelism) {
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Reads the bars of symbol from startDate to endDate in the local data files.
+	 * @param pointSize size of a pip, e.g. 0.0001 or 0.01 for the JPY crosses
+	 */
+	public static BacktestData load(String dataPath, String symbol, Interval interval,
+			Date startDate, Date endDate, double pointSize) {
+		List<TPriceBar> priceBarList = DataReader.readRange(dataPath, symbol, interval, startDate, endDate);
+		return new BacktestData(symbol, interval, pointSize, priceBarList);
+	}
+
+	//Runs one combination on the calling thread
+	public BacktestResult run(BacktestData history, Strategy.Factory factory, Parameters params) {
+		return run(history, factory, params, "BT");
+	}
+
+	/**
+	 * Runs every combination of grid.
+	 * @return the results in the order of the grid, without the runs that have failed
+	 */
+	public List<BacktestResult> run(BacktestData history, Strategy.Factory factory, ParameterGrid grid) {
+		int size = grid.size();
+		BacktestResult[] results = new BacktestResult[size];
+		int threshold = Math.max(1, size / (pool.getParallelism() * 8));
+		pool.invoke(new SweepTask(history, factory, grid, results, 0, size, threshold));
+		List<BacktestResult> resultList = new ArrayList<BacktestResult>(size);
+		for (BacktestResult result : results) {
+			if (result != null) {
+				resultList.add(result);
+			}
+		}
+		return resultList;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private static BacktestResult run(BacktestData history, Strategy.Factory factory, Parameters params, String accountId) {
+		Strategy strategy = factory.newStrategy();
+		SimAccount account = new SimAccount(accountId, history, strategy.getName());
+		strategy.start(history, params);
+		int size = history.getSize();
+		for (int i = 0; i < size; i++) {
+			account.moveTo(i);
+			strategy.onBar(i, account);
+		}
+		account.closeAll();
+		return new BacktestResult(params, account);
+	}
+
+	//Splits the combinations in halves down to threshold combinations per task
+	private static class SweepTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final BacktestData history;
+		private final Strategy.Factory factory;
+		private final ParameterGrid grid;
+		private final BacktestResult[] results;
+		private final int begin;
+		private final int end;
+		private final int threshold;
+
+		private SweepTask(BacktestData history, Strategy.Factory factory, ParameterGrid grid,
+				BacktestResult[] results, int begin, int end, int threshold) {
+			this.history = history;
+			this.factory = factory;
+			this.grid = grid;
+			this.results = results;
+			this.begin = begin;
+			this.end = end;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - begin <= threshold) {
+				for (int i = begin; i < end; i++) {
+					try {
+						results[i] = run(history, factory, grid.get(i), "BT" + (i + 1));
+					} catch (RuntimeException e) {
+						logger.error(grid.get(i) + ": " + e.getMessage());
+					}
+				}
+			} else {
+				int middle = (begin + end) >>> 1;
+				invokeAll(new SweepTask(history, factory, grid, results, begin, middle, threshold),
+						new SweepTask(history, factory, grid, results, middle, end, threshold));
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.backtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fxbench.desk.TradeDesk;
+import org.fxbench.entity.BaseEntity;
+import org.fxbench.entity.TPosition;
+
+/**
+ * Outcome of one combination of parameters: its closed positions and their totals.
+ */
+public class BacktestResult
+{
+	private final Parameters params;
+	private final List<TPosition> positions;
+	private final double pl;
+	private final double grossPL;
+	private final double maxDrawdown;
+	private final int winCount;
+
+	BacktestResult(Parameters params, SimAccount account) {
+		this.params = params;
+		this.positions = account.getClosedPositions();
+		this.pl = account.getPL();
+		this.grossPL = account.getGrossPL();
+		this.maxDrawdown = account.getMaxDrawdown();
+		int count = 0;
+		for (TPosition position : positions) {
+			if (position.getPl() > 0) {
+				count++;
+			}
+		}
+		this.winCount = count;
+	}
+
+	public Parameters getParameters() {
+		return params;
+	}
+
+	public List<TPosition> getPositions() {
+		return positions;
+	}
+
+	//P/L in pips
+	public double getPl() {
+		return pl;
+	}
+
+	//P/L in the quote currency
+	public double getGrossPL() {
+		return grossPL;
+	}
+
+	//Largest fall of the P/L in pips
+	public double getMaxDrawdown() {
+		return maxDrawdown;
+	}
+
+	public int getTradeCount() {
+		return positions.size();
+	}
+
+	public int getWinCount() {
+		return winCount;
+	}
+
+	//Adds the positions to the closed positions of the desk, where the charts show them
+	public void load(TradeDesk tradeDesk) {
+		tradeDesk.addClosedPositions(new ArrayList<BaseEntity>(positions));
+	}
+
+	public String toString() {
+		return params + " trades=" + getTradeCount() + " wins=" + winCount +
+			" pl=" + Math.round(pl * 10) / 10.0 + " drawdown=" + Math.round(maxDrawdown * 10) / 10.0;
+	}
+}
@@ -0,0 +1,73 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.backtest;
+
+import org.fxbench.entity.TPosition.BnS;
+import org.fxbench.util.properties.PropertySheet;
+
+/**
+ * Always in the market on the side of the fast EMA against the slow EMA of the bid.<br>
+ * Parameters: fast and slow periods, stop and limit in pips (0 for none), amount in thousands.
+ */
+public class EmaCrossStrategy implements Strategy
+{
+	public static final Strategy.Factory FACTORY = new Strategy.Factory() {
+		public Strategy newStrategy() {
+			return new EmaCrossStrategy();
+		}
+	};
+
+	private double[] fastEma;
+	private double[] slowEma;
+	private double stop;
+	private double limit;
+	private double amount;
+
+	public String getName() {
+		return "EMA_CROSS";
+	}
+
+	public void start(BacktestData history, Parameters params) {
+		fastEma = getEma(history, params.getInt("fast"));
+		slowEma = getEma(history, params.getInt("slow"));
+		stop = params.getDouble("stop", 0);
+		limit = params.getDouble("limit", 0);
+		amount = params.getDouble("amount", 1);
+	}
+
+	private static double[] getEma(BacktestData history, int period) {
+		PropertySheet propSheet = BacktestData.getTemplate("EMA");
+		if (propSheet == null) {
+			throw new IllegalStateException("No EMA template");
+		}
+		propSheet.setProperty("period", Integer.valueOf(period));
+		return history.getIndicator(propSheet, true)[0];
+	}
+
+	public void onBar(int index, SimAccount account) {
+		if (index == 0 || fastEma[index - 1] == 0 || slowEma[index - 1] == 0) {
+			return;
+		}
+		boolean above = fastEma[index] > slowEma[index];
+		boolean wasAbove = fastEma[index - 1] > slowEma[index - 1];
+		if (above == wasAbove) {
+			return;
+		}
+		account.closeAll();
+		account.open(above ? BnS.BUY : BnS.SELL, amount, stop, limit);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.backtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every combination of the values of some parameters, e.g. fast 5..20 x slow 20..60 x stop 10,20,30.
+ * Combinations are numbered and built on demand, a grid of thousands of them takes no memory.
+ */
+public class ParameterGrid
+{
+	private final List<String> names;
+	private final List<double[]> values;
+
+	public ParameterGrid() {
+		names = new ArrayList<String>();
+		values = new ArrayList<double[]>();
+	}
+
+	//Values from, from + step, ... up to to (inclusive)
+	public ParameterGrid add(String name, double from, double to, double step) {
+		if (step <= 0 || to < from) {
+			throw new IllegalArgumentException("Invalid range of " + name);
+		}
+		int count = (int)Math.floor((to - from) / step + 1e-9) + 1;
+		double[] range = new double[count];
+		for (int i = 0; i < count; i++) {
+			range[i] = from + i * step;
+		}
+		return add(name, range);
+	}
+
+	public ParameterGrid add(String name, double... list) {
+		if (list.length == 0 || names.contains(name)) {
+			throw new IllegalArgumentException("Invalid values of " + name);
+		}
+		names.add(name);
+		values.add(list.clone());
+		return this;
+	}
+
+	public int size() {
+		int size = 1;
+		for (double[] list : values) {
+			size *= list.length;
+		}
+		return size;
+	}
+
+	//The index-th combination, the last parameter varies fastest
+	public Parameters get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Combination " + index + " of " + size());
+		}
+		Map<String, Double> params = new LinkedHashMap<String, Double>();
+		double[] combination = new double[names.size()];
+		for (int i = names.size() - 1; i >= 0; i--) {
+			double[] list = values.get(i);
+			combination[i] = list[index % list.length];
+			index /= list.length;
+		}
+		for (int i = 0; i < names.size(); i++) {
+			params.put(names.get(i), combination[i]);
+		}
+		return new Parameters(params);
+	}
+}
@@ -0,0 +1,91 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.backtest;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named numeric parameters of one run of a strategy, e.g. fast=10 slow=30 stop=25.
+ * Immutable once built by ParameterGrid.
+ */
+public class Parameters
+{
+	private final Map<String, Double> values;
+
+	public Parameters() {
+		values = new LinkedHashMap<String, Double>();
+	}
+
+	Parameters(Map<String, Double> values) {
+		this.values = values;
+	}
+
+	public Parameters with(String name, double value) {
+		Map<String, Double> newValues = new LinkedHashMap<String, Double>(values);
+		newValues.put(name, value);
+		return new Parameters(newValues);
+	}
+
+	public boolean contains(String name) {
+		return values.containsKey(name);
+	}
+
+	public double getDouble(String name) {
+		Double value = values.get(name);
+		if (value == null) {
+			throw new IllegalArgumentException("Unknown parameter " + name);
+		}
+		return value;
+	}
+
+	public double getDouble(String name, double defaultValue) {
+		Double value = values.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+	public int getInt(String name) {
+		return (int)Math.round(getDouble(name));
+	}
+
+	public int getInt(String name, int defaultValue) {
+		Double value = values.get(name);
+		return value == null ? defaultValue : (int)Math.round(value);
+	}
+
+	public Map<String, Double> getValues() {
+		return Collections.unmodifiableMap(values);
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Double> entry : values.entrySet()) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			double value = entry.getValue();
+			sb.append(entry.getKey()).append('=');
+			if (value == Math.rint(value)) {
+				sb.append((long)value);
+			} else {
+				sb.append(value);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,265 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.backtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fxbench.chart.DataItem.PriceType;
+import org.fxbench.entity.TPosition;
+import org.fxbench.entity.TPosition.BnS;
+
+/**
+ * Account of one backtest run.<br>
+ * Market orders are filled at the close of the current bar, buys at the ask and sells at
+ * the bid. Stops and limits are filled from the next bar on at their price, or at the open
+ * of a bar gapping through them; when a bar reaches both, the stop is filled.<br>
+ * P/L is in pips and in the quote currency, there is no conversion to an account currency.
+ */
+public class SimAccount
+{
+	private static final AtomicInteger runCount = new AtomicInteger();
+
+	private final String accountId;
+	private final String tradeIdPrefix;	//Trade ids are unique across the runs of a session
+	private final BacktestData history;
+	private final String tradeMethodName;
+	private final double[] askOpens, askHighs, askLows, askCloses;
+	private final double[] bidOpens, bidHighs, bidLows, bidCloses;
+	private final List<SimPosition> openPositions;
+	private final List<TPosition> closedPositions;
+	private int index;			//Current bar
+	private int tradeCount;
+	private double pl;			//Pips of the closed positions
+	private double grossPL;
+	private double peakPL;
+	private double maxDrawdown;	//In pips, from the highest closed P/L
+
+	public SimAccount(String accountId, BacktestData history, String tradeMethodName) {
+		this.accountId = accountId;
+		this.tradeIdPrefix = accountId + "-" + runCount.incrementAndGet() + "-";
+		this.history = history;
+		this.tradeMethodName = tradeMethodName;
+		askOpens = history.getAskDataset().getPriceColumn(PriceType.Open);
+		askHighs = history.getAskDataset().getPriceColumn(PriceType.High);
+		askLows = history.getAskDataset().getPriceColumn(PriceType.Low);
+		askCloses = history.getAskDataset().getPriceColumn(PriceType.Close);
+		bidOpens = history.getBidDataset().getPriceColumn(PriceType.Open);
+		bidHighs = history.getBidDataset().getPriceColumn(PriceType.High);
+		bidLows = history.getBidDataset().getPriceColumn(PriceType.Low);
+		bidCloses = history.getBidDataset().getPriceColumn(PriceType.Close);
+		openPositions = new ArrayList<SimPosition>();
+		closedPositions = new ArrayList<TPosition>();
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Opens a position at the close of the current bar.
+	 * @param amount in thousands, like the amounts of the positions
+	 * @param stopPips distance of the stop, 0 for none
+	 * @param limitPips distance of the limit, 0 for none
+	 */
+	public SimPosition open(BnS bs, double amount, double stopPips, double limitPips) {
+		double pointSize = history.getPointSize();
+		double price = bs == BnS.BUY ? askCloses[index] : bidCloses[index];
+		int sign = bs == BnS.BUY ? 1 : -1;
+		SimPosition position = new SimPosition(++tradeCount, bs, amount, price, index);
+		position.stop = stopPips > 0 ? price - sign * stopPips * pointSize : 0;
+		position.limit = limitPips > 0 ? price + sign * limitPips * pointSize : 0;
+		openPositions.add(position);
+		return position;
+	}
+
+	public SimPosition buy(double amount, double stopPips, double limitPips) {
+		return open(BnS.BUY, amount, stopPips, limitPips);
+	}
+
+	public SimPosition sell(double amount, double stopPips, double limitPips) {
+		return open(BnS.SELL, amount, stopPips, limitPips);
+	}
+
+	//Closes a position at the close of the current bar
+	public void close(SimPosition position) {
+		if (openPositions.remove(position)) {
+			close(position, position.isBuy() ? bidCloses[index] : askCloses[index]);
+		}
+	}
+
+	public void closeAll() {
+		while (!openPositions.isEmpty()) {
+			close(openPositions.get(0));
+		}
+	}
+
+	public List<SimPosition> getOpenPositions() {
+		return Collections.unmodifiableList(openPositions);
+	}
+
+	//Net amount of the open positions, positive when long
+	public double getNetAmount() {
+		double amount = 0;
+		for (SimPosition position : openPositions) {
+			amount += position.isBuy() ? position.amount : -position.amount;
+		}
+		return amount;
+	}
+
+	public List<TPosition> getClosedPositions() {
+		return closedPositions;
+	}
+
+	public double getPL() {
+		return pl;
+	}
+
+	public double getGrossPL() {
+		return grossPL;
+	}
+
+	public double getMaxDrawdown() {
+		return maxDrawdown;
+	}
+
+	//Moves to bar index, filling the stops and limits it reaches
+	void moveTo(int index) {
+		this.index = index;
+		for (Iterator<SimPosition> it = openPositions.iterator(); it.hasNext();) {
+			SimPosition position = it.next();
+			if (position.openIndex == index) {
+				continue;
+			}
+			double open, high, low;
+			if (position.isBuy()) {
+				open = bidOpens[index];
+				high = bidHighs[index];
+				low = bidLows[index];
+			} else {
+				open = askOpens[index];
+				high = askHighs[index];
+				low = askLows[index];
+			}
+			double fill = 0;
+			if (position.isBuy()) {
+				if (position.stop > 0 && low <= position.stop) {
+					fill = Math.min(open, position.stop);
+				} else if (position.limit > 0 && high >= position.limit) {
+					fill = Math.max(open, position.limit);
+				}
+			} else {
+				if (position.stop > 0 && high >= position.stop) {
+					fill = Math.max(open, position.stop);
+				} else if (position.limit > 0 && low <= position.limit) {
+					fill = Math.min(open, position.limit);
+				}
+			}
+			if (fill > 0) {
+				position.track(Math.min(low, fill), Math.max(high, fill));
+				it.remove();
+				close(position, fill);
+			} else {
+				position.track(low, high);
+			}
+		}
+	}
+
+	private void close(SimPosition position, double price) {
+		int sign = position.isBuy() ? 1 : -1;
+		double positionPL = sign * (price - position.open) / history.getPointSize();
+		double positionGrossPL = sign * (price - position.open) * position.amount * 1000;
+		position.track(price, price);
+		pl += positionPL;
+		grossPL += positionGrossPL;
+		peakPL = Math.max(peakPL, pl);
+		maxDrawdown = Math.max(maxDrawdown, peakPL - pl);
+		closedPositions.add(TPosition.valueOf(tradeIdPrefix + position.tradeId, accountId, history.getSymbol(),
+				position.amount, position.bs, position.open, price, position.stop, position.limit,
+				position.high, position.low, positionPL, positionGrossPL,
+				new Date(history.getTimeAt(position.openIndex)), new Date(history.getTimeAt(index)),
+				history.getInterval().name(), tradeMethodName));
+	}
+
+	public static class SimPosition
+	{
+		private final int tradeId;
+		private final BnS bs;
+		private final double amount;
+		private final double open;
+		private final int openIndex;
+		private double stop;
+		private double limit;
+		private double high;	//Extremes of the closing price while open
+		private double low;
+
+		private SimPosition(int tradeId, BnS bs, double amount, double open, int openIndex) {
+			this.tradeId = tradeId;
+			this.bs = bs;
+			this.amount = amount;
+			this.open = open;
+			this.openIndex = openIndex;
+			this.high = open;
+			this.low = open;
+		}
+
+		private void track(double low, double high) {
+			this.low = Math.min(this.low, low);
+			this.high = Math.max(this.high, high);
+		}
+
+		public boolean isBuy() {
+			return bs == BnS.BUY;
+		}
+
+		public BnS getBS() {
+			return bs;
+		}
+
+		public double getAmount() {
+			return amount;
+		}
+
+		public double getOpen() {
+			return open;
+		}
+
+		public int getOpenIndex() {
+			return openIndex;
+		}
+
+		public double getStop() {
+			return stop;
+		}
+
+		public void setStop(double stop) {
+			this.stop = stop;
+		}
+
+		public double getLimit() {
+			return limit;
+		}
+
+		public void setLimit(double limit) {
+			this.limit = limit;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.backtest;
+
+/**
+ * Trading rules replayed by the BacktestEngine. A strategy instance runs one
+ * combination of parameters on its own SimAccount, it is never shared between threads.
+ */
+public interface Strategy
+{
+	//Name written to the trade method of the positions
+	public String getName();
+
+	/**
+	 * Called once before the first bar, typically to get the indicator
+	 * values from history, which are shared and must not be changed.
+	 */
+	public void start(BacktestData history, Parameters params);
+
+	//Called on the close of every bar, after the stops and limits of the bar are filled
+	public void onBar(int index, SimAccount account);
+
+	public interface Factory
+	{
+		public Strategy newStrategy();
+	}
+}
@@ -0,0 +1,214 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.chart;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Multi-resolution open/high/low/close levels over a dataset, used to draw
+ * zoomed-out charts with at most one candle per pixel column.<br>
+ * The node i of level k merges the bars i * 2^k to (i + 1) * 2^k - 1, level 0 being
+ * the dataset itself. Levels are built on demand, a change of the last bar only
+ * rebuilds the last node of each level.<br>
+ * Not thread safe, used on the event dispatch thread.
+ */
+public class BarPyramid
+{
+	private Dataset dataset;
+	private int datasetSize;
+	private int datasetVersion;
+	private final List<Level> levels;	//levels.get(k - 1) is level k
+
+	public BarPyramid() {
+		levels = new ArrayList<Level>();
+	}
+
+	/**
+	 * Brings the pyramid up to date with the dataset, a change of the last bar
+	 * of the same dataset is merged incrementally, anything else rebuilds it.
+	 */
+	public void update(Dataset dataset) {
+		if (dataset != this.dataset || dataset == null || dataset.getSize() != datasetSize) {
+			this.dataset = dataset;
+			levels.clear();
+		} else if (dataset.getVersion() != datasetVersion) {
+			for (int k = 1; k <= levels.size(); k++) {
+				mergeNode(k, (datasetSize - 1) >> k);
+			}
+		}
+		datasetSize = dataset == null ? 0 : dataset.getSize();
+		datasetVersion = dataset == null ? 0 : dataset.getVersion();
+	}
+
+	public Dataset getDataset() {
+		return dataset;
+	}
+
+	//Lowest level whose nodes are at least one pixel wide at scaleX pixels per bar
+	public static int getLevel(double scaleX) {
+		int level = 0;
+		while (scaleX > 0 && scaleX * (1 << level) < 1 && level < 30) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Bars from beginPos to endPos (exclusive) merged into the nodes of level,
+	 * the first node starts at the node boundary at or before beginPos.
+	 * The last node is cut at endPos, so no bar after the viewport is merged into it.
+	 */
+	public Dataset subDataset(int level, int beginPos, int endPos) {
+		if (dataset == null) {
+			return null;
+		}
+		if (level == 0) {
+			return dataset.subDataset(beginPos, endPos);
+		}
+		beginPos = Math.max(0, beginPos);
+		endPos = Math.min(datasetSize, endPos);
+		if (beginPos >= endPos) {
+			return null;
+		}
+		ensureLevel(level);
+		int firstNode = beginPos >> level;
+		int lastNode = (endPos - 1) >> level;
+		Dataset result = new Dataset(lastNode - firstNode + 1);
+		Level nodes = levels.get(level - 1);
+		for (int i = firstNode; i < lastNode; i++) {
+			nodes.addTo(result, i);
+		}
+		int lastBegin = lastNode << level;
+		if (lastBegin + (1 << level) <= endPos || endPos == datasetSize) {
+			nodes.addTo(result, lastNode);
+		} else {
+			addRange(result, lastBegin, endPos);
+		}
+		return result;
+	}
+
+	//Index of the first bar of the node of level containing pos
+	public static int getNodeBegin(int level, int pos) {
+		return (pos >> level) << level;
+	}
+
+	private void ensureLevel(int level) {
+		for (int k = levels.size() + 1; k <= level; k++) {
+			int count = ((datasetSize - 1) >> k) + 1;
+			levels.add(new Level(count));
+			for (int i = 0; i < count; i++) {
+				mergeNode(k, i);
+			}
+		}
+	}
+
+	//Merges the two nodes of the level below into node i of level k
+	private void mergeNode(int k, int i) {
+		Level level = levels.get(k - 1);
+		level.clear(i);
+		int childBegin = i << 1;
+		int childEnd = Math.min(childBegin + 2, k == 1 ? datasetSize : levels.get(k - 2).count);
+		for (int c = childBegin; c < childEnd; c++) {
+			if (k == 1) {
+				if (dataset.isDefined(c)) {
+					level.merge(i, dataset.getTimeAt(c), dataset.getOpenAt(c), dataset.getHighAt(c),
+							dataset.getLowAt(c), dataset.getCloseAt(c));
+				}
+			} else {
+				Level child = levels.get(k - 2);
+				if (child.defined[c]) {
+					level.merge(i, child.times[c], child.opens[c], child.highs[c], child.lows[c], child.closes[c]);
+				}
+			}
+		}
+	}
+
+	//Merges the bars from beginPos to endPos (exclusive) with the largest aligned nodes, O(log n)
+	private void addRange(Dataset result, int beginPos, int endPos) {
+		Level range = new Level(1);
+		int pos = beginPos;
+		while (pos < endPos) {
+			int k = 0;
+			while (k < levels.size() && (pos & ((2 << k) - 1)) == 0 && pos + (2 << k) <= endPos) {
+				k++;
+			}
+			if (k == 0) {
+				if (dataset.isDefined(pos)) {
+					range.merge(0, dataset.getTimeAt(pos), dataset.getOpenAt(pos), dataset.getHighAt(pos),
+							dataset.getLowAt(pos), dataset.getCloseAt(pos));
+				}
+			} else {
+				Level level = levels.get(k - 1);
+				int i = pos >> k;
+				if (level.defined[i]) {
+					range.merge(0, level.times[i], level.opens[i], level.highs[i], level.lows[i], level.closes[i]);
+				}
+			}
+			pos += 1 << k;
+		}
+		range.addTo(result, 0);
+	}
+
+	private static class Level
+	{
+		private final int count;
+		private final long[] times;		//Start time of the first defined bar
+		private final double[] opens;
+		private final double[] highs;
+		private final double[] lows;
+		private final double[] closes;
+		private final boolean[] defined;
+
+		private Level(int count) {
+			this.count = count;
+			times = new long[count];
+			opens = new double[count];
+			highs = new double[count];
+			lows = new double[count];
+			closes = new double[count];
+			defined = new boolean[count];
+		}
+
+		private void clear(int i) {
+			defined[i] = false;
+		}
+
+		//Merges a later bar into node i
+		private void merge(int i, long time, double open, double high, double low, double close) {
+			if (!defined[i]) {
+				times[i] = time;
+				opens[i] = open;
+				highs[i] = high;
+				lows[i] = low;
+				defined[i] = true;
+			} else {
+				highs[i] = Math.max(highs[i], high);
+				lows[i] = Math.min(lows[i], low);
+			}
+			closes[i] = close;
+		}
+
+		private void addTo(Dataset result, int i) {
+			if (defined[i]) {
+				result.addDataItem(times[i], opens[i], highs[i], lows[i], closes[i], 0);
+			} else {
+				result.addDataItem(null);
+			}
+		}
+	}
+}
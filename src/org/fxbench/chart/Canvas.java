@@ -16,6 +16,7 @@
 */
 package org.fxbench.chart;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -28,12 +29,15 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Toolkit;
+import java.awt.Transparency;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 
@@ -87,6 +91,9 @@ public abstract class Canvas extends JPanel
     protected Marker crossYMarker;	//Label indicating the Y coordinate of mouse movement (right side of the panel)
     protected Marker rateMarker;	//Label that immediately reflects rate fluctuations (on the right side of the panel)
     protected String axisYValFormat;//Format to display the Y coordinate of mouse movement
+    
+    private BufferedImage chartLayer;	//Grid, axes and chart, painted again only after invalidateLayer()
+    private boolean chartLayerValid;
   
     public Canvas(ChartPanel panel) {
     	super(new BorderLayout());
@@ -211,15 +218,24 @@ public abstract class Canvas extends JPanel
 		return Double.valueOf(getDimension().width / getAxisXScale()).intValue() + 1;
 	}
 	
+	//Returns a copy, the whole dataset values may still be updated by the chart worker
 	public double[] getVisibleReal(double[] in) {
-    	int visiblePixels = getAxisXVisibleBars();
-    	if (in.length <= visiblePixels || visiblePixels <= 0) {
-    		return in;
-    	} else {
-    		double out[] = new double[visiblePixels];
-    		System.arraycopy(in, in.length - visiblePixels, out, 0, visiblePixels);
-    		return out;
-    	}
+		int visibleBegin = getVisibleBegin(in.length);
+		double out[] = new double[getVisibleEnd(in.length) - visibleBegin];
+		System.arraycopy(in, visibleBegin, out, 0, out.length);
+		return out;
+	}
+	
+	//First visible index of a series of length values over the dataset
+	public int getVisibleBegin(int length) {
+		int visiblePixels = getAxisXVisibleBars();
+		int visibleEnd = getVisibleEnd(length);
+		return visibleEnd <= visiblePixels || visiblePixels <= 0 ? 0 : visibleEnd - visiblePixels;
+	}
+	
+	//Index after the last visible one of a series of length values over the dataset
+	public int getVisibleEnd(int length) {
+		return Math.max(0, Math.min(chartPanel.getVisibleEnd(), length));
 	}
 	
 	public void setMargin(int leftMargin, int topMargin, int rightMargin, int bottomMargin) {
@@ -312,6 +328,18 @@ public abstract class Canvas extends JPanel
 		return Double.valueOf((axisX - leftMargin) / getAxisXScale()).intValue();
 	}
 	    
+	//The chart layer is painted again on the next paint, after a change of the data, the scale or the settings
+	public void invalidateLayer() {
+		chartLayerValid = false;
+	}
+	
+	//A repaint of the canvas itself means its content changed, the crosshair only repaints the chart panel
+	@Override
+	public void repaint(long tm, int x, int y, int width, int height) {
+		chartLayerValid = false;
+		super.repaint(tm, x, y, width, height);
+	}
+	
 	@Override
     public void paint(Graphics g) {
 		super.paint(g);
@@ -319,9 +347,11 @@ public abstract class Canvas extends JPanel
 		Graphics2D g2 = (Graphics2D)g;
 //		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 		
-		drawGrid(g2);
-		drawAxisX(g2);
-		drawAxisY(g2);
+		//Moving the mouse only blits the chart layer and draws the crosshair over it
+		paintChartLayer(g2);
+		if (chartLayer != null) {
+			g2.drawImage(chartLayer, 0, 0, getWidth(), getHeight(), null);
+		}
 		
 		moveRateMark();
 		rateMarker.draw(g2);
@@ -330,10 +360,53 @@ public abstract class Canvas extends JPanel
 		moveCrossYMark();
 		crossYMarker.draw(g2);
 		
-		drawChart(g2);
+		drawCrossLayer(g2);
 		drawCross(g2);
 	}
 	
+	private void paintChartLayer(Graphics2D g2) {
+		if (getWidth() <= 0 || getHeight() <= 0) {
+			return;
+		}
+		//The layer has the device resolution, so it stays sharp on scaled displays
+		AffineTransform transform = g2.getTransform();
+		double scaleX = Math.max(1, transform.getScaleX());
+		double scaleY = Math.max(1, transform.getScaleY());
+		int layerWidth = (int)Math.ceil(getWidth() * scaleX);
+		int layerHeight = (int)Math.ceil(getHeight() * scaleY);
+		if (chartLayer == null || chartLayer.getWidth() != layerWidth || chartLayer.getHeight() != layerHeight) {
+			chartLayer = getGraphicsConfiguration() == null ?
+					new BufferedImage(layerWidth, layerHeight, BufferedImage.TYPE_INT_ARGB) :
+					getGraphicsConfiguration().createCompatibleImage(layerWidth, layerHeight, Transparency.TRANSLUCENT);
+			chartLayerValid = false;
+		}
+		if (chartLayerValid) {
+			return;
+		}
+		Graphics2D lg = chartLayer.createGraphics();
+		try {
+			lg.setComposite(AlphaComposite.Clear);
+			lg.fillRect(0, 0, layerWidth, layerHeight);
+			lg.setComposite(AlphaComposite.SrcOver);
+			lg.setRenderingHints(g2.getRenderingHints());
+			lg.setFont(g2.getFont());
+			lg.setColor(g2.getColor());
+			lg.scale(scaleX, scaleY);
+			
+			drawGrid(lg);
+			drawAxisX(lg);
+			drawAxisY(lg);
+			drawChart(lg);
+		} finally {
+			lg.dispose();
+		}
+		chartLayerValid = true;
+	}
+	
+	//Content that follows the mouse, drawn over the chart layer on every paint
+	protected void drawCrossLayer(Graphics2D g2) {
+	}
+	
 	protected void drawCross(Graphics2D g2) {
 		Rectangle bounds = getBounds();
 //		if (!bounds.contains(crossPoint)) {
@@ -367,7 +440,7 @@ public abstract class Canvas extends JPanel
 			autoScale = false;
 			chartPanel.zoom(Math.signum(e.getUnitsToScroll()) * chartPanel.getZoomXFactor());			
 			axisYScale += (Math.signum(e.getUnitsToScroll()) * getZoomYFactor()); 
-			chartPanel.refresh();
+			chartPanel.refreshView();
 		} else {
 			//WHEEL_BLOCK_SCROLL
 		}
@@ -454,13 +527,18 @@ public abstract class Canvas extends JPanel
 			axisYScale += (Math.signum(shiftY) * getZoomYFactor()); 
 		}
 		mousePressedPos = e.getPoint();	
-		chartPanel.refresh();
+		chartPanel.refreshView();
 	}
 	
 	public abstract void initialize();
 	public abstract void moveCrossXMark();
 	public abstract boolean insideLabel(Point clickPos);
-	public abstract void update(); 
+	
+	//Runs on the chart worker, calculates the indicators over the whole dataset
+	public abstract void calculate(Dataset dataset, boolean tailOnly);
+	//Runs on the event dispatch thread, takes over the calculated values for painting
+	public abstract void publish(Dataset dataset);
+	
 	protected abstract void drawGrid(Graphics2D g2);
 	protected abstract void drawAxisX(Graphics2D g2);
 	protected abstract void drawAxisY(Graphics2D g2);
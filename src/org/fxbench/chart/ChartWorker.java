@@ -0,0 +1,130 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.chart;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.fxbench.ui.panel.ChartPanel;
+
+/**
+ * Calculates the indicators of a chart off the event dispatch thread.<br>
+ * At most one calculation per chart is queued, running or waiting to be published.
+ * Requests arriving in the meantime are coalesced into a single pending one,
+ * so a burst of ticks or mouse events costs one more calculation at most.
+ * The result is published to the event dispatch thread together with the
+ * dataset it was calculated on, so bars and indicators are always painted
+ * from the same snapshot. The chart never changes a dataset it has handed out,
+ * a tick is applied to a copy that replaces it.<br>
+ * A request is one of VIEW, TAIL and FULL, a pending request keeps the widest one.
+ */
+public class ChartWorker
+{
+	private final static Log logger = LogFactory.getLog(ChartWorker.class);
+
+	//Shared by all charts, the queue holds one task per chart at most
+	private final static ExecutorService executor;
+	static {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(
+				threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "ChartWorker-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		executor = pool;
+	}
+
+	public final static int VIEW = 0;	//Only the viewport has moved, the values are published again
+	public final static int TAIL = 1;	//Only the forming bar has changed
+	public final static int FULL = 2;	//Everything is recalculated
+
+	private final ChartPanel chartPanel;
+	private boolean running;	//A calculation is queued, running or waiting to be published
+	private boolean pending;	//A request has arrived since the running calculation was started
+	private int pendingLevel;	//Widest level of the pending requests
+	private Dataset calculatedDataset;	//Dataset of the last calculation
+
+	private final Runnable calculateTask = new Runnable() {
+		public void run() {
+			calculate();
+		}
+	};
+
+	public ChartWorker(ChartPanel chartPanel) {
+		this.chartPanel = chartPanel;
+	}
+
+	public synchronized void request(int level) {
+		pendingLevel = pending ? Math.max(pendingLevel, level) : level;
+		pending = true;
+		if (!running) {
+			running = true;
+			executor.execute(calculateTask);
+		}
+	}
+
+	private void calculate() {
+		int level;
+		synchronized (this) {
+			level = pendingLevel;
+			pending = false;
+		}
+		final Dataset dataset = chartPanel.getDataset();
+		//The calculated values only fit the dataset they were calculated on
+		if (level > VIEW || dataset != calculatedDataset) {
+			try {
+				chartPanel.calculate(dataset, level == TAIL);
+			} catch (Exception e) {
+				logger.error(e.getMessage(), e);
+			}
+			calculatedDataset = dataset;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				try {
+					chartPanel.publish(dataset);
+				} catch (Exception e) {
+					logger.error(e.getMessage(), e);
+				} finally {
+					published();
+				}
+			}
+		});
+	}
+
+	private synchronized void published() {
+		if (pending) {
+			executor.execute(calculateTask);
+		} else {
+			running = false;
+		}
+	}
+}
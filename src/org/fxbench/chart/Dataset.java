@@ -16,8 +16,9 @@
 */
 package org.fxbench.chart;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
@@ -26,6 +27,10 @@ import org.fxbench.entity.TPriceBar;
 import org.fxbench.util.SerialVersion;
 
 /**
+ * Columnar store of chart bars. Time and prices are kept in parallel
+ * primitive arrays so that TA-Lib can read them without copying; the
+ * column getters return the backing arrays and only the first
+ * {@link #getSize()} elements are valid.
  *
  * @author viorel.gheba
  */
@@ -40,208 +45,463 @@ public class Dataset
     public static final String[] LIST = new String[] {
         OPEN, HIGH, LOW, CLOSE
     };
-
-    private List<DataItem> data;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private long[] times;
+    private double[] opens;
+    private double[] highs;
+    private double[] lows;
+    private double[] closes;
+    private double[] volumes;
+    private boolean[] defined;		//false for the empty slots created by EMPTY()
+    private int version;			//incremented on every modification
+    private Object series = new Object();	//shared by the copies made by copy()
+    
+    private PriceType derivedType;	//cache of the last Typical/Median/Weighted column
+    private double[] derived;
+    private int derivedVersion;
+    
+    private long contentHash;		//cache of getContentHash()
+    private int contentHashVersion = -1;
 
     public Dataset() {
-        this.data = new ArrayList<DataItem>();
+    	this(INITIAL_CAPACITY);
+    }
+    
+    public Dataset(int capacity) {
+    	allocate(capacity < 1 ? 1 : capacity);
     }
 
     public Dataset(List<DataItem> list) {
-        data = list;
+    	this(list == null ? 0 : list.size());
+    	if (list != null) {
+    		for (DataItem item : list) {
+    			addDataItem(item);
+    		}
+    	}
+    }
+    
+    private void allocate(int capacity) {
+    	times = new long[capacity];
+    	opens = new double[capacity];
+    	highs = new double[capacity];
+    	lows = new double[capacity];
+    	closes = new double[capacity];
+    	volumes = new double[capacity];
+    	defined = new boolean[capacity];
+    }
+    
+    private void ensureCapacity(int capacity) {
+    	if (capacity <= times.length) {
+    		return;
+    	}
+    	int newCapacity = times.length + (times.length >> 1);
+    	if (newCapacity < capacity) {
+    		newCapacity = capacity;
+    	}
+    	times = Arrays.copyOf(times, newCapacity);
+    	opens = Arrays.copyOf(opens, newCapacity);
+    	highs = Arrays.copyOf(highs, newCapacity);
+    	lows = Arrays.copyOf(lows, newCapacity);
+    	closes = Arrays.copyOf(closes, newCapacity);
+    	volumes = Arrays.copyOf(volumes, newCapacity);
+    	defined = Arrays.copyOf(defined, newCapacity);
+    }
+    
+    private void set(int index, long time, double open, double high, double low, double close, double volume) {
+    	times[index] = time;
+    	opens[index] = open;
+    	highs[index] = high;
+    	lows[index] = low;
+    	closes[index] = close;
+    	volumes[index] = volume;
+    	defined[index] = true;
+    	version++;
+    }
+    
+    private void set(int index, DataItem item) {
+    	if (item == null) {
+    		times[index] = 0;
+    		opens[index] = 0;
+    		highs[index] = 0;
+    		lows[index] = 0;
+    		closes[index] = 0;
+    		volumes[index] = 0;
+    		defined[index] = false;
+    		version++;
+    	} else {
+    		set(index, item.getTime(), item.getOpen(), item.getHigh(), item.getLow(), item.getClose(), item.getVolume());
+    	}
     }
 
+    /**
+     * Copy of the bars, to be changed instead of this dataset while it may be read by
+     * another thread. The copy belongs to the same series as this dataset.
+     */
+    public Dataset copy() {
+    	Dataset dataset = new Dataset(size);
+    	System.arraycopy(times, 0, dataset.times, 0, size);
+    	System.arraycopy(opens, 0, dataset.opens, 0, size);
+    	System.arraycopy(highs, 0, dataset.highs, 0, size);
+    	System.arraycopy(lows, 0, dataset.lows, 0, size);
+    	System.arraycopy(closes, 0, dataset.closes, 0, size);
+    	System.arraycopy(volumes, 0, dataset.volumes, 0, size);
+    	System.arraycopy(defined, 0, dataset.defined, 0, size);
+    	dataset.size = size;
+    	dataset.version = version;
+    	dataset.series = series;
+    	dataset.contentHash = contentHash;
+    	dataset.contentHashVersion = contentHashVersion;
+    	return dataset;
+    }
+    
+    /**
+     * Hash of all the bars, recalculated once per version. Equal bars have the same hash
+     * whatever the dataset holding them, unlike the version which is per dataset.
+     */
+    public long getContentHash() {
+    	if (contentHashVersion != version) {
+    		long hash = size;
+    		for (int i = 0; i < size; i++) {
+    			hash = 31 * hash + times[i];
+    			hash = 31 * hash + Double.doubleToLongBits(opens[i]);
+    			hash = 31 * hash + Double.doubleToLongBits(highs[i]);
+    			hash = 31 * hash + Double.doubleToLongBits(lows[i]);
+    			hash = 31 * hash + Double.doubleToLongBits(closes[i]);
+    			hash = 31 * hash + Double.doubleToLongBits(volumes[i]);
+    			hash = 31 * hash + (defined[i] ? 1 : 0);
+    		}
+    		contentHash = hash;
+    		contentHashVersion = version;
+    	}
+    	return contentHash;
+    }
+    
+    //True if dataset is this dataset or a copy of the same series
+    public boolean isSameSeries(Dataset dataset) {
+    	return dataset != null && dataset.series == series;
+    }
+    
     public boolean isNull() {
-        return (data == null);
+        return false;
     }
 
     public boolean isEmpty() {
-        return data.isEmpty();
+        return size == 0;
     }
     
     public int getSize() {
-    	return isNull() ? 0 : data.size();
+    	return size;
+    }
+    
+    public int getVersion() {
+    	return version;
     }
     
     public void clear() {
-    	data.clear();
+    	Arrays.fill(defined, 0, size, false);
+    	size = 0;
+    	version++;
     }
 
     public void sort() {
-		Collections.sort(data);
+    	boolean sorted = true;
+    	for (int i = 1; i < size && sorted; i++) {
+    		sorted = times[i - 1] <= times[i];
+    	}
+    	if (sorted) {
+    		return;
+    	}
+    	Integer[] order = new Integer[size];
+    	for (int i = 0; i < size; i++) {
+    		order[i] = Integer.valueOf(i);
+    	}
+    	final long[] keys = times;
+    	Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				long t1 = keys[i1.intValue()];
+				long t2 = keys[i2.intValue()];
+				return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+			}
+    	});
+    	Dataset sortedDataset = new Dataset(size);
+    	for (int i = 0; i < size; i++) {
+    		int j = order[i].intValue();
+    		sortedDataset.set(i, times[j], opens[j], highs[j], lows[j], closes[j], volumes[j]);
+    		sortedDataset.defined[i] = defined[j];
+    	}
+    	times = sortedDataset.times;
+    	opens = sortedDataset.opens;
+    	highs = sortedDataset.highs;
+    	lows = sortedDataset.lows;
+    	closes = sortedDataset.closes;
+    	volumes = sortedDataset.volumes;
+    	defined = sortedDataset.defined;
+    	version++;
     }
 
     public int getItemsCount() {
-        return data.size();
+        return size;
     }
 
     public int getLastIndex() {
-		int index = data.size() - 1;
+		int index = size - 1;
         return index < 0 ? 0 : index;
     }
 
+    //Index of the last bar starting at or before time, -1 if there is none
+    public int floorIndex(long time) {
+    	int low = 0;
+    	int high = size;
+    	while (low < high) {
+    		int mid = (low + high) >>> 1;
+    		if (times[mid] <= time) {
+    			low = mid + 1;
+    		} else {
+    			high = mid;
+    		}
+    	}
+    	return low - 1;
+    }
+
+    /**
+     * Read-only view of the bars. Each element is created on access,
+     * use the column getters in loops.
+     */
     public List<DataItem> getDataItems() {
-        return data;
+        return new AbstractList<DataItem>() {
+			@Override
+			public DataItem get(int index) {
+				if (index < 0 || index >= size) {
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+				}
+				return getDataItem(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+        };
     }
 
+    public boolean isDefined(int index) {
+    	return index >= 0 && index < size && defined[index];
+    }
+    
     public DataItem getDataItem(int index) {
-        return index >= 0 && index < data.size() ? data.get(index) : null;
+        return isDefined(index) ?
+        	new DataItem(times[index], opens[index], highs[index], lows[index], closes[index], volumes[index]) : null;
     }
 
     public void setDataItem(DataItem item) {
-    	if (data.size() > 0) {
-    		data.set(data.size() - 1, item);
+    	if (size > 0) {
+    		set(size - 1, item);
     	}
     }
     
     public void setDataItem(int index, DataItem item) {
-        if (index >=0 && index < data.size()) {
-        	data.set(index, item);
+        if (index >=0 && index < size) {
+        	set(index, item);
         }
     }
 
     public void addDataItem(DataItem item) {
-        data.add(item);
+    	ensureCapacity(size + 1);
+    	set(size++, item);
+    }
+    
+    public void addDataItem(long time, double open, double high, double low, double close, double volume) {
+    	ensureCapacity(size + 1);
+    	set(size++, time, open, high, low, close, volume);
+    }
+
+    ///////////////////////////////////////////
+    //// zero-copy columns, valid up to getSize()
+    public long[] getTimeColumn() {
+    	return times;
+    }
+    
+    public double[] getOpenColumn() {
+    	return opens;
+    }
+    
+    public double[] getHighColumn() {
+    	return highs;
+    }
+    
+    public double[] getLowColumn() {
+    	return lows;
+    }
+    
+    public double[] getCloseColumn() {
+    	return closes;
+    }
+    
+    public double[] getVolumeColumn() {
+    	return volumes;
+    }
+    
+    /**
+     * Returns the column of the given price type. Open/High/Low/Close/Volume
+     * are the backing arrays, the derived prices are computed once per
+     * modification of the dataset and cached.
+     */
+    public double[] getPriceColumn(PriceType priceType) {
+    	switch (priceType) {
+    	case Open:
+    		return opens;
+    	case High:
+    		return highs;
+    	case Low:
+    		return lows;
+    	case Close:
+    		return closes;
+    	case Volume:
+    		return volumes;
+    	default:
+    		break;
+    	}
+    	if (derived == null || derivedType != priceType || derivedVersion != version || derived.length < size) {
+    		if (derived == null || derived.length < size) {
+    			derived = new double[times.length];
+    		}
+    		for (int i = 0; i < size; i++) {
+    			derived[i] = price(i, priceType);
+    		}
+    		derivedType = priceType;
+    		derivedVersion = version;
+    	}
+    	return derived;
+    }
+    
+    private double price(int index, PriceType priceType) {
+    	switch (priceType) {
+    	case Open:
+    		return opens[index];
+    	case High:
+    		return highs[index];
+    	case Low:
+    		return lows[index];
+    	case Close:
+    		return closes[index];
+    	case Volume:
+    		return volumes[index];
+    	case Typical:
+    		return (highs[index] + lows[index] + closes[index]) / 3;
+    	case Median:
+    		return (highs[index] + lows[index]) / 2;
+    	case Weighted:
+    		return (highs[index] + lows[index] + 2 * closes[index]) / 4;
+    	default:
+    		return 0;
+    	}
     }
 
     public long[] getTimeValues() {
-        long[] values = new long[data.size()];
-        for (int i = 0; i < data.size(); i++) {
-			values[i] = data.get(i).getTime();
-        }
-        return values;
+        return Arrays.copyOf(times, size);
     }
 
     public Date[] getDateValues() {
-        Date[] values = new Date[data.size()];
-        for (int i = 0; i < data.size(); i++) {
-        	values[i] = data.get(i).getDate();
+        Date[] values = new Date[size];
+        for (int i = 0; i < size; i++) {
+        	values[i] = new Date(times[i]);
         }
         return values;
     }
 
     public double[] getOpenValues() {
-        double[] values = new double[data.size()];
-        for (int i = 0; i < data.size(); i++) {
-        	values[i] = data.get(i).getOpen();
-        }
-        return values;
+        return Arrays.copyOf(opens, size);
     }
 
     public double[] getHighValues() {
-        double[] values = new double[data.size()];
-        for (int i = 0; i < data.size(); i++) {
-        	values[i] = data.get(i).getHigh();
-        }
-        return values;
+        return Arrays.copyOf(highs, size);
     }
 
     public double[] getLowValues() {
-        double[] values = new double[data.size()];
-        for (int i = 0; i < data.size(); i++) {
-        	values[i] = data.get(i).getLow();
-        }
-        return values;
+        return Arrays.copyOf(lows, size);
     }
 
     public double[] getCloseValues() {
-        double[] values = new double[data.size()];
-        for (int i = 0; i < data.size(); i++) {
-        	values[i] = data.get(i).getClose();
-        }
-        return values;
+        return Arrays.copyOf(closes, size);
     }
 
     public double[] getVolumeValues() {
-        double[] values = new double[data.size()];
-        for (int i = 0; i < data.size(); i++) {
-        	values[i] = data.get(i).getVolume();
-        }
-        return values;
+        return Arrays.copyOf(volumes, size);
     }
     
     public double[] getPrices(PriceType priceType) {
-    	double[] values = new double[data.size()];
-        for (int i = 0; i < data.size(); i++) {
-        	values[i] = data.get(i).getPrice(priceType);
-        }
-        return values;
+    	return Arrays.copyOf(getPriceColumn(priceType), size);
     }
 
     public long getTimeAt(int index) {
-    	DataItem item = getDataItem(index);
-        return item != null ? item.getTime() : 0;
+        return isDefined(index) ? times[index] : 0;
     }
 
     public void setTimeAt(int index, long value) {
-    	DataItem item = getDataItem(index);
-    	if (item != null) {
-    		item.setTime(value);
+    	if (isDefined(index)) {
+    		times[index] = value;
+    		version++;
     	}
     }
 
     public Date getDateAt(int index) {
-    	DataItem item = getDataItem(index);
-        return item != null ? item.getDate() : null;        
+        return isDefined(index) ? new Date(times[index]) : null;        
     }
 
     public double getOpenAt(int index) {
-    	DataItem item = getDataItem(index);
-        return item != null ? item.getOpen() : 0;     
+        return isDefined(index) ? opens[index] : 0;     
     }
 
     public void setOpenAt(int index, double value) {
-    	DataItem item = getDataItem(index);
-    	if (item != null) {
-    		item.setOpen(value);
+    	if (isDefined(index)) {
+    		opens[index] = value;
+    		version++;
     	}
     }
 
     public double getHighAt(int index) {
-    	DataItem item = getDataItem(index);
-        return item != null ? item.getHigh() : 0;
+        return isDefined(index) ? highs[index] : 0;
     }
 
     public void setHighAt(int index, double value) {
-    	DataItem item = getDataItem(index);
-    	if (item != null) {
-    		item.setHigh(value);
+    	if (isDefined(index)) {
+    		highs[index] = value;
+    		version++;
     	}
     }
 
     public double getLowAt(int index) {
-    	DataItem item = getDataItem(index);
-        return item != null ? item.getLow() : 0;
+        return isDefined(index) ? lows[index] : 0;
     }
 
     public void setLowAt(int index, double value) {
-    	DataItem item = getDataItem(index);
-    	if (item != null) {
-    		item.setLow(value);
+    	if (isDefined(index)) {
+    		lows[index] = value;
+    		version++;
     	}
     }
 
     public double getCloseAt(int index) {
-    	DataItem item = getDataItem(index);
-        return item != null ? item.getClose() : 0;
+        return isDefined(index) ? closes[index] : 0;
     }
 
     public void setCloseAt(int index, double value) {
-    	DataItem item = getDataItem(index);
-    	if (item != null) {
-    		item.setClose(value);
+    	if (isDefined(index)) {
+    		closes[index] = value;
+    		version++;
     	}
     }
 
     public double getVolumeAt(int index) {
-    	DataItem item = getDataItem(index);
-        return item != null ? item.getVolume() : 0;
+        return isDefined(index) ? volumes[index] : 0;
     }
 
     public void setVolumeAt(int index, double value) {
-    	DataItem item = getDataItem(index);
-    	if (item != null) {
-    		item.setVolume(value);
+    	if (isDefined(index)) {
+    		volumes[index] = value;
+    		version++;
     	}
     }
 
@@ -250,38 +510,31 @@ public class Dataset
 	}
 
     public long getLastTime() {
-    	DataItem item = getDataItem(getLastIndex());
-        return item != null ? item.getTime() : 0;
+        return getTimeAt(getLastIndex());
     }
 
     public Date getLastDate() {
-    	DataItem item = getDataItem(getLastIndex());
-        return item != null ? item.getDate() : null;
+        return getDateAt(getLastIndex());
     }
 
     public double getLastOpen() {
-    	DataItem item = getDataItem(getLastIndex());
-        return item != null ? item.getOpen() : 0;
+        return getOpenAt(getLastIndex());
     }
 
     public double getLastHigh() {
-    	DataItem item = getDataItem(getLastIndex());
-        return item != null ? item.getHigh() : 0;
+        return getHighAt(getLastIndex());
     }
 
     public double getLastLow() {
-    	DataItem item = getDataItem(getLastIndex());
-        return item != null ? item.getLow() : 0;
+        return getLowAt(getLastIndex());
     }
 
     public double getLastClose() {
-    	DataItem item = getDataItem(getLastIndex());
-        return item != null ? item.getClose() : 0;
+        return getCloseAt(getLastIndex());
     }
 
     public double getLastVolume() {
-    	DataItem item = getDataItem(getLastIndex());
-        return item != null ? item.getVolume() : 0;
+        return getVolumeAt(getLastIndex());
     }
 
     public double getPriceAt(int index, String priceType) {
@@ -289,8 +542,7 @@ public class Dataset
     }
 
     public double getPriceAt(int index, PriceType priceType) {
-    	DataItem item = getDataItem(index);
-        return item != null ? item.getPrice(priceType) : 0;
+        return isDefined(index) ? price(index, priceType) : 0;
     }
 
     public double getLastPrice(String priceType) {
@@ -298,83 +550,115 @@ public class Dataset
     }
 
     public double getLastPrice(PriceType priceType) {
-    	DataItem item = getDataItem(getLastIndex());
-    	return item != null ? item.getPrice(priceType) : 0;
+    	return getPriceAt(getLastIndex(), priceType);
     }
     
     public Dataset subDataset(int beginPos, int endPos) {
     	if (beginPos < 0) {
     		beginPos = 0;
     	}
-    	if (endPos > data.size()) {
-    		endPos = data.size();
+    	if (endPos > size) {
+    		endPos = size;
     	}
-    	if (beginPos > data.size() ||
+    	if (beginPos > size ||
     		endPos < 0 ||
     		beginPos > endPos) {
     		return null;
     	}
-    	Dataset dataset = new Dataset();
-    	dataset.data = new ArrayList<DataItem>(data.subList(beginPos, endPos));
+    	int count = endPos - beginPos;
+    	Dataset dataset = new Dataset(count);
+    	System.arraycopy(times, beginPos, dataset.times, 0, count);
+    	System.arraycopy(opens, beginPos, dataset.opens, 0, count);
+    	System.arraycopy(highs, beginPos, dataset.highs, 0, count);
+    	System.arraycopy(lows, beginPos, dataset.lows, 0, count);
+    	System.arraycopy(closes, beginPos, dataset.closes, 0, count);
+    	System.arraycopy(volumes, beginPos, dataset.volumes, 0, count);
+    	System.arraycopy(defined, beginPos, dataset.defined, 0, count);
+    	dataset.size = count;
     	return dataset;
     }
     
     public static Dataset valueOf(List<TPriceBar> priceBarList) {
-    	Dataset dataset = new Dataset();
+    	Dataset dataset = new Dataset(priceBarList.size());
     	for (TPriceBar priceBar : priceBarList) {
-    		dataset.data.add(DataItem.valueOf(priceBar));
+    		dataset.addDataItem(
+    				priceBar.getStartDate().getTime(),
+    				priceBar.getAskOpen(),
+    				priceBar.getAskHigh(),
+    				priceBar.getAskLow(),
+    				priceBar.getAskClose(),
+    				0);
     	}
     	return dataset;
     }
     
     public static Dataset valueOfB(List<TPriceBar> priceBarList) {
-    	Dataset dataset = new Dataset();
+    	Dataset dataset = new Dataset(priceBarList.size());
     	for (TPriceBar priceBar : priceBarList) {
-    		dataset.data.add(DataItem.valueOfB(priceBar));
+    		dataset.addDataItem(
+    				priceBar.getStartDate().getTime(),
+    				priceBar.getBidOpen(),
+    				priceBar.getBidHigh(),
+    				priceBar.getBidLow(),
+    				priceBar.getBidClose(),
+    				0);
     	}
     	return dataset;
     }
 
     public static Dataset EMPTY(int count) {
-        List<DataItem> list = new ArrayList<DataItem>();
-        for (int i = 0; i < count; i++) {
-            list.add(i, null);
-        }
-        return new Dataset(list);
+    	Dataset dataset = new Dataset(count);
+    	dataset.size = count;
+        return dataset;
     }
 
-    public static Dataset CONST(Dataset d, double ct) {
-        if (d == null) {
+    /*
+     * The operators below work on the primitive columns. The values of the
+     * undefined slots are always 0, so they read like the getters do.
+     * The moving averages are computed on the five values of each bar, or on
+     * the given price only, stored as the close like DataItem(time, close).
+     */
+
+    public static Dataset CONST(Dataset d, double ct)
+    {
+        if (d == null)
+        {
             return null;
         }
 
         int count = d.getItemsCount();
         Dataset result = EMPTY(count);
-        for (int i = 0; i < count; i++) {
-            result.setDataItem(i, new DataItem(d.getTimeAt(i), ct));
-        }
+        Arrays.fill(result.closes, 0, count, ct);
+        result.define(d, 0);
 
         return result;
     }
 
-    public static Dataset LOG(Dataset d) {
-        if (d == null) {
+    public static Dataset LOG(Dataset d)
+    {
+        if (d == null)
+        {
             return null;
         }
 
         int count = d.getItemsCount();
         Dataset result = EMPTY(count);
+        double[][] in = d.valueColumns();
+        double[][] out = result.valueColumns();
 
-        for (int i = 0; i < count; i++) {
-            if (d.getDataItem(i) != null) {
-                double open = Math.log10(d.getOpenAt(i));
-                double high = Math.log10(d.getHighAt(i));
-                double low = Math.log10(d.getLowAt(i));
-                double close = Math.log10(d.getCloseAt(i));
-                double volume = Math.log10(d.getVolumeAt(i));
-                result.setDataItem(i, new DataItem(d.getTimeAt(i), open, high, low, close, volume));
+        for (int i = 0; i < count; i++)
+        {
+            if (d.defined[i])
+            {
+                for (int f = 0; f < out.length; f++)
+                {
+                    out[f][i] = Math.log10(in[f][i]);
+                }
+                result.times[i] = d.times[i];
+                result.defined[i] = true;
             }
         }
+        result.version++;
 
         return result;
     }
@@ -388,17 +672,18 @@ public class Dataset
 
         int count = d1.getItemsCount();
         Dataset result = EMPTY(count);
+        double[][] in1 = d1.valueColumns();
+        double[][] in2 = d2.valueColumns();
+        double[][] out = result.valueColumns();
 
-        for (int i = 0; i < count; i++)
+        for (int f = 0; f < out.length; f++)
         {
-            result.setDataItem(i, new DataItem(
-                    d1.getTimeAt(i),
-                    d1.getOpenAt(i) + d2.getOpenAt(i),
-                    d1.getHighAt(i) + d2.getHighAt(i),
-                    d1.getLowAt(i) + d2.getLowAt(i),
-                    d1.getCloseAt(i) + d2.getCloseAt(i),
-                    d1.getVolumeAt(i) + d2.getVolumeAt(i)));
+            for (int i = 0; i < count; i++)
+            {
+                out[f][i] = at(d1, in1[f], i) + at(d2, in2[f], i);
+            }
         }
+        result.define(d1, 0);
 
         return result;
     }
@@ -412,17 +697,18 @@ public class Dataset
 
         int count = d1.getItemsCount();
         Dataset result = EMPTY(count);
+        double[][] in1 = d1.valueColumns();
+        double[][] in2 = d2.valueColumns();
+        double[][] out = result.valueColumns();
 
-        for (int i = 0; i < count; i++)
+        for (int f = 0; f < out.length; f++)
         {
-            result.setDataItem(i, new DataItem(
-                    d1.getTimeAt(i),
-                    d1.getOpenAt(i) - d2.getOpenAt(i),
-                    d1.getHighAt(i) - d2.getHighAt(i),
-                    d1.getLowAt(i) - d2.getLowAt(i),
-                    d1.getCloseAt(i) - d2.getCloseAt(i),
-                    d1.getVolumeAt(i) - d2.getVolumeAt(i)));
+            for (int i = 0; i < count; i++)
+            {
+                out[f][i] = at(d1, in1[f], i) - at(d2, in2[f], i);
+            }
         }
+        result.define(d1, 0);
 
         return result;
     }
@@ -436,17 +722,17 @@ public class Dataset
 
         int count = d.getItemsCount();
         Dataset result = EMPTY(count);
+        double[][] in = d.valueColumns();
+        double[][] out = result.valueColumns();
 
-        for (int i = 0; i < count; i++)
+        for (int f = 0; f < out.length; f++)
         {
-            result.setDataItem(i, new DataItem(
-                    d.getTimeAt(i),
-                    d.getOpenAt(i) * value,
-                    d.getHighAt(i) * value,
-                    d.getLowAt(i) * value,
-                    d.getCloseAt(i) * value,
-                    d.getVolumeAt(i) * value));
+            for (int i = 0; i < count; i++)
+            {
+                out[f][i] = in[f][i] * value;
+            }
         }
+        result.define(d, 0);
 
         return result;
     }
@@ -460,21 +746,25 @@ public class Dataset
 
         int count = d.getItemsCount();
         Dataset result = EMPTY(count);
+        double[][] in = d.valueColumns();
+        double[][] out = result.valueColumns();
 
-        for (int i = 0; i < count; i++)
+        for (int f = 0; f < out.length; f++)
         {
-            result.setDataItem(i, new DataItem(
-                    d.getTimeAt(i),
-                    d.getOpenAt(i) / value,
-                    d.getHighAt(i) / value,
-                    d.getLowAt(i) / value,
-                    d.getCloseAt(i) / value,
-                    d.getVolumeAt(i) / value));
+            for (int i = 0; i < count; i++)
+            {
+                out[f][i] = in[f][i] / value;
+            }
         }
+        result.define(d, 0);
 
         return result;
     }
 
+    /*
+     * Hull moving average, WMA(2 * WMA(n / 2) - WMA(n), sqrt(n)), the three
+     * weighted averages are advanced together in one pass.
+     */
     public static Dataset HMA(Dataset dataset, int period)
     {
         if (dataset == null)
@@ -482,17 +772,25 @@ public class Dataset
             return null;
         }
 
-        Dataset wma_n2 = Dataset.WMA(dataset, period / 2);
-        Dataset wma_n = Dataset.WMA(dataset, period);
-        Dataset two_wma_n2 = Dataset.MULTIPLY(wma_n2, 2);
-        Dataset diff = Dataset.DIFF(two_wma_n2, wma_n);
+        int count = dataset.getItemsCount();
+        int from = dataset.firstDefined();
+        Dataset result = EMPTY(count);
+        double[][] in = dataset.valueColumns();
+        double[][] out = result.valueColumns();
+        double[] diff = new double[count];
 
-        Dataset result = Dataset.WMA(diff, (int) Math.sqrt(period));
+        int begin = count;
+        for (int f = 0; f < out.length; f++)
+        {
+            begin = hma(in[f], from, count, period, out[f], diff);
+        }
+        result.define(dataset, begin);
+        result.clearTimes(from + period / 2);
 
         return result;
     }
 
-    public static Dataset SMA(Dataset dataset, int period)
+    public static Dataset HMA(Dataset dataset, int period, PriceType priceType)
     {
         if (dataset == null)
         {
@@ -500,40 +798,49 @@ public class Dataset
         }
 
         int count = dataset.getItemsCount();
-        Dataset result = Dataset.EMPTY(count);
+        int from = dataset.firstDefined();
+        Dataset result = EMPTY(count);
+        int begin = hma(dataset.getPriceColumn(priceType), from, count, period, result.closes, new double[count]);
+        result.define(dataset, begin);
+        result.clearTimes(from + period / 2);
 
-        int j = 0;
-        for (j = 0; j < count && (dataset.getDataItem(j) == null); j++)
+        return result;
+    }
+
+    public static Dataset SMA(Dataset dataset, int period)
+    {
+        if (dataset == null)
         {
-            result.setDataItem(j, null);
+            return null;
         }
 
-        for (int i = j + period - 1; i < count; i++)
-        {
-            long time = dataset.getTimeAt(i);
-            double open = 0;
-            double high = 0;
-            double low = 0;
-            double close = 0;
-            double volume = 0;
+        int count = dataset.getItemsCount();
+        int from = dataset.firstDefined();
+        Dataset result = EMPTY(count);
+        double[][] in = dataset.valueColumns();
+        double[][] out = result.valueColumns();
 
-            for (int k = 0; k < period; k++)
-            {
-                open += dataset.getOpenAt(i - k);
-                high += dataset.getHighAt(i - k);
-                low += dataset.getLowAt(i - k);
-                close += dataset.getCloseAt(i - k);
-                volume += dataset.getVolumeAt(i - k);
-            }
+        int begin = count;
+        for (int f = 0; f < out.length; f++)
+        {
+            begin = sma(in[f], from, count, period, out[f]);
+        }
+        result.define(dataset, begin);
 
-            open /= (double) period;
-            high /= (double) period;
-            low /= (double) period;
-            close /= (double) period;
-            volume /= (double) period;
+        return result;
+    }
 
-            result.setDataItem(i, new DataItem(time, open, high, low, close, volume));
+    public static Dataset SMA(Dataset dataset, int period, PriceType priceType)
+    {
+        if (dataset == null)
+        {
+            return null;
         }
+
+        int count = dataset.getItemsCount();
+        Dataset result = EMPTY(count);
+        result.define(dataset, sma(dataset.getPriceColumn(priceType), dataset.firstDefined(), count, period, result.closes));
+
         return result;
     }
 
@@ -545,54 +852,31 @@ public class Dataset
         }
 
         int count = dataset.getItemsCount();
-        Dataset result = Dataset.EMPTY(count);
+        int from = dataset.firstDefined();
+        Dataset result = EMPTY(count);
+        double[][] in = dataset.valueColumns();
+        double[][] out = result.valueColumns();
 
-        int j = 0;
-        for (j = 0; j < count && (dataset.getDataItem(j) == null); j++)
+        int begin = count;
+        for (int f = 0; f < out.length; f++)
         {
-            result.setDataItem(j, null);
+            begin = ema(in[f], from, count, period, out[f]);
         }
+        result.define(dataset, begin);
 
-        double open = 0;
-        double high = 0;
-        double low = 0;
-        double close = 0;
-        double volume = 0;
+        return result;
+    }
 
-        for (int i = j; i < period + j && i < count; i++)
+    public static Dataset EMA(Dataset dataset, int period, PriceType priceType)
+    {
+        if (dataset == null)
         {
-            open += dataset.getOpenAt(i);
-            high += dataset.getHighAt(i);
-            low += dataset.getLowAt(i);
-            close += dataset.getCloseAt(i);
-            volume += dataset.getVolumeAt(i);
-
-            if (i == period + j - 1)
-            {
-                open /= (double) period;
-                high /= (double) period;
-                low /= (double) period;
-                close /= (double) period;
-                volume /= (double) period;
-
-                result.setDataItem(i, new DataItem(dataset.getTimeAt(i), open, high, low, close, volume));
-            } else
-            {
-                result.setDataItem(i, null);
-            }
+            return null;
         }
 
-        double k = 2 / ((double) (period + 1));
-        for (int i = period + j; i < dataset.getItemsCount(); i++)
-        {
-            open = (dataset.getOpenAt(i) - open) * k + open;
-            high = (dataset.getHighAt(i) - high) * k + high;
-            low = (dataset.getLowAt(i) - low) * k + low;
-            close = (dataset.getCloseAt(i) - close) * k + close;
-            volume = (dataset.getVolumeAt(i) - volume) * k + volume;
-
-            result.setDataItem(i, new DataItem(dataset.getTimeAt(i), open, high, low, close, volume));
-        }
+        int count = dataset.getItemsCount();
+        Dataset result = EMPTY(count);
+        result.define(dataset, ema(dataset.getPriceColumn(priceType), dataset.firstDefined(), count, period, result.closes));
 
         return result;
     }
@@ -616,6 +900,10 @@ public class Dataset
         return Dataset.EMA(dataset, classic_ema_period);
     }
 
+    /*
+     * Weighted moving average of the period bars before each bar,
+     * the numerator is updated from the previous one in O(1).
+     */
     public static Dataset WMA(Dataset dataset, int period)
     {
         if (dataset == null)
@@ -624,46 +912,32 @@ public class Dataset
         }
 
         int count = dataset.getItemsCount();
-        Dataset result = Dataset.EMPTY(count);
-        double denominator = ((double) period * ((double) period + 1)) / 2;
+        int from = dataset.firstDefined();
+        Dataset result = EMPTY(count);
+        double[][] in = dataset.valueColumns();
+        double[][] out = result.valueColumns();
 
-        int j = 0;
-        for (j = 0; j < count && (dataset.getDataItem(j) == null); j++)
+        int begin = count;
+        for (int f = 0; f < out.length; f++)
         {
-            result.setDataItem(j, null);
+            begin = wma(in[f], from, count, period, out[f]);
         }
+        result.define(dataset, begin);
 
-        for (int i = j; i < period + j; i++)
-        {
-            result.setDataItem(i, null);
-        }
+        return result;
+    }
 
-        for (int i = period + j; i < count; i++)
+    public static Dataset WMA(Dataset dataset, int period, PriceType priceType)
+    {
+        if (dataset == null)
         {
-            double open = 0;
-            double high = 0;
-            double low = 0;
-            double close = 0;
-            double volume = 0;
-
-            for (int k = i - period; k < i; k++)
-            {
-                open += (period - i + k + 1) * dataset.getOpenAt(k);
-                high += (period - i + k + 1) * dataset.getHighAt(k);
-                low += (period - i + k + 1) * dataset.getLowAt(k);
-                close += (period - i + k + 1) * dataset.getCloseAt(k);
-                volume += (period - i + k + 1) * dataset.getVolumeAt(k);
-            }
-
-            open /= denominator;
-            high /= denominator;
-            low /= denominator;
-            close /= denominator;
-            volume /= denominator;
-
-            result.setDataItem(i, new DataItem(dataset.getTimeAt(i), open, high, low, close, volume));
+            return null;
         }
 
+        int count = dataset.getItemsCount();
+        Dataset result = EMPTY(count);
+        result.define(dataset, wma(dataset.getPriceColumn(priceType), dataset.firstDefined(), count, period, result.closes));
+
         return result;
     }
 
@@ -675,36 +949,59 @@ public class Dataset
         }
 
         int count = dataset.getItemsCount();
-        Dataset result = Dataset.EMPTY(dataset.getItemsCount());
-        Dataset ema1 = EMA(dataset, period);
-        Dataset ema2 = EMA(ema1, period);
-        Dataset ema3 = EMA(ema2, period);
-
-        int j = 0;
-        for (j = 0; j < count && (dataset.getDataItem(j) == null || ema1.getDataItem(j) == null || ema2.getDataItem(j) == null || ema3.getDataItem(j) == null); j++)
+        int from = dataset.firstDefined();
+        Dataset result = EMPTY(count);
+        double[][] in = dataset.valueColumns();
+        double[][] out = result.valueColumns();
+
+        //The close of the three averages decides for every value whether it is set
+        double[] closeEma1 = new double[count];
+        double[] closeEma2 = new double[count];
+        double[] closeEma3 = new double[count];
+        int begin = emas(in[3], from, count, period, closeEma1, closeEma2, closeEma3);
+        while (begin < count && !dataset.defined[begin])
         {
-            result.setDataItem(j, null);
+            begin++;
         }
 
-        for (int i = j; i < count; i++)
+        double[] ema1 = new double[count];
+        double[] ema2 = new double[count];
+        double[] ema3 = new double[count];
+        for (int f = 0; f < out.length; f++)
         {
-            double open = 0;
-            double high = 0;
-            double low = 0;
-            double close = 0;
-            double volume = 0;
-
-            if (ema1.getCloseAt(i) != 0 && ema2.getCloseAt(i) != 0 && ema3.getCloseAt(i) != 0)
+            if (f == 3)
             {
-                open = 3 * ema1.getOpenAt(i) - 3 * ema2.getOpenAt(i) + ema3.getOpenAt(i);
-                high = 3 * ema1.getHighAt(i) - 3 * ema2.getHighAt(i) + ema3.getHighAt(i);
-                low = 3 * ema1.getLowAt(i) - 3 * ema2.getLowAt(i) + ema3.getLowAt(i);
-                close = 3 * ema1.getCloseAt(i) - 3 * ema2.getCloseAt(i) + ema3.getCloseAt(i);
-                volume = 3 * ema1.getVolumeAt(i) - 3 * ema2.getVolumeAt(i) + ema3.getVolumeAt(i);
+                tema(closeEma1, closeEma2, closeEma3, begin, count, closeEma1, closeEma2, closeEma3, out[f]);
+            } else
+            {
+                emas(in[f], from, count, period, ema1, ema2, ema3);
+                tema(ema1, ema2, ema3, begin, count, closeEma1, closeEma2, closeEma3, out[f]);
             }
+        }
+        result.define(dataset, begin);
+
+        return result;
+    }
 
-            result.setDataItem(i, new DataItem(dataset.getTimeAt(i), open, high, low, close, volume));
+    public static Dataset TEMA(Dataset dataset, int period, PriceType priceType)
+    {
+        if (dataset == null)
+        {
+            return null;
+        }
+
+        int count = dataset.getItemsCount();
+        Dataset result = EMPTY(count);
+        double[] ema1 = new double[count];
+        double[] ema2 = new double[count];
+        double[] ema3 = new double[count];
+        int begin = emas(dataset.getPriceColumn(priceType), dataset.firstDefined(), count, period, ema1, ema2, ema3);
+        while (begin < count && !dataset.defined[begin])
+        {
+            begin++;
         }
+        tema(ema1, ema2, ema3, begin, count, ema1, ema2, ema3, result.closes);
+        result.define(dataset, begin);
 
         return result;
     }
@@ -719,72 +1016,91 @@ public class Dataset
         int count = dataset.getItemsCount();
         Dataset pdi = Dataset.EMPTY(count);
         Dataset mdi = Dataset.EMPTY(count);
-        Dataset dx = Dataset.EMPTY(count);
+        Dataset adx = Dataset.EMPTY(count);
 
-        Dataset tr = Dataset.EMPTY(count);
-        Dataset hmhp = Dataset.EMPTY(count);
-        Dataset lmlp = Dataset.EMPTY(count);
+        double[] tr = new double[count];
+        double[] hmhp = new double[count];
+        double[] lmlp = new double[count];
+        int hmhpFrom = count;
+        int lmlpFrom = count;
 
         for (int i = 1; i < count; i++)
         {
-            long time = dataset.getTimeAt(i);
+            double high = dataset.getHighAt(i);
+            double low = dataset.getLowAt(i);
+            double prevHigh = dataset.getHighAt(i - 1);
+            double prevLow = dataset.getLowAt(i - 1);
+            double prevClose = dataset.getCloseAt(i - 1);
 
-            double tr0 = dataset.getHighAt(i) - dataset.getCloseAt(i - 1);
-            double tr1 = Math.abs(dataset.getHighAt(i) - dataset.getCloseAt(i - 1));
-            tr0 = Math.max(tr0, tr1);
-            tr1 = Math.abs(dataset.getLowAt(i) - dataset.getCloseAt(i - 1));
-            tr.setDataItem(i, new DataItem(time, Math.max(tr0, tr1)));
+            tr[i] = Math.max(Math.abs(high - prevClose), Math.abs(low - prevClose));
 
-            if (dataset.getHighAt(i) <= dataset.getHighAt(i - 1) && dataset.getLowAt(i) < dataset.getLowAt(i - 1))
+            if (high <= prevHigh && low < prevLow)
             {
-                lmlp.setDataItem(i, new DataItem(time, dataset.getLowAt(i - 1) - dataset.getLowAt(i)));
-            } else if (dataset.getHighAt(i) > dataset.getHighAt(i - 1) && dataset.getLowAt(i) >= dataset.getLowAt(i - 1))
+                lmlp[i] = prevLow - low;
+                lmlpFrom = Math.min(lmlpFrom, i);
+            } else if (high > prevHigh && low >= prevLow)
             {
-                hmhp.setDataItem(i, new DataItem(time, dataset.getHighAt(i) - dataset.getHighAt(i - 1)));
+                hmhp[i] = high - prevHigh;
+                hmhpFrom = Math.min(hmhpFrom, i);
             } else
             {
-                double tempH = Math.abs(dataset.getHighAt(i) - dataset.getHighAt(i - 1));
-                double tempL = Math.abs(dataset.getLowAt(i) - dataset.getLowAt(i - 1));
+                double tempH = Math.abs(high - prevHigh);
+                double tempL = Math.abs(low - prevLow);
 
                 if (tempH > tempL)
                 {
-                    hmhp.setDataItem(i, new DataItem(time, tempH));
+                    hmhp[i] = tempH;
+                    hmhpFrom = Math.min(hmhpFrom, i);
                 } else
                 {
-                    lmlp.setDataItem(i, new DataItem(time, tempL));
+                    lmlp[i] = tempL;
+                    lmlpFrom = Math.min(lmlpFrom, i);
                 }
             }
         }
 
-        Dataset strDS = Dataset.EMA(tr, period);
-        Dataset shmhpDS = Dataset.EMA(hmhp, period);
-        Dataset slmlpDS = Dataset.EMA(lmlp, period);
-
-        for (int i = period; i < count; i++)
+        double[] str = new double[count];
+        double[] shmhp = new double[count];
+        double[] slmlp = new double[count];
+        int strBegin = ema(tr, Math.min(1, count), count, period, str);
+        int shmhpBegin = ema(hmhp, hmhpFrom, count, period, shmhp);
+        int slmlpBegin = ema(lmlp, lmlpFrom, count, period, slmlp);
+
+        double[] dx = new double[count];
+        boolean[] dxDefined = new boolean[count];
+        int dxFrom = count;
+        for (int i = Math.max(0, period); i < count; i++)
         {
-            long time = dataset.getTimeAt(i);
             double curPDI = 0;
             double curMDI = 0;
 
-            if (strDS.getDataItem(i) != null)
+            if (i >= strBegin && str[i] != 0)
             {
-                if (strDS.getCloseAt(i) != 0)
-                {
-                    curPDI = (shmhpDS.getCloseAt(i) / strDS.getCloseAt(i)) * 100;
-                    curMDI = (slmlpDS.getCloseAt(i) / strDS.getCloseAt(i)) * 100;
-                }
+                curPDI = ((i >= shmhpBegin ? shmhp[i] : 0) / str[i]) * 100;
+                curMDI = ((i >= slmlpBegin ? slmlp[i] : 0) / str[i]) * 100;
             }
 
-            pdi.setDataItem(i, new DataItem(time, curPDI));
-            mdi.setDataItem(i, new DataItem(time, curMDI));
+            pdi.closes[i] = curPDI;
+            mdi.closes[i] = curMDI;
 
             if (curPDI + curMDI != 0)
             {
-                dx.setDataItem(i, new DataItem(time, (Math.abs(curPDI - curMDI) / (curPDI + curMDI) * 100)));
+                dx[i] = Math.abs(curPDI - curMDI) / (curPDI + curMDI) * 100;
+                dxDefined[i] = true;
+                dxFrom = Math.min(dxFrom, i);
             }
         }
+        pdi.define(dataset, period);
+        mdi.define(dataset, period);
 
-        Dataset adx = Dataset.EMA(dx, period);
+        adx.define(dataset, ema(dx, dxFrom, count, period, adx.closes));
+        for (int i = 0; i < count; i++)
+        {
+            if (!dxDefined[i])
+            {
+                adx.times[i] = 0;
+            }
+        }
 
         Dataset[] result = new Dataset[3];
         result[0] = pdi;
@@ -793,6 +1109,195 @@ public class Dataset
         return result;
     }
 
+    ///////////////////////////////////////////
+    //// kernels over primitive columns, the values before from are not read
+    //// and the first index written to out is returned
+
+    //Simple moving average of the period values up to each index, with a running sum
+    private static int sma(double[] in, int from, int count, int period, double[] out)
+    {
+        double sum = 0;
+        for (int i = from; i < count; i++)
+        {
+            sum += in[i];
+            if (i - period >= from)
+            {
+                sum -= in[i - period];
+            }
+            if (i >= from + period - 1)
+            {
+                out[i] = sum / period;
+            }
+        }
+        return from + period - 1;
+    }
+
+    //Exponential moving average seeded with the simple average of the first period values
+    private static int ema(double[] in, int from, int count, int period, double[] out)
+    {
+        int begin = from + period - 1;
+        if (period < 1 || begin >= count)
+        {
+            return count;
+        }
+        double value = 0;
+        for (int i = from; i <= begin; i++)
+        {
+            value += in[i];
+        }
+        value /= (double) period;
+        out[begin] = value;
+
+        double k = 2 / ((double) (period + 1));
+        for (int i = begin + 1; i < count; i++)
+        {
+            value = (in[i] - value) * k + value;
+            out[i] = value;
+        }
+        return begin;
+    }
+
+    //Weighted moving average of the period values before each index
+    private static int wma(double[] in, int from, int count, int period, double[] out)
+    {
+        WeightedAverage average = new WeightedAverage(period);
+        for (int i = from; i < count; i++)
+        {
+            if (i > from)
+            {
+                average.add(in[i - 1], i - 1 - period >= from ? in[i - 1 - period] : 0);
+            }
+            if (i >= from + period)
+            {
+                out[i] = average.getValue();
+            }
+        }
+        return from + period;
+    }
+
+    //The intermediate difference is kept in diff, the last average reads it from index 0
+    private static int hma(double[] in, int from, int count, int period, double[] out, double[] diff)
+    {
+        int half = period / 2;
+        int root = (int) Math.sqrt(period);
+        WeightedAverage halfAverage = new WeightedAverage(half);
+        WeightedAverage fullAverage = new WeightedAverage(period);
+        WeightedAverage rootAverage = new WeightedAverage(root);
+        for (int i = 0; i < count; i++)
+        {
+            if (i > from)
+            {
+                double value = in[i - 1];
+                halfAverage.add(value, i - 1 - half >= from ? in[i - 1 - half] : 0);
+                fullAverage.add(value, i - 1 - period >= from ? in[i - 1 - period] : 0);
+            }
+            double halfValue = i >= from + half ? halfAverage.getValue() : 0;
+            double fullValue = i >= from + period ? fullAverage.getValue() : 0;
+            diff[i] = 2 * halfValue - fullValue;
+
+            if (i > 0)
+            {
+                rootAverage.add(diff[i - 1], i - 1 - root >= 0 ? diff[i - 1 - root] : 0);
+            }
+            if (i >= root)
+            {
+                out[i] = rootAverage.getValue();
+            }
+        }
+        return root;
+    }
+
+    //EMA, EMA of the EMA and EMA of that, returns the first index of the third one
+    private static int emas(double[] in, int from, int count, int period, double[] ema1, double[] ema2, double[] ema3)
+    {
+        int begin = ema(in, from, count, period, ema1);
+        begin = ema(ema1, begin, count, period, ema2);
+        return ema(ema2, begin, count, period, ema3);
+    }
+
+    private static void tema(double[] ema1, double[] ema2, double[] ema3, int from, int count,
+    		double[] closeEma1, double[] closeEma2, double[] closeEma3, double[] out)
+    {
+        for (int i = from; i < count; i++)
+        {
+            if (closeEma1[i] != 0 && closeEma2[i] != 0 && closeEma3[i] != 0)
+            {
+                out[i] = 3 * ema1[i] - 3 * ema2[i] + ema3[i];
+            }
+        }
+    }
+
+    /*
+     * Running weighted sum of the last period values, the newest weighted
+     * period and the oldest 1. Adding a value shifts every weight down by one,
+     * which takes the plain sum of the window off the weighted sum.
+     */
+    private static class WeightedAverage
+    {
+        private final int period;
+        private final double denominator;
+        private double weightedSum;
+        private double sum;
+
+        private WeightedAverage(int period)
+        {
+            this.period = period;
+            this.denominator = ((double) period * ((double) period + 1)) / 2;
+        }
+
+        //Adds value to the window, dropped being the value leaving it
+        private void add(double value, double dropped)
+        {
+            weightedSum += period * value - sum;
+            sum += value - dropped;
+        }
+
+        private double getValue()
+        {
+            return weightedSum / denominator;
+        }
+    }
+
+    private double[][] valueColumns()
+    {
+        return new double[][] {opens, highs, lows, closes, volumes};
+    }
+
+    //Index of the first defined bar, size if there is none
+    private int firstDefined()
+    {
+        int index = 0;
+        while (index < size && !defined[index])
+        {
+            index++;
+        }
+        return index;
+    }
+
+    //Defines the slots from begin on with the times of source
+    private void define(Dataset source, int begin)
+    {
+        for (int i = Math.max(0, begin); i < size; i++)
+        {
+            times[i] = source.getTimeAt(i);
+            defined[i] = true;
+        }
+        version++;
+    }
+
+    private void clearTimes(int end)
+    {
+        for (int i = 0; i < end && i < size; i++)
+        {
+            times[i] = 0;
+        }
+    }
+
+    private static double at(Dataset d, double[] column, int index)
+    {
+        return d.isDefined(index) ? column[index] : 0;
+    }
+
     public static int getPrice(String price)
     {
         for (int i = 0; i < LIST.length; i++)
@@ -19,17 +19,29 @@ package org.fxbench.chart;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 
 /**
+ * Paints the series of the charts.<br>
+ * Each series is collected into one path per color and drawn with a single call,
+ * the paths and the other geometry are reused between calls. Painting only happens
+ * on the event dispatch thread, so the scratch objects need no locking.
  *
  * @author viorel.gheba
  */
 public final class DefaultPainter {
 	
+	private final static double KAPPA = 0.5522847498307936;	//Control point offset of a bezier quarter circle
+	private final static double DOT_SIZE = 5;
+	
+	private final static Line2D.Double scratchLine = new Line2D.Double();
+	private final static Path2D.Double upPath = new Path2D.Double(Path2D.WIND_NON_ZERO, 1024);
+	private final static Path2D.Double downPath = new Path2D.Double(Path2D.WIND_NON_ZERO, 1024);
+	private final static Path2D.Double upWickPath = new Path2D.Double(Path2D.WIND_NON_ZERO, 1024);
+	private final static Path2D.Double downWickPath = new Path2D.Double(Path2D.WIND_NON_ZERO, 1024);
+	
     private DefaultPainter() {
     }
 
@@ -88,37 +100,163 @@ public final class DefaultPainter {
     //// line
     public static void line(Graphics2D g, double x1, double v1, double x2, double v2, Point originPoint, Range rangeY, double scaleY, Color color) {      	
     	g.setPaint(color);
-		g.draw(new Line2D.Double(
+    	scratchLine.setLine(
 			x1, getY(originPoint, v1, scaleY, rangeY),
-			x2, getY(originPoint, v2, scaleY, rangeY)));
+			x2, getY(originPoint, v2, scaleY, rangeY));
+		g.draw(scratchLine);
     }
+    //Undefined (NaN) values break the line
     public static void line(Graphics2D g, double[] data, Point originPoint, Range rangeY, double scaleX, double scaleY, Color color) {      	
+    	if (scaleX < 1) {
+    		lineEnvelope(g, data, originPoint, rangeY, scaleX, scaleY, color);
+    		return;
+    	}
+    	Path2D.Double path = upPath;
+    	path.reset();
+    	boolean penDown = false;
+    	for (int i = 0; i < data.length; i++) {
+    		if (Double.isNaN(data[i])) {
+    			penDown = false;
+    			continue;
+    		}
+    		double x = getX(originPoint, i, scaleX);
+    		double y = getY(originPoint, data[i], scaleY, rangeY);
+    		if (penDown) {
+    			path.lineTo(x, y);
+    		} else {
+    			path.moveTo(x, y);
+    			penDown = true;
+    		}
+    	}
     	g.setPaint(color);
-    	for (int i = 0; i < data.length - 1; i++) {
-    		g.draw(new Line2D.Double(
-    			getX(originPoint, i, scaleX), getY(originPoint, data[i], scaleY, rangeY),
-    			getX(originPoint, i + 1, scaleX), getY(originPoint, data[i+1], scaleY, rangeY)));
+    	g.draw(path);
+    	path.reset();
+    }
+
+    
+    /**
+     * Line of a zoomed-out chart with more than one value per pixel column,
+     * each column is drawn as the envelope from its lowest to its highest value.
+     */
+    private static void lineEnvelope(Graphics2D g, double[] data, Point originPoint, Range rangeY, double scaleX, double scaleY, Color color) {
+    	Path2D.Double path = upPath;
+    	path.reset();
+    	boolean penDown = false;
+    	boolean hasColumn = false;
+    	int column = 0;
+    	double first = 0;	//Value reached first in the column, the min or the max
+    	double second = 0;
+    	double min = 0;
+    	double max = 0;
+    	int minIndex = 0;
+    	int maxIndex = 0;
+    	for (int i = 0; i <= data.length; i++) {
+    		boolean end = i == data.length || Double.isNaN(data[i]);
+    		int x = end ? 0 : (int)Math.floor(getX(originPoint, i, scaleX));
+    		if (hasColumn && (end || x != column)) {
+    			first = minIndex <= maxIndex ? min : max;
+    			second = minIndex <= maxIndex ? max : min;
+    			if (penDown) {
+    				path.lineTo(column, getY(originPoint, first, scaleY, rangeY));
+    			} else {
+    				path.moveTo(column, getY(originPoint, first, scaleY, rangeY));
+    				penDown = true;
+    			}
+    			path.lineTo(column, getY(originPoint, second, scaleY, rangeY));
+    			hasColumn = false;
+    		}
+    		if (end) {
+    			penDown = false;
+    			continue;
+    		}
+    		if (!hasColumn) {
+    			hasColumn = true;
+    			column = x;
+    			min = max = data[i];
+    			minIndex = maxIndex = i;
+    		} else if (data[i] < min) {
+    			min = data[i];
+    			minIndex = i;
+    		} else if (data[i] > max) {
+    			max = data[i];
+    			maxIndex = i;
+    		}
     	}
+    	g.setPaint(color);
+    	g.draw(path);
+    	path.reset();
     }
 
     
     ///////////////////////////////////////////
     //// bar
     public static double bar(Graphics2D g, double[] data, Point originPoint, Range rangeY, double scaleX, double scaleY, Color upColor, Color downColor) {
+    	if (scaleX < 1) {
+    		return barEnvelope(g, data, originPoint, rangeY, scaleX, scaleY, upColor, downColor);
+    	}
     	double zeroY = getY(originPoint, 0D, scaleY, rangeY);
     	double barWidth = scaleX * 0.618;
+    	upPath.reset();
+    	downPath.reset();
     	for (int i = 0; i < data.length; i++) {
     		double x = getX(originPoint, i, scaleX);
     		double y = getY(originPoint, data[i], scaleY, rangeY);
     		double height = Math.abs(y - zeroY);
     		if (data[i] > 0) {
-    			g.setPaint(upColor);
-    			g.fill(new Rectangle2D.Double(x, y, barWidth, height));
+    			appendRect(upPath, x, y, barWidth, height);
+    		} else {
+    			appendRect(downPath, x, zeroY, barWidth, height);
+    		}
+    	}
+    	//The color of the last bar is left in the graphics as before
+    	boolean lastUp = data.length > 0 && data[data.length - 1] > 0;
+    	fill(g, lastUp ? downPath : upPath, lastUp ? downColor : upColor);
+    	fill(g, lastUp ? upPath : downPath, lastUp ? upColor : downColor);
+    	upPath.reset();
+    	downPath.reset();
+    	return zeroY;
+    }
+
+    
+    //Bars of a zoomed-out chart, one pixel column shows the highest and the lowest bar falling on it
+    private static double barEnvelope(Graphics2D g, double[] data, Point originPoint, Range rangeY, double scaleX, double scaleY, Color upColor, Color downColor) {
+    	double zeroY = getY(originPoint, 0D, scaleY, rangeY);
+    	upPath.reset();
+    	downPath.reset();
+    	boolean hasColumn = false;
+    	int column = 0;
+    	double max = 0;
+    	double min = 0;
+    	for (int i = 0; i <= data.length; i++) {
+    		int x = i == data.length ? 0 : (int)Math.floor(getX(originPoint, i, scaleX));
+    		if (hasColumn && (i == data.length || x != column)) {
+    			if (max > 0) {
+    				double y = getY(originPoint, max, scaleY, rangeY);
+    				appendRect(upPath, column, y, 1, zeroY - y);
+    			}
+    			if (min <= 0) {
+    				appendRect(downPath, column, zeroY, 1, getY(originPoint, min, scaleY, rangeY) - zeroY);
+    			}
+    			hasColumn = false;
+    		}
+    		if (i == data.length || Double.isNaN(data[i])) {
+    			continue;
+    		}
+    		if (!hasColumn) {
+    			hasColumn = true;
+    			column = x;
+    			max = data[i];
+    			min = data[i];
     		} else {
-    			g.setPaint(downColor);
-    			g.fill(new Rectangle2D.Double(x, zeroY, barWidth, height));
+    			max = Math.max(max, data[i]);
+    			min = Math.min(min, data[i]);
     		}
     	}
+    	boolean lastUp = data.length > 0 && data[data.length - 1] > 0;
+    	fill(g, lastUp ? downPath : upPath, lastUp ? downColor : upColor);
+    	fill(g, lastUp ? upPath : downPath, lastUp ? upColor : downColor);
+    	upPath.reset();
+    	downPath.reset();
     	return zeroY;
     }
 
@@ -127,75 +265,146 @@ public final class DefaultPainter {
     //// histogram
     public static void histogram(Graphics2D g, double[] data, Point originPoint, Range rangeY, double scaleX, double scaleY, Color upColor, Color downColor) {
     	double zeroY = bar(g, data, originPoint, rangeY, scaleX, scaleY, upColor, downColor);
-    	g.draw(new Line2D.Double(
-    			originPoint.getX(), zeroY, data.length * scaleX, zeroY));
+    	scratchLine.setLine(originPoint.getX(), zeroY, data.length * scaleX, zeroY);
+    	g.draw(scratchLine);
     }
 
 
     ///////////////////////////////////////////
     //// band
     public static void band(Graphics2D g, double[] upData, double[] lowData, Point originPoint, Range rangeY, double scaleX, double scaleY, Color color) {
-        g.setPaint(color);
+    	Path2D.Double path = upPath;
+    	path.reset();
         for (int i = 0; i < upData.length - 1; i++) {
-        	GeneralPath gp = new GeneralPath();
-        	gp.moveTo(getX(originPoint, i, scaleX), getY(originPoint, upData[i], scaleY, rangeY));
-        	gp.lineTo(getX(originPoint, i + 1, scaleX), getY(originPoint, upData[i+1], scaleY, rangeY));
-        	gp.lineTo(getX(originPoint, i + 1, scaleX), getY(originPoint, lowData[i+1], scaleY, rangeY));
-        	gp.lineTo(getX(originPoint, i, scaleX), getY(originPoint, lowData[i], scaleY, rangeY));
-        	gp.closePath();
-            g.fill(gp);
+        	if (Double.isNaN(upData[i]) || Double.isNaN(upData[i+1]) ||
+        		Double.isNaN(lowData[i]) || Double.isNaN(lowData[i+1])) {
+        		continue;
+        	}
+        	path.moveTo(getX(originPoint, i, scaleX), getY(originPoint, upData[i], scaleY, rangeY));
+        	path.lineTo(getX(originPoint, i + 1, scaleX), getY(originPoint, upData[i+1], scaleY, rangeY));
+        	path.lineTo(getX(originPoint, i + 1, scaleX), getY(originPoint, lowData[i+1], scaleY, rangeY));
+        	path.lineTo(getX(originPoint, i, scaleX), getY(originPoint, lowData[i], scaleY, rangeY));
+        	path.closePath();
     	}
+        fill(g, path, color);
+        path.reset();
     }
 
 
     ///////////////////////////////////////////
     //// dot
     public static void dot(Graphics2D g, double[] data, Point originPoint, Range rangeY, double scaleX, double scaleY, Color color) {
-    	g.setPaint(color);
+    	Path2D.Double path = upPath;
+    	path.reset();
     	for (int i = 0; i < data.length; i++) {
-    		Ellipse2D.Double circle =  new Ellipse2D.Double(
-    			getX(originPoint, i, scaleX), getY(originPoint, data[i], scaleY, rangeY), 5, 5);
-            g.fill(circle);
+    		if (!Double.isNaN(data[i])) {
+    			appendCircle(path, getX(originPoint, i, scaleX), getY(originPoint, data[i], scaleY, rangeY), DOT_SIZE);
+    		}
     	}
+    	fill(g, path, color);
+    	path.reset();
     }
 
     
     ///////////////////////////////////////////
     //// candlestick
     public static Rectangle2D.Double[] candlestick(Graphics2D g, Dataset dataset, Point originPoint, Range rangeY, double scaleX, double scaleY, Color upColor, Color downColor) {
+    	return candlestick(g, dataset, originPoint, rangeY, scaleX, scaleY, upColor, downColor, null);
+    }
+    /**
+     * Paints the up and the down candles each with one draw of the wicks and one fill of the bodies.
+     * @param drawRegions regions of the previous call, reused when they have the same count
+     * @return the region of each bar, from its high to its low over the full bar width
+     */
+    public static Rectangle2D.Double[] candlestick(Graphics2D g, Dataset dataset, Point originPoint, Range rangeY, double scaleX, double scaleY,
+    		Color upColor, Color downColor, Rectangle2D.Double[] drawRegions) {
     	double barWidth = scaleX * 0.618;
-    	double[] openVals = dataset.getOpenValues();
-    	double[] closeVals = dataset.getCloseValues();
-    	double[] highVals = dataset.getHighValues();
-    	double[] lowVals = dataset.getLowValues();
+    	int count = dataset.getSize();
+    	double[] openVals = dataset.getOpenColumn();
+    	double[] closeVals = dataset.getCloseColumn();
+    	double[] highVals = dataset.getHighColumn();
+    	double[] lowVals = dataset.getLowColumn();
     	
-    	Rectangle2D.Double[] drawRectangles = new Rectangle2D.Double[openVals.length];
-    	for (int i = 0; i < openVals.length; i++) {
+    	Rectangle2D.Double[] drawRectangles = drawRegions;
+    	if (drawRectangles == null || drawRectangles.length != count) {
+    		drawRectangles = new Rectangle2D.Double[count];
+    	}
+    	upPath.reset();
+    	downPath.reset();
+    	upWickPath.reset();
+    	downWickPath.reset();
+    	for (int i = 0; i < count; i++) {
     		double barX = getX(originPoint, i, scaleX);
     		double barY = 0;
     		double barHeight = (closeVals[i] - openVals[i]) * scaleY;
+    		Path2D.Double bodyPath;
+    		Path2D.Double wickPath;
     		if (barHeight >= 0) {
-    			g.setPaint(upColor);
+    			bodyPath = upPath;
+    			wickPath = upWickPath;
     			barY = getY(originPoint, closeVals[i], scaleY, rangeY); 
     		} else {
-    			g.setPaint(downColor);
+    			bodyPath = downPath;
+    			wickPath = downWickPath;
     			barY = getY(originPoint, openVals[i], scaleY, rangeY);
     			barHeight = Math.abs(barHeight);
     		}
     		double lineX = barX + barWidth / 2;
+    		double highY = getY(originPoint, highVals[i], scaleY, rangeY);
     		
-    		g.draw(new Line2D.Double(
-					lineX, getY(originPoint, highVals[i], scaleY, rangeY), lineX, barY));
-			g.fill(new Rectangle2D.Double(barX, barY, barWidth, barHeight));
-			g.draw(new Line2D.Double(
-					lineX, barY + barHeight, lineX, getY(originPoint, lowVals[i], scaleY, rangeY)));
+    		wickPath.moveTo(lineX, highY);
+    		wickPath.lineTo(lineX, barY);
+    		wickPath.moveTo(lineX, barY + barHeight);
+    		wickPath.lineTo(lineX, getY(originPoint, lowVals[i], scaleY, rangeY));
+    		appendRect(bodyPath, barX, barY, barWidth, barHeight);
 			
-			drawRectangles[i] = new Rectangle2D.Double(
-					barX,
-					getY(originPoint, highVals[i], scaleY, rangeY),
-					scaleX,
-					(highVals[i] - lowVals[i]) * scaleY);
+    		if (drawRectangles[i] == null) {
+    			drawRectangles[i] = new Rectangle2D.Double();
+    		}
+			drawRectangles[i].setRect(barX, highY, scaleX, (highVals[i] - lowVals[i]) * scaleY);
     	}
+    	g.setPaint(upColor);
+    	g.draw(upWickPath);
+    	g.fill(upPath);
+    	g.setPaint(downColor);
+    	g.draw(downWickPath);
+    	g.fill(downPath);
+    	upPath.reset();
+    	downPath.reset();
+    	upWickPath.reset();
+    	downWickPath.reset();
     	return drawRectangles;
     }
+    
+    
+    private static void fill(Graphics2D g, Path2D.Double path, Color color) {
+    	g.setPaint(color);
+    	g.fill(path);
+    }
+    
+    //Empty rectangles are skipped, they were never filled
+    private static void appendRect(Path2D.Double path, double x, double y, double width, double height) {
+    	if (width <= 0 || height <= 0) {
+    		return;
+    	}
+    	path.moveTo(x, y);
+    	path.lineTo(x + width, y);
+    	path.lineTo(x + width, y + height);
+    	path.lineTo(x, y + height);
+    	path.closePath();
+    }
+    
+    //Circle inside the square at (x, y), built from four bezier quarters
+    private static void appendCircle(Path2D.Double path, double x, double y, double size) {
+    	double r = size / 2;
+    	double cx = x + r;
+    	double cy = y + r;
+    	double k = r * KAPPA;
+    	path.moveTo(cx + r, cy);
+    	path.curveTo(cx + r, cy + k, cx + k, cy + r, cx, cy + r);
+    	path.curveTo(cx - k, cy + r, cx - r, cy + k, cx - r, cy);
+    	path.curveTo(cx - r, cy - k, cx - k, cy - r, cx, cy - r);
+    	path.curveTo(cx + k, cy - r, cx + r, cy - k, cx + r, cy);
+    	path.closePath();
+    }
 }
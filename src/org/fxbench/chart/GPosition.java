@@ -28,7 +28,9 @@ import java.awt.geom.Rectangle2D;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.fxbench.BenchApp;
 import org.fxbench.entity.TPosition;
@@ -49,25 +51,26 @@ public class GPosition
 	}
 	
 	public void update() {
+		Map<TPosition, Position> oldPositions = new IdentityHashMap<TPosition, Position>();
+		for (Position position : positions) {
+			oldPositions.put(position.getPosition(), position);
+		}
 		positions.clear();
 		Dataset dataset = overlayPane.getPriceBar().getDataset();
 		if (dataset != null && dataset.getSize() > 0) {
+			String symbol = overlayPane.getChartPanel().getSymbol();
 			Date fromDate = dataset.getDateAt(0);
 			Date toDate = dataset.getDateAt(dataset.getSize() - 1);
-			List<TPosition> openPositions = 
-				BenchApp.getInst().getTradeDesk().getOpenPositions().getVisiblePositions(fromDate, toDate);
-			for (TPosition position : openPositions) {
-				if (position.getSymbol().equals(overlayPane.getChartPanel().getSymbol())) {
-					positions.add(new Position(position));
-				}
-			}
-			List<TPosition> closedPositions = 
-				BenchApp.getInst().getTradeDesk().getClosedPositions().getVisiblePositions(fromDate, toDate);
-			for (TPosition position : closedPositions) {
-				if (position.getSymbol().equals(overlayPane.getChartPanel().getSymbol())) {
-					positions.add(new Position(position));
-				}
-			}
+			addPositions(BenchApp.getInst().getTradeDesk().getOpenPositions().getVisiblePositions(symbol, fromDate, toDate), oldPositions);
+			addPositions(BenchApp.getInst().getTradeDesk().getClosedPositions().getVisiblePositions(symbol, fromDate, toDate), oldPositions);
+		}
+	}
+	
+	//The wrappers of the positions still visible are kept
+	private void addPositions(List<TPosition> positionList, Map<TPosition, Position> oldPositions) {
+		for (TPosition position : positionList) {
+			Position oldPosition = oldPositions.get(position);
+			positions.add(oldPosition == null ? new Position(position) : oldPosition);
 		}
 	}
 	
@@ -76,33 +79,50 @@ public class GPosition
     	Dataset dataset = overlayPane.getPriceBar().getDataset();
     	if (barDrawRegions != null && dataset != null && barDrawRegions.length == dataset.getSize()) {
     		long intervalTime = overlayPane.getChartPanel().getInterval().getMilliSecond();
+    		int lodBars = overlayPane.getPriceBar().getLodBars();
 	    	for (Position position : positions) {
-	    		long openTime = position.getPosition().getOpenTime().getTime();
-	    		long closedTime = position.getPosition().getCloseTime() == null ?
-	    				0 : position.getPosition().getCloseTime().getTime();
-	    		for (int i = 0; i < dataset.getSize(); i++) {
-	    			long datasetTime = dataset.getTimeAt(i);
-	    			if (openTime >= datasetTime && openTime < datasetTime + intervalTime) {
-	    				position.moveTo(Position.OPEN_POSITION, barDrawRegions[i]);
-	    				position.draw(g2);
-	    				if (position.getArea().contains(overlayPane.getCrossPoint())) {
-	    					position.drawInfoBox(g2);
-	    				}
-	    				if (closedTime == 0) {
-	    					break;
-	    				}
-	    			}
-	    			if (closedTime >= datasetTime && closedTime < datasetTime + intervalTime) {
-	    				position.moveTo(Position.CLOSED_POSITION, barDrawRegions[i]);
-	    				position.draw(g2);
-	    				position.drawText(g2);
-	    				break;
-	    			}
+	    		position.clearArea();
+	    		int openIndex = getBarIndex(dataset, position.getPosition().getOpenTime(), intervalTime, lodBars);
+	    		if (openIndex >= 0) {
+	    			position.moveTo(Position.OPEN_POSITION, barDrawRegions[openIndex]);
+	    			position.draw(g2);
+	    		}
+	    		int closeIndex = getBarIndex(dataset, position.getPosition().getCloseTime(), intervalTime, lodBars);
+	    		if (closeIndex >= 0) {
+	    			position.moveTo(Position.CLOSED_POSITION, barDrawRegions[closeIndex]);
+	    			position.draw(g2);
+	    			position.drawText(g2);
 	    		}
 	    	}
     	}
 	}
 	
+	//Index of the bar lasting over time, -1 if there is none
+	private static int getBarIndex(Dataset dataset, Date date, long intervalTime, int lodBars) {
+		if (date == null) {
+			return -1;
+		}
+		long time = date.getTime();
+		int index = dataset.floorIndex(time);
+		if (index < 0) {
+			return -1;
+		}
+		//A merged candle of a zoomed-out chart lasts until the next one
+		long endTime = lodBars > 1 && index + 1 < dataset.getSize() ?
+				dataset.getTimeAt(index + 1) : dataset.getTimeAt(index) + intervalTime * lodBars;
+		return time < endTime ? index : -1;
+	}
+	
+	//Drawn over the cached chart, the info box follows the mouse
+	public void drawInfoBox(Graphics2D g2) {
+		Point crossPoint = overlayPane.getCrossPoint();
+		for (Position position : positions) {
+			if (position.insideOpenArea(crossPoint)) {
+				position.drawInfoBox(g2);
+			}
+		}
+	}
+	
 	public class Position
 	{
 		public final static int OPEN_POSITION = 1;
@@ -114,6 +134,7 @@ public class GPosition
 		
 	    private TPosition position;
 	    private Area area;
+	    private Area openArea;	//Area of the open mark, the info box is shown over it
 	    private Color plusColor;
 	    private Color minusColor;
 	    private Font plFont;
@@ -145,6 +166,9 @@ public class GPosition
 	    			moveToUp(barRegion.x + barRegion.width / 2, barRegion.y + barRegion.height + LEAVE_FROM_BAR);
 	    		}
 	    	}
+	    	if (stage == OPEN_POSITION) {
+	    		openArea = area;
+	    	}
 	    }
 	    
 	    private void moveToUp(double x, double y) {
@@ -179,6 +203,12 @@ public class GPosition
 	        ud = -1;
 	    }
 	    
+	    //The marks are placed again by every draw
+	    public void clearArea() {
+	    	area = null;
+	    	openArea = null;
+	    }
+	    
 	    public TPosition getPosition() {
 	    	return position;
 	    }
@@ -191,6 +221,10 @@ public class GPosition
 	    	return area == null ? false : area.contains(point);
 	    }
 	    
+	    public boolean insideOpenArea(Point point) {
+	    	return openArea == null ? false : openArea.contains(point);
+	    }
+	    
 	    public String getText() {
 	    	return position.toString();
 	    }
@@ -263,7 +297,7 @@ public class GPosition
 	        if (textWidth < textWidth3) {
 	        	textWidth = textWidth3;
 	        }
-	        Rectangle bounds = area.getBounds();
+	        Rectangle bounds = openArea.getBounds();
 	        
 	        int posX = bounds.x;
 	        int posY = bounds.y + bounds.height + textHeight;
@@ -18,9 +18,11 @@ package org.fxbench.chart;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Point;
 import java.awt.geom.Rectangle2D;
 
 import org.fxbench.entity.TPriceBar.FieldDef;
+import org.fxbench.ui.panel.ChartPanel;
 import org.fxbench.util.FieldDefStub;
 import org.fxbench.util.properties.PropertySheet;
 
@@ -40,10 +42,14 @@ public class GPriceBar
     private PropertySheet propSheet;
     private Dataset dataset;
     private Rectangle2D.Double[] barDrawRegions;
+    private BarPyramid pyramid;
+    private int lodLevel;			//Level of the pyramid drawn, 0 draws every bar
+    private double drawOffsetX;		//The first candle starts at its node boundary, before the first visible bar
 
     public GPriceBar(OverlayPane overlayPane, PropertySheet propertySheet) {
         this.overlayPane = overlayPane;
         this.propSheet = propertySheet;
+        this.pyramid = new BarPyramid();
     }
 
     /**
@@ -57,9 +63,11 @@ public class GPriceBar
 		if (dataset == null || dataset.getSize() == 0 || overlayPane.getRangeY() == null) {
 			return;
 		}
+		Point originPoint = overlayPane.getOriginPoint();
+		originPoint.x += (int)Math.round(drawOffsetX);
 		barDrawRegions = DefaultPainter.candlestick(
-    			g, dataset, overlayPane.getOriginPoint(), overlayPane.getRangeY(),
-    			overlayPane.getAxisXScale(), overlayPane.getAxisYScale(), getUpColor(), getDownColor());
+    			g, dataset, originPoint, overlayPane.getRangeY(),
+    			getDrawXScale(), overlayPane.getAxisYScale(), getUpColor(), getDownColor(), barDrawRegions);
     }
     
 	public int getCount() {
@@ -70,18 +78,17 @@ public class GPriceBar
 		}
 	}
 	
+	//Index of the candle under x, computed from the scale the candles were drawn with
 	public int getBarIndex(double x) {
-		int index = -1;
-		if (barDrawRegions != null) {
-			for (int i = 0; i < barDrawRegions.length; i++) {
-				if (x >= barDrawRegions[i].getX() &&
-					x <= barDrawRegions[i].getX() + barDrawRegions[i].getWidth()) {
-					index = i;
-					break;
-				}
-			}
+		if (barDrawRegions == null || barDrawRegions.length == 0) {
+			return -1;
 		}
-		return index;
+		double drawXScale = barDrawRegions[0].getWidth();
+		if (drawXScale <= 0) {
+			return -1;
+		}
+		int index = (int)Math.floor((x - barDrawRegions[0].getX()) / drawXScale);
+		return index >= 0 && index < barDrawRegions.length ? index : -1;
 	}
 	
 	public Dataset getDataset() {
@@ -96,8 +103,27 @@ public class GPriceBar
 		return dataset == null ? null : Range.valueOf(dataset);
 	}
 	
-    public void shift() {
-    	dataset = overlayPane.getChartPanel().getVisibleDataset();
+    //Bars merged into one candle
+    public int getLodBars() {
+    	return 1 << lodLevel;
+    }
+    
+    //Width of one candle in pixels
+    public double getDrawXScale() {
+    	return overlayPane.getAxisXScale() * getLodBars();
+    }
+    
+    public void shift(Dataset chartDataset) {
+    	ChartPanel chartPanel = overlayPane.getChartPanel();
+    	lodLevel = BarPyramid.getLevel(overlayPane.getAxisXScale());
+    	if (lodLevel == 0) {
+    		dataset = chartPanel.getVisibleDataset(chartDataset);
+    		drawOffsetX = 0;
+    	} else {
+    		dataset = chartPanel.getVisibleDataset(chartDataset, pyramid, lodLevel);
+    		int visibleBegin = chartPanel.getVisibleBegin();
+    		drawOffsetX = (BarPyramid.getNodeBegin(lodLevel, visibleBegin) - visibleBegin) * overlayPane.getAxisXScale();
+    	}
     }
     
     private Color getUpColor() {
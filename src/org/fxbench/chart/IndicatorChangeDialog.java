@@ -51,8 +51,8 @@ public class IndicatorChangeDialog extends PropertyDialog
 				PropertySheetNode propSheetNode = propertyMainPanel.getSheetPanel().getSheetNode();
 				if (propSheetNode != null) {
 					indicator.setPropertySheet(propSheetNode.getSavePropSheet());
-					indicator.update();
 					indicator.repaint();
+					indicator.refresh();
 				}
 			}
 		});
@@ -102,8 +102,13 @@ public class IndicatorPane extends Canvas
 	}
 
 	@Override
-	public void update() {
-		indicator.update();
+	public void calculate(Dataset dataset, boolean tailOnly) {
+		indicator.compute(dataset, tailOnly);
+	}
+
+	@Override
+	public void publish(Dataset dataset) {
+		indicator.shift();
 		if (autoScale) {
 			rangeY = indicator.getRangeY();
 		}
@@ -129,9 +134,6 @@ public class IndicatorPane extends Canvas
 	
     @Override
 	protected void drawChart(Graphics2D g2) {
-    	if (!indicator.isCalculated()) {
-    		indicator.calculate();
-    	}
     	indicator.draw(g2);
 	}
 }
\ No newline at end of file
@@ -20,9 +20,9 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Shape;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.fxbench.BenchApp;
 import org.fxbench.chart.ta.Indicator;
@@ -54,7 +54,7 @@ public class OverlayPane extends Canvas
     public OverlayPane(ChartPanel panel) {
     	super(panel);
     	position = new GPosition(this);
-    	indicators = new ArrayList<Indicator>();
+    	indicators = new CopyOnWriteArrayList<Indicator>();	//Iterated by the chart worker
     	
     	leftMargin = MARGIN_LEFT;
     	topMargin = MARGIN_TOP;
@@ -132,6 +132,13 @@ public class OverlayPane extends Canvas
     
     public void removeIndicator(Indicator indicator) {
     	indicators.remove(indicator);
+    	indicator.dispose();
+    }
+    
+    public void disposeIndicators() {
+    	for (Indicator indicator : indicators) {
+    		indicator.dispose();
+    	}
     }
     
     public void rePosIndicatorLabel() {
@@ -159,19 +166,30 @@ public class OverlayPane extends Canvas
 	}
     
     @Override
-	public void update() {
-		priceBar.shift();
+	public void calculate(Dataset dataset, boolean tailOnly) {
+		for (Indicator indicator : indicators) {
+			indicator.compute(dataset, tailOnly);
+		}
+	}
+    
+    @Override
+	public void publish(Dataset dataset) {
+		priceBar.shift(dataset);
 		position.update();
 		for (Indicator indicator : indicators) {
-			indicator.update();
+			indicator.shift();
 		}
-		if (autoScale) {
+		autoScaleRangeY();
+	}
+    
+    private void autoScaleRangeY() {
+    	if (autoScale) {
 			rangeY = priceBar.getRangeY();
 			for (Indicator indicator : indicators) {
 				rangeY = Range.combine(rangeY, indicator.getRangeY());
 			}
 		}
-	}
+    }
     
     @Override
     public void moveCrossXMark() {
@@ -223,12 +241,17 @@ public class OverlayPane extends Canvas
     	g2.setClip(getBounds());
     	priceBar.draw(g2);
 		for (Indicator indicator : indicators) {
-			if (!indicator.isCalculated()) {
-	    		indicator.calculate();
-	    	}
 			indicator.draw(g2);
 		}
 		position.draw(g2);
 		g2.setClip(oldShape);
 	}
+    
+    @Override
+	protected void drawCrossLayer(Graphics2D g2) {
+    	Shape oldShape = g2.getClip();
+    	g2.clip(getBounds());
+    	position.drawInfoBox(g2);
+    	g2.setClip(oldShape);
+	}
 }
@@ -16,8 +16,6 @@
 */
 package org.fxbench.chart;
 
-import java.util.List;
-
 import org.fxbench.util.SerialVersion;
 
 /**
@@ -202,13 +200,14 @@ public strictfp class Range
     	double low = Double.MAX_VALUE;
 		double high = 0;
 		
-		List<DataItem> dataItems = dataset.getDataItems();
-		for (DataItem item : dataItems) {
-			if (item.getLow() < low) {
-				low = item.getLow();
+		double[] lows = dataset.getLowColumn();
+		double[] highs = dataset.getHighColumn();
+		for (int i = 0; i < dataset.getSize(); i++) {
+			if (lows[i] < low) {
+				low = lows[i];
 			}
-			if (item.getHigh() > high) {
-				high = item.getHigh();
+			if (highs[i] > high) {
+				high = highs[i];
 			}
 		}
 		
@@ -0,0 +1,98 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.chart;
+
+/**
+ * Min/max segment tree over the values of a calculated series, so that the range
+ * of any window is found in O(log n) without reading the values again.<br>
+ * Values changed by a tail calculation are merged on the next query, O(log n) each.
+ * Undefined (NaN) values are ignored, and the range matches Range.valueOf(double[]).<br>
+ * Not thread safe, a series is not calculated while its range is queried.
+ */
+public class RangeIndex
+{
+	private final double[] data;
+	private final int size;
+	private final double[] mins;	//Node i covers the nodes 2i and 2i+1, the values are the leaves from size
+	private final double[] maxs;
+	private int dirtyFrom;			//Values from this index on have changed since the last query
+
+	public RangeIndex(double[] data) {
+		this.data = data;
+		this.size = data.length;
+		mins = new double[2 * size];
+		maxs = new double[2 * size];
+		for (int i = 0; i < size; i++) {
+			setLeaf(i);
+		}
+		for (int i = size - 1; i > 0; i--) {
+			mins[i] = Math.min(mins[2 * i], mins[2 * i + 1]);
+			maxs[i] = Math.max(maxs[2 * i], maxs[2 * i + 1]);
+		}
+		dirtyFrom = size;
+	}
+
+	public double[] getData() {
+		return data;
+	}
+
+	//The values from fromIndex to the end have been recalculated
+	public void invalidateFrom(int fromIndex) {
+		dirtyFrom = Math.max(0, Math.min(dirtyFrom, fromIndex));
+	}
+
+	//Range of the values from beginPos to endPos (exclusive)
+	public Range getRange(int beginPos, int endPos) {
+		refresh();
+		double low = Double.MAX_VALUE;
+		double high = 0;
+		int l = Math.max(0, beginPos) + size;
+		int r = Math.min(size, endPos) + size;
+		while (l < r) {
+			if ((l & 1) == 1) {
+				low = Math.min(low, mins[l]);
+				high = Math.max(high, maxs[l]);
+				l++;
+			}
+			if ((r & 1) == 1) {
+				r--;
+				low = Math.min(low, mins[r]);
+				high = Math.max(high, maxs[r]);
+			}
+			l >>= 1;
+			r >>= 1;
+		}
+		return new Range(low, high);
+	}
+
+	private void refresh() {
+		for (int i = dirtyFrom; i < size; i++) {
+			setLeaf(i);
+			for (int node = (i + size) >> 1; node > 0; node >>= 1) {
+				mins[node] = Math.min(mins[2 * node], mins[2 * node + 1]);
+				maxs[node] = Math.max(maxs[2 * node], maxs[2 * node + 1]);
+			}
+		}
+		dirtyFrom = size;
+	}
+
+	private void setLeaf(int i) {
+		double value = data[i];
+		mins[size + i] = Double.isNaN(value) ? Double.POSITIVE_INFINITY : value;
+		maxs[size + i] = Double.isNaN(value) ? Double.NEGATIVE_INFINITY : value;
+	}
+}
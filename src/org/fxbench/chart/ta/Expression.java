@@ -0,0 +1,467 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.chart.ta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fxbench.chart.DataItem.PriceType;
+import org.fxbench.util.properties.Property;
+import org.fxbench.util.properties.PropertySheet;
+
+/**
+ * Indicator formula such as WMA(2*WMA(close,n/2)-WMA(close,n),sqrt(n)).<br>
+ * Operands are numbers, the prices open, high, low, close, volume, typical, median
+ * and weighted, and the numeric properties of the indicator such as n.
+ * Operators are + - * / and the unary minus. The functions SMA, EMA and WMA take a
+ * series and a period, REF a series and a number of bars back, ABS, LOG and SQRT
+ * one operand.<br>
+ * Parts depending only on numbers and properties are folded into constants when the
+ * formula is compiled into the nodes of an ExpressionGraph.
+ */
+public abstract class Expression
+{
+	public static Expression parse(String text) {
+		Parser parser = new Parser(text == null ? "" : text);
+		Expression expression = parser.parseSum();
+		parser.skipSpaces();
+		if (parser.pos < parser.text.length()) {
+			throw parser.error("Unexpected '" + parser.text.charAt(parser.pos) + "'");
+		}
+		return expression;
+	}
+
+	/**
+	 * Adds the nodes of the formula to graph, the nodes already there are shared.
+	 * @return the root node, referenced once, to be released with graph.release()
+	 * @throws IllegalArgumentException if a name, a function or a period is invalid
+	 */
+	public ExpressionGraph.Node compile(ExpressionGraph graph, PropertySheet params) {
+		validate(params);
+		return build(graph, params);
+	}
+
+	//Value of a part without series, null for a series
+	abstract Double fold(PropertySheet params);
+
+	//Checks the names, functions and periods, nothing is added to the graph
+	abstract void validate(PropertySheet params);
+
+	//Identical keys are the same series
+	String key(PropertySheet params) {
+		Double value = fold(params);
+		return value != null ? String.valueOf(value) : seriesKey(params);
+	}
+
+	abstract String seriesKey(PropertySheet params);
+
+	//Operators applied bar by bar are fused into one program, anything else is one of its inputs
+	ExpressionGraph.Node build(ExpressionGraph graph, PropertySheet params) {
+		ExpressionGraph.Program program = graph.newProgram();
+		emit(program, graph, params);
+		return program.share(key(params));
+	}
+
+	void emit(ExpressionGraph.Program program, ExpressionGraph graph, PropertySheet params) {
+		Double value = fold(params);
+		if (value != null) {
+			program.pushConst(value);
+		} else {
+			program.pushInput(build(graph, params));
+		}
+	}
+
+	private static class Number extends Expression
+	{
+		private final double value;
+
+		private Number(double value) {
+			this.value = value;
+		}
+
+		@Override
+		Double fold(PropertySheet params) {
+			return value;
+		}
+
+		@Override
+		void validate(PropertySheet params) {
+		}
+
+		@Override
+		String seriesKey(PropertySheet params) {
+			return String.valueOf(value);
+		}
+	}
+
+	//A price, or a numeric property of the indicator
+	private static class Name extends Expression
+	{
+		private final String name;
+
+		private Name(String name) {
+			this.name = name;
+		}
+
+		private PriceType getPriceType() {
+			for (PriceType priceType : PriceType.values()) {
+				if (priceType.name().equalsIgnoreCase(name)) {
+					return priceType;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		Double fold(PropertySheet params) {
+			if (getPriceType() != null) {
+				return null;
+			}
+			Property property = params == null ? null : params.getProperty(name);
+			if (property == null || !(property.getValue() instanceof java.lang.Number)) {
+				throw new IllegalArgumentException("Unknown name " + name);
+			}
+			return ((java.lang.Number)property.getValue()).doubleValue();
+		}
+
+		@Override
+		void validate(PropertySheet params) {
+			fold(params);
+		}
+
+		@Override
+		String seriesKey(PropertySheet params) {
+			return getPriceType().name();
+		}
+
+		@Override
+		ExpressionGraph.Node build(ExpressionGraph graph, PropertySheet params) {
+			Double value = fold(params);
+			return value != null ? super.build(graph, params) : graph.share(new ExpressionGraph.PriceNode(getPriceType()));
+		}
+	}
+
+	private static class Negate extends Expression
+	{
+		private final Expression operand;
+
+		private Negate(Expression operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		Double fold(PropertySheet params) {
+			Double value = operand.fold(params);
+			return value == null ? null : -value;
+		}
+
+		@Override
+		void validate(PropertySheet params) {
+			operand.validate(params);
+		}
+
+		@Override
+		String seriesKey(PropertySheet params) {
+			return "(-" + operand.key(params) + ")";
+		}
+
+		@Override
+		void emit(ExpressionGraph.Program program, ExpressionGraph graph, PropertySheet params) {
+			if (fold(params) != null) {
+				super.emit(program, graph, params);
+			} else {
+				operand.emit(program, graph, params);
+				program.op(ExpressionGraph.Program.NEG);
+			}
+		}
+	}
+
+	private static class Binary extends Expression
+	{
+		private final char operator;
+		private final Expression left;
+		private final Expression right;
+
+		private Binary(char operator, Expression left, Expression right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Double fold(PropertySheet params) {
+			Double l = left.fold(params);
+			Double r = right.fold(params);
+			if (l == null || r == null) {
+				return null;
+			}
+			switch (operator) {
+			case '+':
+				return l + r;
+			case '-':
+				return l - r;
+			case '*':
+				return l * r;
+			default:
+				return l / r;
+			}
+		}
+
+		@Override
+		void validate(PropertySheet params) {
+			left.validate(params);
+			right.validate(params);
+		}
+
+		@Override
+		String seriesKey(PropertySheet params) {
+			return "(" + left.key(params) + operator + right.key(params) + ")";
+		}
+
+		@Override
+		void emit(ExpressionGraph.Program program, ExpressionGraph graph, PropertySheet params) {
+			if (fold(params) != null) {
+				super.emit(program, graph, params);
+				return;
+			}
+			left.emit(program, graph, params);
+			right.emit(program, graph, params);
+			switch (operator) {
+			case '+':
+				program.op(ExpressionGraph.Program.ADD);
+				break;
+			case '-':
+				program.op(ExpressionGraph.Program.SUB);
+				break;
+			case '*':
+				program.op(ExpressionGraph.Program.MUL);
+				break;
+			default:
+				program.op(ExpressionGraph.Program.DIV);
+				break;
+			}
+		}
+	}
+
+	private static class Call extends Expression
+	{
+		private final String function;
+		private final List<Expression> args;
+
+		private Call(String function, List<Expression> args) {
+			this.function = function.toUpperCase();
+			this.args = args;
+		}
+
+		private boolean isWindow() {
+			return ExpressionGraph.WindowNode.isFunction(function);
+		}
+
+		@Override
+		Double fold(PropertySheet params) {
+			if (isWindow()) {
+				return null;
+			}
+			Double value = args.get(0).fold(params);
+			if (value == null) {
+				return null;
+			}
+			if (function.equals("ABS")) {
+				return Math.abs(value);
+			} else if (function.equals("LOG")) {
+				return Math.log10(value);
+			} else {
+				return Math.sqrt(value);
+			}
+		}
+
+		@Override
+		void validate(PropertySheet params) {
+			if (isWindow()) {
+				if (args.size() != 2) {
+					throw new IllegalArgumentException(function + " takes a series and a period");
+				}
+				args.get(0).validate(params);
+				Double period = args.get(1).fold(params);
+				if (period == null) {
+					throw new IllegalArgumentException("The period of " + function + " must be a number");
+				}
+				if (period.intValue() < ExpressionGraph.WindowNode.getMinPeriod(function)) {
+					throw new IllegalArgumentException("Invalid period of " + function + ": " + period.intValue());
+				}
+			} else if (function.equals("ABS") || function.equals("LOG") || function.equals("SQRT")) {
+				if (args.size() != 1) {
+					throw new IllegalArgumentException(function + " takes one operand");
+				}
+				args.get(0).validate(params);
+			} else {
+				throw new IllegalArgumentException("Unknown function " + function);
+			}
+		}
+
+		private int getPeriod(PropertySheet params) {
+			return args.get(1).fold(params).intValue();
+		}
+
+		@Override
+		String seriesKey(PropertySheet params) {
+			if (isWindow()) {
+				return function + "(" + args.get(0).key(params) + "," + getPeriod(params) + ")";
+			}
+			return function + "(" + args.get(0).key(params) + ")";
+		}
+
+		@Override
+		ExpressionGraph.Node build(ExpressionGraph graph, PropertySheet params) {
+			if (!isWindow()) {
+				return super.build(graph, params);
+			}
+			ExpressionGraph.Node input = args.get(0).build(graph, params);
+			return graph.share(new ExpressionGraph.WindowNode(key(params), function, input, getPeriod(params)));
+		}
+
+		@Override
+		void emit(ExpressionGraph.Program program, ExpressionGraph graph, PropertySheet params) {
+			if (isWindow() || fold(params) != null) {
+				super.emit(program, graph, params);
+				return;
+			}
+			args.get(0).emit(program, graph, params);
+			if (function.equals("ABS")) {
+				program.op(ExpressionGraph.Program.ABS);
+			} else if (function.equals("LOG")) {
+				program.op(ExpressionGraph.Program.LOG);
+			} else {
+				program.op(ExpressionGraph.Program.SQRT);
+			}
+		}
+	}
+
+	private static class Parser
+	{
+		private final String text;
+		private int pos;
+
+		private Parser(String text) {
+			this.text = text;
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at position " + (pos + 1) + " of " + text);
+		}
+
+		private void skipSpaces() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private boolean accept(char c) {
+			skipSpaces();
+			if (pos < text.length() && text.charAt(pos) == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) {
+			if (!accept(c)) {
+				throw error("'" + c + "' expected");
+			}
+		}
+
+		private Expression parseSum() {
+			Expression expression = parseProduct();
+			while (true) {
+				if (accept('+')) {
+					expression = new Binary('+', expression, parseProduct());
+				} else if (accept('-')) {
+					expression = new Binary('-', expression, parseProduct());
+				} else {
+					return expression;
+				}
+			}
+		}
+
+		private Expression parseProduct() {
+			Expression expression = parseUnary();
+			while (true) {
+				if (accept('*')) {
+					expression = new Binary('*', expression, parseUnary());
+				} else if (accept('/')) {
+					expression = new Binary('/', expression, parseUnary());
+				} else {
+					return expression;
+				}
+			}
+		}
+
+		private Expression parseUnary() {
+			if (accept('-')) {
+				return new Negate(parseUnary());
+			}
+			if (accept('+')) {
+				return parseUnary();
+			}
+			return parsePrimary();
+		}
+
+		private Expression parsePrimary() {
+			skipSpaces();
+			if (accept('(')) {
+				Expression expression = parseSum();
+				expect(')');
+				return expression;
+			}
+			if (pos >= text.length()) {
+				throw error("Operand expected");
+			}
+			int begin = pos;
+			char c = text.charAt(pos);
+			if (Character.isDigit(c) || c == '.') {
+				while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+					pos++;
+				}
+				try {
+					return new Number(Double.parseDouble(text.substring(begin, pos)));
+				} catch (NumberFormatException e) {
+					pos = begin;
+					throw error("Invalid number");
+				}
+			}
+			if (Character.isLetter(c) || c == '_') {
+				while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_')) {
+					pos++;
+				}
+				String name = text.substring(begin, pos);
+				if (!accept('(')) {
+					return new Name(name);
+				}
+				List<Expression> args = new ArrayList<Expression>();
+				if (!accept(')')) {
+					do {
+						args.add(parseSum());
+					} while (accept(','));
+					expect(')');
+				}
+				return new Call(name, args);
+			}
+			throw error("Unexpected '" + c + "'");
+		}
+	}
+}
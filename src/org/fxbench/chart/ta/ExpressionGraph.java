@@ -0,0 +1,381 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.chart.ta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fxbench.chart.DataItem.PriceType;
+import org.fxbench.chart.Dataset;
+
+/**
+ * The compiled expressions of the indicators of a chart. Identical sub-expressions
+ * are one node shared by every expression using them, and a node is evaluated once
+ * per dataset whatever the number of expressions reading it.<br>
+ * Nodes are reference counted and removed with the last expression using them.
+ * Undefined values are NaN.<br>
+ * Thread safe, expressions are compiled on the event dispatch thread and evaluated
+ * by the chart worker.
+ */
+public class ExpressionGraph
+{
+	private final Map<String, Node> nodes;	//key -> shared node
+
+	public ExpressionGraph() {
+		nodes = new HashMap<String, Node>();
+	}
+
+	/**
+	 * Returns the node with the key of node, node itself if there is none yet.
+	 * The result is referenced once more, the inputs of a node already there are released.
+	 */
+	public synchronized Node share(Node node) {
+		Node shared = nodes.get(node.key);
+		if (shared == null) {
+			shared = node;
+			nodes.put(node.key, node);
+		} else if (shared != node) {
+			for (Node input : node.inputs) {
+				release(input);
+			}
+		}
+		shared.refCount++;
+		return shared;
+	}
+
+	public synchronized void release(Node node) {
+		if (node == null || --node.refCount > 0) {
+			return;
+		}
+		nodes.remove(node.key);
+		for (Node input : node.inputs) {
+			release(input);
+		}
+	}
+
+	public synchronized int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Values of node over dataset, the nodes already evaluated over the
+	 * same version of dataset are not evaluated again.
+	 * @return a new array of dataset.getSize() values
+	 */
+	public synchronized double[] evaluate(Node node, Dataset dataset) {
+		return Arrays.copyOf(evaluateNode(node, dataset), dataset.getSize());
+	}
+
+	private double[] evaluateNode(Node node, Dataset dataset) {
+		if (node.dataset == dataset && node.datasetVersion == dataset.getVersion() &&
+			node.datasetSize == dataset.getSize()) {
+			return node.values;
+		}
+		double[][] inputValues = new double[node.inputs.length][];
+		for (int i = 0; i < node.inputs.length; i++) {
+			inputValues[i] = evaluateNode(node.inputs[i], dataset);
+		}
+		node.values = node.calculate(dataset, dataset.getSize(), inputValues);
+		node.dataset = dataset;
+		node.datasetVersion = dataset.getVersion();
+		node.datasetSize = dataset.getSize();
+		return node.values;
+	}
+
+	Program newProgram() {
+		return new Program(this);
+	}
+
+	public static abstract class Node
+	{
+		private final String key;
+		private final Node[] inputs;
+		private int refCount;
+		private double[] values;		//Values of the last evaluation
+		private Dataset dataset;		//Dataset of the last evaluation
+		private int datasetVersion;
+		private int datasetSize;
+
+		Node(String key, Node... inputs) {
+			this.key = key;
+			this.inputs = inputs;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		abstract double[] calculate(Dataset dataset, int count, double[][] inputValues);
+	}
+
+	static class PriceNode extends Node
+	{
+		private final PriceType priceType;
+
+		PriceNode(PriceType priceType) {
+			super(priceType.name());
+			this.priceType = priceType;
+		}
+
+		//A copy, the derived price column of the dataset is overwritten by the next one
+		@Override
+		double[] calculate(Dataset dataset, int count, double[][] inputValues) {
+			return Arrays.copyOf(dataset.getPriceColumn(priceType), count);
+		}
+	}
+
+	//Moving averages and lags of one input, over the values from the first defined one
+	static class WindowNode extends Node
+	{
+		private final String function;
+		private final int period;
+
+		WindowNode(String key, String function, Node input, int period) {
+			super(key, input);
+			this.function = function;
+			this.period = period;
+		}
+
+		static boolean isFunction(String function) {
+			return function.equals("SMA") || function.equals("EMA") ||
+				function.equals("WMA") || function.equals("REF");
+		}
+
+		static int getMinPeriod(String function) {
+			return function.equals("REF") ? 0 : 1;
+		}
+
+		@Override
+		double[] calculate(Dataset dataset, int count, double[][] inputValues) {
+			double[] in = inputValues[0];
+			double[] out = new double[count];
+			Arrays.fill(out, Double.NaN);
+			int from = 0;
+			while (from < count && Double.isNaN(in[from])) {
+				from++;
+			}
+			if (function.equals("SMA")) {
+				sma(in, from, count, out);
+			} else if (function.equals("EMA")) {
+				ema(in, from, count, out);
+			} else if (function.equals("WMA")) {
+				wma(in, from, count, out);
+			} else {
+				for (int i = from + period; i < count; i++) {
+					out[i] = in[i - period];
+				}
+			}
+			return out;
+		}
+
+		private void sma(double[] in, int from, int count, double[] out) {
+			double sum = 0;
+			for (int i = from; i < count; i++) {
+				sum += in[i];
+				if (i - period >= from) {
+					sum -= in[i - period];
+				}
+				if (i >= from + period - 1) {
+					out[i] = sum / period;
+				}
+			}
+		}
+
+		//Seeded with the simple average of the first period values, like TA-Lib
+		private void ema(double[] in, int from, int count, double[] out) {
+			int begin = from + period - 1;
+			if (begin >= count) {
+				return;
+			}
+			double value = 0;
+			for (int i = from; i <= begin; i++) {
+				value += in[i];
+			}
+			value /= period;
+			out[begin] = value;
+			double k = 2.0 / (period + 1);
+			for (int i = begin + 1; i < count; i++) {
+				value = (in[i] - value) * k + value;
+				out[i] = value;
+			}
+		}
+
+		//The newest value weighted period and the oldest 1, the weighted sum is updated in O(1)
+		private void wma(double[] in, int from, int count, double[] out) {
+			double denominator = period * (period + 1) / 2.0;
+			double weightedSum = 0;
+			double sum = 0;
+			for (int i = from; i < count; i++) {
+				weightedSum += period * in[i] - sum;
+				sum += in[i] - (i - period >= from ? in[i - period] : 0);
+				if (i >= from + period - 1) {
+					out[i] = weightedSum / denominator;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Operators applied bar by bar, fused into one loop over the inputs
+	 * instead of one temporary series per operator.
+	 */
+	static class FusedNode extends Node
+	{
+		private final int[] ops;
+		private final int[] args;
+		private final double[] constants;
+		private final int depth;
+
+		private FusedNode(String key, Node[] inputs, int[] ops, int[] args, double[] constants, int depth) {
+			super(key, inputs);
+			this.ops = ops;
+			this.args = args;
+			this.constants = constants;
+			this.depth = depth;
+		}
+
+		@Override
+		double[] calculate(Dataset dataset, int count, double[][] inputValues) {
+			double[] out = new double[count];
+			double[] stack = new double[depth];
+			for (int i = 0; i < count; i++) {
+				int sp = 0;
+				for (int k = 0; k < ops.length; k++) {
+					switch (ops[k]) {
+					case Program.CONST:
+						stack[sp++] = constants[args[k]];
+						break;
+					case Program.INPUT:
+						stack[sp++] = inputValues[args[k]][i];
+						break;
+					case Program.NEG:
+						stack[sp - 1] = -stack[sp - 1];
+						break;
+					case Program.ABS:
+						stack[sp - 1] = Math.abs(stack[sp - 1]);
+						break;
+					case Program.LOG:
+						stack[sp - 1] = Math.log10(stack[sp - 1]);
+						break;
+					case Program.SQRT:
+						stack[sp - 1] = Math.sqrt(stack[sp - 1]);
+						break;
+					case Program.ADD:
+						sp--;
+						stack[sp - 1] += stack[sp];
+						break;
+					case Program.SUB:
+						sp--;
+						stack[sp - 1] -= stack[sp];
+						break;
+					case Program.MUL:
+						sp--;
+						stack[sp - 1] *= stack[sp];
+						break;
+					case Program.DIV:
+						sp--;
+						stack[sp - 1] /= stack[sp];
+						break;
+					}
+				}
+				out[i] = stack[0];
+			}
+			return out;
+		}
+	}
+
+	//Postfix program of a fused node, built by Expression
+	static class Program
+	{
+		static final int CONST = 0;
+		static final int INPUT = 1;
+		static final int NEG = 2;
+		static final int ABS = 3;
+		static final int LOG = 4;
+		static final int SQRT = 5;
+		static final int ADD = 6;
+		static final int SUB = 7;
+		static final int MUL = 8;
+		static final int DIV = 9;
+
+		private final ExpressionGraph graph;
+		private final List<Node> inputs;
+		private final List<Double> constants;
+		private int[] ops;
+		private int[] args;
+		private int size;
+		private int sp;
+		private int depth;
+
+		private Program(ExpressionGraph graph) {
+			this.graph = graph;
+			inputs = new ArrayList<Node>();
+			constants = new ArrayList<Double>();
+			ops = new int[16];
+			args = new int[16];
+		}
+
+		void pushConst(double value) {
+			constants.add(value);
+			add(CONST, constants.size() - 1, 1);
+		}
+
+		//Takes over the reference to input, an input read twice is referenced once
+		void pushInput(Node input) {
+			int index = inputs.indexOf(input);
+			if (index < 0) {
+				inputs.add(input);
+				index = inputs.size() - 1;
+			} else {
+				graph.release(input);
+			}
+			add(INPUT, index, 1);
+		}
+
+		void op(int op) {
+			add(op, 0, op >= ADD ? -1 : 0);
+		}
+
+		private void add(int op, int arg, int stackChange) {
+			if (size == ops.length) {
+				ops = Arrays.copyOf(ops, size * 2);
+				args = Arrays.copyOf(args, size * 2);
+			}
+			ops[size] = op;
+			args[size] = arg;
+			size++;
+			sp += stackChange;
+			depth = Math.max(depth, sp);
+		}
+
+		//A program reading a single input unchanged is that input
+		Node share(String key) {
+			if (size == 1 && ops[0] == INPUT) {
+				return inputs.get(0);
+			}
+			double[] constantValues = new double[constants.size()];
+			for (int i = 0; i < constantValues.length; i++) {
+				constantValues[i] = constants.get(i);
+			}
+			return graph.share(new FusedNode(key, inputs.toArray(new Node[inputs.size()]),
+					Arrays.copyOf(ops, size), Arrays.copyOf(args, size), constantValues, depth));
+		}
+	}
+}
@@ -21,14 +21,20 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.fxbench.chart.Canvas;
+import org.fxbench.chart.Dataset;
 import org.fxbench.chart.IndicatorPane;
 import org.fxbench.chart.OverlayPane;
 import org.fxbench.chart.Range;
+import org.fxbench.chart.RangeIndex;
 import org.fxbench.trader.local.DBAccess;
 import org.fxbench.ui.auxi.UIManager;
+import org.fxbench.ui.panel.ChartPanel;
 import org.fxbench.util.SerialVersion;
 import org.fxbench.util.properties.PropertySheet;
 
@@ -50,8 +56,17 @@ public abstract class Indicator
     protected PropertySheet propSheet;
     protected Rectangle labelBounds;
     
+    private Dataset dataset;
+    private Dataset calcDataset;	//Dataset of the last full calculation
+    private int calcSize;
+    private long calcLastTime;
+    private final Map<double[], RangeIndex> rangeIndexes;	//Calculated series -> its range index
+    private IndicatorCache.Entry cacheEntry;	//Shared entry holding the current values
+    private boolean disposed;
+    
     public Indicator() {
     	labelBounds = new Rectangle();
+    	rangeIndexes = new IdentityHashMap<double[], RangeIndex>();
     }
     
     public void setPane(OverlayPane overlayPane) {
@@ -78,6 +93,8 @@ public abstract class Indicator
     
     public void setPropertySheet(PropertySheet propertySheet) {
     	this.propSheet = propertySheet;
+    	setCalculated(null);
+    	releaseCache();
     	initLabelSize();
     }
     
@@ -85,9 +102,141 @@ public abstract class Indicator
     	return labelBounds;
     }
     
-    public void update() {
+    /**
+     * Calculates the values over the whole dataset, called by the chart worker.
+     * When tailOnly is set and only the forming bar has changed since the last
+     * calculation, only the last bar is recalculated if the indicator supports it.
+     * A full calculation is taken from the indicator cache when another chart
+     * has already done it over the same bars.
+     * The visible values are taken over by shift() on the event dispatch thread.
+     */
+    public void compute(Dataset dataset, boolean tailOnly) {
+    	this.dataset = dataset;
+    	//The chart changes its forming bar on a copy of the dataset of the last calculation
+    	if (tailOnly && dataset != null && dataset.isSameSeries(calcDataset) &&
+    		dataset.getSize() == calcSize && dataset.getLastTime() == calcLastTime) {
+    		detachCache();
+    		if (calculateTail(dataset.getLastIndex())) {
+    			for (RangeIndex rangeIndex : rangeIndexes.values()) {
+    				rangeIndex.invalidateFrom(dataset.getLastIndex());
+    			}
+    			return;
+    		}
+    	}
+    	rangeIndexes.clear();
+    	releaseCache();
+    	String cacheKey = getCacheKey(dataset);
+    	IndicatorCache cache = IndicatorCache.getInstance();
+    	IndicatorCache.Entry entry = cacheKey == null ? null : cache.acquire(cacheKey, dataset);
+    	if (entry != null) {
+    		setResult(entry.getResult());
+    		setCalculated(null);	//No streaming state, the next tick is calculated in full
+    		attachCache(entry);
+    		return;
+    	}
     	calculate();
-		shift();
+    	double[][] result = getResult();
+    	if (cacheKey != null && result != null) {
+    		attachCache(cache.put(cacheKey, dataset, result));
+    	}
+    }
+    
+    //Releases the cached values, called when the indicator is removed from its chart
+    public synchronized void dispose() {
+    	disposed = true;
+    	releaseCache();
+    }
+    
+    private String getCacheKey(Dataset dataset) {
+    	Canvas pane = overlayPane != null ? overlayPane : indicatorPane;
+    	if (dataset == null || dataset.getSize() == 0 || pane == null || propSheet == null) {
+    		return null;
+    	}
+    	ChartPanel chartPanel = pane.getChartPanel();
+    	String chartKey = chartPanel.getSymbol() + "|" + chartPanel.getInterval() + "|" + chartPanel.getAsknBid();
+    	return IndicatorCache.getKey(chartKey, this, propSheet, dataset);
+    }
+    
+    private synchronized void attachCache(IndicatorCache.Entry entry) {
+    	cacheEntry = entry;
+    	if (disposed) {
+    		releaseCache();
+    	}
+    }
+    
+    private synchronized void releaseCache() {
+    	if (cacheEntry != null) {
+    		IndicatorCache.getInstance().release(cacheEntry);
+    		cacheEntry = null;
+    	}
+    }
+    
+    //Takes a private copy of shared values before they are changed by a tail calculation
+    private synchronized void detachCache() {
+    	if (cacheEntry == null) {
+    		return;
+    	}
+    	double[][] result = getResult();
+    	if (result != null) {
+    		double[][] copy = new double[result.length][];
+    		for (int i = 0; i < result.length; i++) {
+    			copy[i] = result[i] == null ? null : result[i].clone();
+    		}
+    		setResult(copy);
+    	}
+    	rangeIndexes.clear();
+    	releaseCache();
+    }
+    
+    /**
+     * Range of the visible values of a series calculated over the whole dataset.
+     * The range comes from the index of the series, the values are not read again.
+     */
+    protected Range getVisibleRange(double[] calcValues) {
+    	Canvas pane = overlayPane != null ? overlayPane : indicatorPane;
+    	if (calcValues == null || pane == null) {
+    		return null;
+    	}
+    	RangeIndex rangeIndex = rangeIndexes.get(calcValues);
+    	if (rangeIndex == null) {
+    		rangeIndex = new RangeIndex(calcValues);
+    		rangeIndexes.put(calcValues, rangeIndex);
+    	}
+    	return rangeIndex.getRange(pane.getVisibleBegin(calcValues.length), pane.getVisibleEnd(calcValues.length));
+    }
+    
+    //Dataset of the running calculation
+    protected Dataset getDataset() {
+    	return dataset;
+    }
+    
+    //Requests a recalculation of the chart the indicator belongs to
+    public void refresh() {
+    	if (overlayPane != null) {
+    		overlayPane.getChartPanel().refresh();
+    	} else if (indicatorPane != null) {
+    		indicatorPane.getChartPanel().refresh();
+    	}
+    }
+    
+    /**
+     * Remembers the dataset the full calculation was done on, so that
+     * compute() can tell whether only the last bar has changed since.
+     */
+    protected void setCalculated(Dataset dataset) {
+    	calcDataset = dataset;
+    	calcSize = dataset == null ? 0 : dataset.getSize();
+    	calcLastTime = dataset == null ? 0 : dataset.getLastTime();
+    }
+    
+    /**
+     * Recalculates the values from fromIndex to the end of the dataset,
+     * the values before fromIndex are still valid.
+     * Indicators without a streaming implementation return false and are
+     * recalculated by calculate().
+     */
+    protected boolean calculateTail(int fromIndex) {
+    	return false;
     }
     
     public void repaint() {
@@ -220,17 +369,39 @@ public abstract class Indicator
 	}
 	
 	public static Indicator valueOf(PropertySheet propertySheet) {
+    	Indicator indicator = newInstance(propertySheet);
+    	if (indicator != null) {
+    		indicator.setPropertySheet(propertySheet);
+    	}
+    	return indicator;
+    }
+
+	/**
+	 * Values of the indicator of propertySheet over the whole dataset, calculated
+	 * without chart nor label, e.g. by a backtest. Undefined values are 0.
+	 * @return one array per output of the indicator, null if it cannot be calculated
+	 */
+	public static double[][] calculate(PropertySheet propertySheet, Dataset dataset) {
+		Indicator indicator = newInstance(propertySheet);
+		if (indicator == null) {
+			return null;
+		}
+		indicator.propSheet = propertySheet;
+		indicator.compute(dataset, false);
+		return indicator.getResult();
+	}
+
+	private static Indicator newInstance(PropertySheet propertySheet) {
     	String clsPath = "org.fxbench.chart.ta";
     	Indicator indicator = null;
     	try {
     		Class<?> cls = Class.forName(clsPath + ".ta" + propertySheet.getTitle());
     		indicator = (Indicator)cls.newInstance();
-    		indicator.setPropertySheet(propertySheet);
         } catch (Throwable e) {
         	logger.error(e.getMessage());
         }
     	return indicator;
-    }
+	}
 	
     public abstract String getName();
     public abstract String getLabel();
@@ -241,4 +412,8 @@ public abstract class Indicator
     public abstract boolean isCalculated();
     public abstract void calculate();
     public abstract void shift();
+    
+    //Values over the whole dataset, one array per output, null if not calculated
+    protected abstract double[][] getResult();
+    protected abstract void setResult(double[][] result);
 }
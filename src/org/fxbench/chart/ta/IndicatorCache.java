@@ -0,0 +1,201 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.chart.ta;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.fxbench.chart.Dataset;
+import org.fxbench.util.properties.Property;
+import org.fxbench.util.properties.PropertySheet;
+import org.fxbench.util.properties.SettingManager;
+
+/**
+ * Indicator results shared by the charts of the process, so that the same indicator
+ * over the same bars is calculated once whatever the number of charts showing it.<br>
+ * An entry is referenced by the indicators using its values and is only evicted,
+ * least recently used first, once no indicator references it and the cache is over
+ * its memory budget. The values of an entry are never changed.<br>
+ * Thread safe, used by the chart workers.
+ */
+public class IndicatorCache
+{
+	private static final int DEFAULT_BUDGET_MB = 64;
+	private static IndicatorCache INSTANCE;
+
+	private final Map<String, Entry> entries;	//Access order, the eldest is the least recently used
+	private long budgetBytes;
+	private long totalBytes;
+	private long hitCount;
+	private long missCount;
+
+	public IndicatorCache(long budgetBytes) {
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		this.budgetBytes = budgetBytes;
+	}
+
+	public static synchronized IndicatorCache getInstance() {
+		if (INSTANCE == null) {
+			int budgetMB = 0;
+			try {
+				budgetMB = SettingManager.getInstance().getIndicatorCacheMB();
+			} catch (Exception e) {
+			}
+			INSTANCE = new IndicatorCache((budgetMB > 0 ? budgetMB : DEFAULT_BUDGET_MB) * 1024L * 1024L);
+		}
+		return INSTANCE;
+	}
+
+	/**
+	 * Key of an indicator calculated over a dataset of a chart: the chart, the indicator
+	 * type, its parameters except the colors and fonts, and the size and content hash
+	 * of the bars, so that a bar changed anywhere in the dataset makes a new key.
+	 */
+	public static String getKey(String chartKey, Indicator indicator, PropertySheet propSheet, Dataset dataset) {
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(chartKey).append('|').append(indicator.getClass().getName());
+		for (Property property : propSheet.getPropertyList()) {
+			Object value = property.getValue();
+			if (value instanceof Color || value instanceof Font) {
+				continue;
+			}
+			sb.append('|').append(property.getId()).append('=').append(value);
+		}
+		sb.append('|').append(dataset.getSize())
+			.append('|').append(Long.toHexString(dataset.getContentHash()));
+		return sb.toString();
+	}
+
+	/**
+	 * Entry of key referenced once more, null if there is none. The key only holds a hash
+	 * of the bars, an entry calculated over other bars is not returned.
+	 */
+	public synchronized Entry acquire(String key, Dataset dataset) {
+		Entry entry = entries.get(key);
+		if (entry == null || !entry.isOf(dataset)) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		entry.refCount++;
+		return entry;
+	}
+
+	/**
+	 * Adds the result of a calculation over dataset, referenced once by the caller.
+	 * The arrays must not be changed afterwards.
+	 * @return the new entry, null if key is already cached
+	 */
+	public synchronized Entry put(String key, Dataset dataset, double[][] result) {
+		if (entries.containsKey(key)) {
+			return null;
+		}
+		Entry entry = new Entry(key, dataset, result);
+		entry.refCount = 1;
+		entries.put(key, entry);
+		totalBytes += entry.bytes;
+		evict();
+		return entry;
+	}
+
+	public synchronized void release(Entry entry) {
+		if (entry.refCount > 0) {
+			entry.refCount--;
+		}
+		evict();
+	}
+
+	public synchronized void setBudgetBytes(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+		evict();
+	}
+
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized void clear() {
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+			Entry entry = it.next();
+			if (entry.refCount == 0) {
+				totalBytes -= entry.bytes;
+				it.remove();
+			}
+		}
+	}
+
+	//Removes the least recently used unreferenced entries while over budget
+	private void evict() {
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && totalBytes > budgetBytes;) {
+			Entry entry = it.next();
+			if (entry.refCount == 0) {
+				totalBytes -= entry.bytes;
+				it.remove();
+			}
+		}
+	}
+
+	public static class Entry
+	{
+		private final String key;
+		private final double[][] result;
+		private final long bytes;
+		private final int size;			//Bars the values were calculated over
+		private final long firstTime;
+		private final long lastTime;
+		private int refCount;
+
+		private Entry(String key, Dataset dataset, double[][] result) {
+			this.key = key;
+			this.result = result;
+			this.size = dataset.getSize();
+			this.firstTime = dataset.getTimeAt(0);
+			this.lastTime = dataset.getTimeAt(dataset.getLastIndex());
+			long size = 2L * key.length() + 64;
+			for (double[] values : result) {
+				size += values == null ? 0 : 8L * values.length + 16;
+			}
+			this.bytes = size;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		//Whether the values were calculated over bars of the size and times of dataset
+		private boolean isOf(Dataset dataset) {
+			return dataset.getSize() == size && dataset.getTimeAt(0) == firstTime &&
+				dataset.getTimeAt(dataset.getLastIndex()) == lastTime;
+		}
+
+		//Shared values, read only
+		public double[][] getResult() {
+			return result;
+		}
+	}
+}
@@ -47,6 +47,34 @@ public class TaLib {
         }
     }
 
+    //same as TA_IS_ZERO of TA-Lib
+    public static boolean isZero(double v) {
+    	return v > -0.00000001 && v < 0.00000001;
+    }
+    
+    //same as TA_TRANGE of TA-Lib
+    public static double trueRange(double high, double low, double prevClose) {
+    	double greatest = high - low;
+    	double val2 = Math.abs(prevClose - high);
+    	if (val2 > greatest) {
+    		greatest = val2;
+    	}
+    	double val3 = Math.abs(prevClose - low);
+    	if (val3 > greatest) {
+    		greatest = val3;
+    	}
+    	return greatest;
+    }
+    
+    //average of in[from..to]
+    public static double mean(double[] in, int from, int to) {
+    	double sum = 0;
+    	for (int i = from; i <= to; i++) {
+    		sum += in[i];
+    	}
+    	return sum / (to - from + 1);
+    }
+
     public static double[] fixOutputArray(int[] outArray, int lookback){
         double tempOutput[] = new double[outArray.length];
         int j = 0;
@@ -38,6 +38,14 @@ public class taADX extends Indicator
 
     //variables for TA-Lib utilization
     private double[] real;
+    private double[] calcReal;	//values over the whole dataset
+    
+    //Wilder's sums up to the bar before the last one
+    private boolean tailReady;
+    private double prevPlusDM;
+    private double prevMinusDM;
+    private double prevTR;
+    private double prevADX;
 
     @Override
     public String getName() {
@@ -61,7 +69,7 @@ public class taADX extends Indicator
     
     @Override
 	public Range getRangeY() {
-		return isCalculated() ? Range.valueOf(real) : null;
+		return isCalculated() ? getVisibleRange(calcReal) : null;
 	}
     
     @Override
@@ -92,14 +100,15 @@ public class taADX extends Indicator
 
     @Override
     public void calculate() {
-        Dataset dataset = indicatorPane.getChartPanel().getDataset();
+        Dataset dataset = getDataset();
         if (dataset == null || dataset.getSize() == 0) {
-        	real = null;
+        	calcReal = null;
+        	setCalculated(null);
         	return;
         }
         
         int count = dataset.getSize();
-        real = new double[count];
+        double[] out = new double[count];
         
         /**********************************************************************/
         //This entire method is basically a copy/paste action into your own
@@ -112,28 +121,121 @@ public class taADX extends Indicator
         MInteger outBegIdx = new MInteger();
         MInteger outNbElement = new MInteger();
         int period = getPeriod();
-        double[] highVals = dataset.getHighValues();
-        double[] lowVals = dataset.getLowValues();
-        double[] closeVals = dataset.getCloseValues();
+        double[] highVals = dataset.getHighColumn();
+        double[] lowVals = dataset.getLowColumn();
+        double[] closeVals = dataset.getCloseColumn();
         
         //now do the calculation over the entire dataset
         //[First, perform the lookback call if one exists]
         //[Second, do the calculation call from TA-lib]
         Core core = TaLib.getCore();//needs to be here for serialization issues
         int lookback = core.adxLookback(period);
-        core.adx(0, count - 1, highVals, lowVals, closeVals, period, outBegIdx, outNbElement, real);
+        core.adx(0, count - 1, highVals, lowVals, closeVals, period, outBegIdx, outNbElement, out);
 
         //fix the output array's structure. TA-Lib does NOT match
         //indicator index and dataset index automatically. That's what
         //this function does for us.
-        real = TaLib.fixOutputArray(real, lookback);
+        calcReal = TaLib.fixOutputArray(out, lookback);
+        initTailState(highVals, lowVals, closeVals, count, period);
+        setCalculated(dataset);
+    }
+    
+    //Repeats the smoothing of TA-Lib up to the bar before the last one
+    private void initTailState(double[] highVals, double[] lowVals, double[] closeVals, int count, int period) {
+    	tailReady = period > 1 && count - 2 >= 2 * period - 1;
+    	if (!tailReady) {
+    		return;
+    	}
+    	prevPlusDM = 0;
+    	prevMinusDM = 0;
+    	prevTR = 0;
+    	int today = 0;
+    	for (int i = 0; i < period - 1; i++) {
+    		today++;
+    		double diffP = highVals[today] - highVals[today - 1];
+    		double diffM = lowVals[today - 1] - lowVals[today];
+    		if (diffM > 0 && diffP < diffM) {
+    			prevMinusDM += diffM;
+    		} else if (diffP > 0 && diffP > diffM) {
+    			prevPlusDM += diffP;
+    		}
+    		prevTR += TaLib.trueRange(highVals[today], lowVals[today], closeVals[today - 1]);
+    	}
+    	double sumDX = 0;
+    	for (int i = 0; i < period; i++) {
+    		today++;
+    		double dx = smooth(highVals[today], lowVals[today], highVals[today - 1], lowVals[today - 1], closeVals[today - 1], period);
+    		if (!Double.isNaN(dx)) {
+    			sumDX += dx;
+    		}
+    	}
+    	prevADX = sumDX / period;
+    	while (today < count - 2) {
+    		today++;
+    		double dx = smooth(highVals[today], lowVals[today], highVals[today - 1], lowVals[today - 1], closeVals[today - 1], period);
+    		if (!Double.isNaN(dx)) {
+    			prevADX = ((prevADX * (period - 1)) + dx) / period;
+    		}
+    	}
+    }
+    
+    //Adds one bar to the smoothed DM/TR sums and returns its DX, NaN if it is undefined
+    private double smooth(double high, double low, double prevHigh, double prevLow, double prevClose, int period) {
+    	double diffP = high - prevHigh;
+    	double diffM = prevLow - low;
+    	prevMinusDM -= prevMinusDM / period;
+    	prevPlusDM -= prevPlusDM / period;
+    	if (diffM > 0 && diffP < diffM) {
+    		prevMinusDM += diffM;
+    	} else if (diffP > 0 && diffP > diffM) {
+    		prevPlusDM += diffP;
+    	}
+    	prevTR = prevTR - (prevTR / period) + TaLib.trueRange(high, low, prevClose);
+    	if (TaLib.isZero(prevTR)) {
+    		return Double.NaN;
+    	}
+    	double minusDI = 100 * (prevMinusDM / prevTR);
+    	double plusDI = 100 * (prevPlusDM / prevTR);
+    	double sumDI = minusDI + plusDI;
+    	if (TaLib.isZero(sumDI)) {
+    		return Double.NaN;
+    	}
+    	return 100 * (Math.abs(minusDI - plusDI) / sumDI);
     }
     
     @Override
-    public void shift() {
-    	if (isCalculated()) {
-    		real = indicatorPane.getVisibleReal(real);
+    protected boolean calculateTail(int fromIndex) {
+    	Dataset dataset = getDataset();
+    	if (calcReal == null || !tailReady || fromIndex != dataset.getLastIndex()) {
+    		return false;
     	}
+    	int period = getPeriod();
+    	double savePlusDM = prevPlusDM;
+    	double saveMinusDM = prevMinusDM;
+    	double saveTR = prevTR;
+    	double dx = smooth(dataset.getHighAt(fromIndex), dataset.getLowAt(fromIndex),
+    			dataset.getHighAt(fromIndex - 1), dataset.getLowAt(fromIndex - 1), dataset.getCloseAt(fromIndex - 1), period);
+    	calcReal[fromIndex] = Double.isNaN(dx) ? prevADX : ((prevADX * (period - 1)) + dx) / period;
+    	//the forming bar must not be accumulated
+    	prevPlusDM = savePlusDM;
+    	prevMinusDM = saveMinusDM;
+    	prevTR = saveTR;
+    	return true;
+    }
+    
+    @Override
+    protected double[][] getResult() {
+    	return calcReal == null ? null : new double[][] {calcReal};
+    }
+    
+    @Override
+    protected void setResult(double[][] result) {
+    	calcReal = result == null ? null : result[0];
+    }
+    
+    @Override
+    public void shift() {
+    	real = calcReal == null ? null : indicatorPane.getVisibleReal(calcReal);
     }
 }
 
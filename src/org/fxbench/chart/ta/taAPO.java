@@ -38,6 +38,7 @@ public class taAPO extends Indicator
 
     //variables for TA-Lib utilization
     private double[] real;
+    private double[] calcReal;	//values over the whole dataset
 
     @Override
     public String getName() {
@@ -62,7 +63,7 @@ public class taAPO extends Indicator
     
     @Override
 	public Range getRangeY() {
-		return isCalculated() ? Range.valueOf(real) : null;
+		return isCalculated() ? getVisibleRange(calcReal) : null;
 	}
     
     @Override
@@ -93,14 +94,14 @@ public class taAPO extends Indicator
 
     @Override
     public void calculate() {
-        Dataset dataset = indicatorPane.getChartPanel().getDataset();
+        Dataset dataset = getDataset();
         if (dataset == null || dataset.getSize() == 0) {
-        	real = null;
+        	calcReal = null;
         	return;
         }
         
         int count = dataset.getSize();
-        real = new double[count];
+        double[] out = new double[count];
         
         /**********************************************************************/
         //This entire method is basically a copy/paste action into your own
@@ -116,26 +117,34 @@ public class taAPO extends Indicator
         int slowPeriod = getPeriodSlow();
         MAType slowType = getMAType(getSlowType());
         PriceType priceType = PriceType.valueOf(getPirceType());
-        double[] vals = dataset.getPrices(priceType);
+        double[] vals = dataset.getPriceColumn(priceType);
         
         //now do the calculation over the entire dataset
         //[First, perform the lookback call if one exists]
         //[Second, do the calculation call from TA-lib]
         Core core = TaLib.getCore();//needs to be here for serialization issues
         int lookback = core.apoLookback(fastPeriod, slowPeriod, slowType);
-        core.apo(0, count - 1, vals, fastPeriod, slowPeriod, slowType, outBegIdx, outNbElement, real);
+        core.apo(0, count - 1, vals, fastPeriod, slowPeriod, slowType, outBegIdx, outNbElement, out);
 
         //fix the output array's structure. TA-Lib does NOT match
         //indicator index and dataset index automatically. That's what
         //this function does for us.
-        real = TaLib.fixOutputArray(real, lookback);
+        calcReal = TaLib.fixOutputArray(out, lookback);
+    }
+    
+    @Override
+    protected double[][] getResult() {
+    	return calcReal == null ? null : new double[][] {calcReal};
+    }
+    
+    @Override
+    protected void setResult(double[][] result) {
+    	calcReal = result == null ? null : result[0];
     }
     
     @Override
     public void shift() {
-    	if (isCalculated()) {
-    		real = indicatorPane.getVisibleReal(real);
-    	}
+    	real = calcReal == null ? null : indicatorPane.getVisibleReal(calcReal);
     }
 }
 
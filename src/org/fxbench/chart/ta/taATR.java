@@ -38,6 +38,7 @@ public class taATR extends Indicator
 
     //variables for TA-Lib utilization
     private double[] real;
+    private double[] calcReal;	//values over the whole dataset
 
     @Override
     public String getName() {
@@ -61,7 +62,7 @@ public class taATR extends Indicator
     
     @Override
 	public Range getRangeY() {
-		return isCalculated() ? Range.valueOf(real) : null;
+		return isCalculated() ? getVisibleRange(calcReal) : null;
 	}
     
     @Override
@@ -92,14 +93,15 @@ public class taATR extends Indicator
 
     @Override
     public void calculate() {
-        Dataset dataset = indicatorPane.getChartPanel().getDataset();
+        Dataset dataset = getDataset();
         if (dataset == null || dataset.getSize() == 0) {
-        	real = null;
+        	calcReal = null;
+        	setCalculated(null);
         	return;
         }
         
         int count = dataset.getSize();
-        real = new double[count];
+        double[] out = new double[count];
         
         /**********************************************************************/
         //This entire method is basically a copy/paste action into your own
@@ -112,27 +114,55 @@ public class taATR extends Indicator
         MInteger outBegIdx = new MInteger();
         MInteger outNbElement = new MInteger();
         int period = getPeriod();
-        double[] highVals = dataset.getHighValues();
-        double[] lowVals = dataset.getLowValues();
-        double[] closeVals = dataset.getCloseValues();
+        double[] highVals = dataset.getHighColumn();
+        double[] lowVals = dataset.getLowColumn();
+        double[] closeVals = dataset.getCloseColumn();
         
         //now do the calculation over the entire dataset
         //[First, perform the lookback call if one exists]
         //[Second, do the calculation call from TA-lib]
         Core core = TaLib.getCore();//needs to be here for serialization issues
         int lookback = core.atrLookback(period);
-        core.atr(0, count - 1, highVals, lowVals, closeVals, period, outBegIdx, outNbElement, real);
+        core.atr(0, count - 1, highVals, lowVals, closeVals, period, outBegIdx, outNbElement, out);
         //fix the output array's structure. TA-Lib does NOT match
         //indicator index and dataset index automatically. That's what
         //this function does for us.
-        real = TaLib.fixOutputArray(real, lookback);
+        calcReal = TaLib.fixOutputArray(out, lookback);
+        setCalculated(dataset);
     }
     
     @Override
-    public void shift() {
-    	if (isCalculated()) {
-    		real = indicatorPane.getVisibleReal(real);
+    protected boolean calculateTail(int fromIndex) {
+    	Dataset dataset = getDataset();
+    	int period = getPeriod();
+    	if (calcReal == null || fromIndex < 1 || (period > 1 && fromIndex <= period)) {
+    		return false;
     	}
+    	for (int i = fromIndex; i < dataset.getSize(); i++) {
+    		double tr = TaLib.trueRange(dataset.getHighAt(i), dataset.getLowAt(i), dataset.getCloseAt(i - 1));
+    		if (period <= 1) {
+    			calcReal[i] = tr;
+    		} else {
+    			//Wilder's smoothing, as TA-Lib does
+    			calcReal[i] = (calcReal[i - 1] * (period - 1) + tr) / period;
+    		}
+    	}
+    	return true;
+    }
+    
+    @Override
+    protected double[][] getResult() {
+    	return calcReal == null ? null : new double[][] {calcReal};
+    }
+    
+    @Override
+    protected void setResult(double[][] result) {
+    	calcReal = result == null ? null : result[0];
+    }
+    
+    @Override
+    public void shift() {
+    	real = calcReal == null ? null : indicatorPane.getVisibleReal(calcReal);
     }
 }
 
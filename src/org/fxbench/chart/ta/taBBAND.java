@@ -41,6 +41,10 @@ public class taBBAND extends Indicator
     private double[] realUpper;
     private double[] realMiddle;
     private double[] realLower;
+    //values over the whole dataset
+    private double[] calcUpper;
+    private double[] calcMiddle;
+    private double[] calcLower;
 
     @Override
     public String getName() {
@@ -66,7 +70,7 @@ public class taBBAND extends Indicator
     
     @Override
 	public Range getRangeY() {
-		return isCalculated() ? Range.combine(Range.valueOf(realUpper), Range.valueOf(realLower)) : null;
+		return isCalculated() ? Range.combine(getVisibleRange(calcUpper), getVisibleRange(calcLower)) : null;
 	}
     
     @Override
@@ -103,17 +107,18 @@ public class taBBAND extends Indicator
 
     @Override
     public void calculate() {
-        Dataset dataset = overlayPane.getChartPanel().getDataset();
+        Dataset dataset = getDataset();
         if (dataset == null || dataset.getSize() == 0) {
-        	realUpper = null;
-        	realMiddle = null;
-        	realLower = null;
+        	calcUpper = null;
+        	calcMiddle = null;
+        	calcLower = null;
+        	setCalculated(null);
         	return;
         }
         int count = dataset.getSize();
-        realUpper = new double[count];
-        realMiddle = new double[count];
-        realLower = new double[count];
+        double[] outUpper = new double[count];
+        double[] outMiddle = new double[count];
+        double[] outLower = new double[count];
         
         /**********************************************************************/
         //This entire method is basically a copy/paste action into your own
@@ -129,29 +134,74 @@ public class taBBAND extends Indicator
         double nbdev = getNbDev();
         MAType devType = getMAType(getDevType());
         PriceType priceType = PriceType.valueOf(getPirceType());
-        double[] vals = dataset.getPrices(priceType);
+        double[] vals = dataset.getPriceColumn(priceType);
 
         //now do the calculation over the entire dataset
         //[First, perform the lookback call if one exists]
         //[Second, do the calculation call from TA-lib]
         Core core = TaLib.getCore();//needs to be here for serialization issues
         int lookback = core.bbandsLookback(period, nbdev, nbdev, devType);
-        core.bbands(0, count - 1, vals, period, nbdev, nbdev, devType, outBegIdx, outNbElement, realUpper, realMiddle, realLower);
+        core.bbands(0, count - 1, vals, period, nbdev, nbdev, devType, outBegIdx, outNbElement, outUpper, outMiddle, outLower);
 
         //fix the output array's structure. TA-Lib does NOT match
         //indicator index and dataset index automatically. That's what
         //this function does for us.
-        realUpper = TaLib.fixOutputArray(realUpper, lookback);
-        realMiddle = TaLib.fixOutputArray(realMiddle, lookback);
-        realLower = TaLib.fixOutputArray(realLower, lookback);
+        calcUpper = TaLib.fixOutputArray(outUpper, lookback);
+        calcMiddle = TaLib.fixOutputArray(outMiddle, lookback);
+        calcLower = TaLib.fixOutputArray(outLower, lookback);
+        setCalculated(dataset);
+    }
+    
+    @Override
+    protected boolean calculateTail(int fromIndex) {
+    	Dataset dataset = getDataset();
+    	int period = getPeriod();
+    	if (calcMiddle == null || period < 2 || fromIndex < period - 1 ||
+    		getMAType(getDevType()) != MAType.Sma) {
+    		return false;
+    	}
+    	double nbdev = getNbDev();
+    	PriceType priceType = PriceType.valueOf(getPirceType());
+    	for (int i = fromIndex; i < dataset.getSize(); i++) {
+    		double sum = 0;
+    		double sum2 = 0;
+    		for (int j = i - period + 1; j <= i; j++) {
+    			double val = dataset.getPriceAt(j, priceType);
+    			sum += val;
+    			sum2 += val * val;
+    		}
+    		double middle = sum / period;
+    		double variance = sum2 / period - middle * middle;
+    		double stddev = variance > 0 ? Math.sqrt(variance) : 0;
+    		calcMiddle[i] = middle;
+    		calcUpper[i] = middle + nbdev * stddev;
+    		calcLower[i] = middle - nbdev * stddev;
+    	}
+    	return true;
+    }
+    
+    @Override
+    protected double[][] getResult() {
+    	return calcUpper == null ? null : new double[][] {calcUpper, calcMiddle, calcLower};
+    }
+    
+    @Override
+    protected void setResult(double[][] result) {
+    	calcUpper = result == null ? null : result[0];
+    	calcMiddle = result == null ? null : result[1];
+    	calcLower = result == null ? null : result[2];
     }
     
     @Override
     public void shift() {
-    	if (isCalculated()) {
-    		realUpper = overlayPane.getVisibleReal(realUpper);
-    		realMiddle = overlayPane.getVisibleReal(realMiddle);
-    		realLower = overlayPane.getVisibleReal(realLower);
+    	if (calcUpper == null) {
+    		realUpper = null;
+    		realMiddle = null;
+    		realLower = null;
+    	} else {
+    		realUpper = overlayPane.getVisibleReal(calcUpper);
+    		realMiddle = overlayPane.getVisibleReal(calcMiddle);
+    		realLower = overlayPane.getVisibleReal(calcLower);
     	}
     }
 
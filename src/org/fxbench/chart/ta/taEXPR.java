@@ -0,0 +1,166 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.chart.ta;
+
+import java.awt.Graphics2D;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.fxbench.chart.Canvas;
+import org.fxbench.chart.Dataset;
+import org.fxbench.chart.DefaultPainter;
+import org.fxbench.chart.Range;
+import org.fxbench.util.properties.PropertySheet;
+
+/**
+ * Indicator defined by an expression, drawn over the prices or in its own pane.
+ * The expressions of the indicators of a chart are compiled into the expression
+ * graph of the chart, so that their common sub-expressions are evaluated once.
+ */
+public class taEXPR extends Indicator
+{
+	private final static Log logger = LogFactory.getLog(taEXPR.class);
+    private static String NAME = "EXPR";
+
+    private double[] real;
+    private double[] calcReal;	//values over the whole dataset
+    private ExpressionGraph graph;
+    private ExpressionGraph.Node root;	//root of the compiled expression, null until compiled
+    private boolean invalid;			//the expression does not compile
+
+    @Override
+    public String getName() {
+    	return NAME;
+    }
+
+    @Override
+    public String getLabel() {
+    	return getExpression() + " (n=" + propSheet.getIntVal("n") + ")";
+    }
+
+    @Override
+	public String getValueFormat() {
+		return overlayPane != null ? overlayPane.getAxisYValFormat() : "0.#####";
+	}
+
+    @Override
+	public Double getZoomFactor() {
+		return overlayPane != null ? overlayPane.getZoomYFactor() : 0.01D;
+	}
+
+    @Override
+	public Range getRangeY() {
+		return isCalculated() ? getVisibleRange(calcReal) : null;
+	}
+
+    @Override
+    public void draw(Graphics2D g) {
+    	Canvas pane = getPane();
+    	if (!isCalculated() || pane.getRangeY() == null) {
+    		return;
+    	}
+
+    	g.setFont(getLabelFont());
+    	g.setColor(getColor());
+    	g.drawString(getLabel(), labelBounds.x, labelBounds.y + labelBounds.height);
+
+    	DefaultPainter.line(
+    				g, real, pane.getOriginPoint(), pane.getRangeY(),
+    				pane.getAxisXScale(), pane.getAxisYScale(), getColor());
+    }
+
+    @Override
+    public boolean isCalculated() {
+    	if (real == null || real.length == 0) {
+    		return false;
+    	} else {
+    		return true;
+    	}
+    }
+
+    @Override
+    public void calculate() {
+        Dataset dataset = getDataset();
+        ExpressionGraph.Node node = getRoot();
+        if (dataset == null || dataset.getSize() == 0 || node == null) {
+        	calcReal = null;
+        	setCalculated(null);
+        	return;
+        }
+        calcReal = graph.evaluate(node, dataset);
+        setCalculated(dataset);
+    }
+
+    @Override
+    public void setPropertySheet(PropertySheet propertySheet) {
+    	releaseRoot();
+    	super.setPropertySheet(propertySheet);
+    }
+
+    @Override
+    public void dispose() {
+    	super.dispose();
+    	releaseRoot();
+    }
+
+    //Compiles the expression into the graph of the chart on first use
+    private synchronized ExpressionGraph.Node getRoot() {
+    	Canvas pane = getPane();
+    	if (root == null && !invalid && pane != null) {
+    		graph = pane.getChartPanel().getExpressionGraph();
+    		try {
+    			root = Expression.parse(getExpression()).compile(graph, propSheet);
+    		} catch (IllegalArgumentException e) {
+    			invalid = true;
+    			logger.error(e.getMessage());
+    		}
+    	}
+    	return root;
+    }
+
+    private synchronized void releaseRoot() {
+    	if (root != null) {
+    		graph.release(root);
+    		root = null;
+    	}
+    	invalid = false;
+    }
+
+    private Canvas getPane() {
+    	return overlayPane != null ? overlayPane : indicatorPane;
+    }
+
+    private String getExpression() {
+    	return propSheet.getStrVal("expression");
+    }
+
+    @Override
+    protected double[][] getResult() {
+    	return calcReal == null ? null : new double[][] {calcReal};
+    }
+
+    @Override
+    protected void setResult(double[][] result) {
+    	calcReal = result == null ? null : result[0];
+    }
+
+    @Override
+    public void shift() {
+    	real = calcReal == null ? null : getPane().getVisibleReal(calcReal);
+    }
+
+}
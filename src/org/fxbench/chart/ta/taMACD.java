@@ -40,6 +40,16 @@ public class taMACD extends Indicator
     private double[] outputMacd;
     private double[] outputSignal;
     private double[] outputHist;
+    //values over the whole dataset
+    private double[] calcMacd;
+    private double[] calcSignal;
+    private double[] calcHist;
+    
+    //EMAs up to the bar before the last one
+    private boolean tailReady;
+    private double fastEma;
+    private double slowEma;
+    private double signalEma;
 
     @Override
     public String getName() {
@@ -73,8 +83,8 @@ public class taMACD extends Indicator
 	public Range getRangeY() {
     	return isCalculated() ?
     			Range.combine(
-    					Range.valueOf(outputMacd),
-    					Range.combine(Range.valueOf(outputSignal), Range.valueOf(outputHist)))
+    					getVisibleRange(calcMacd),
+    					Range.combine(getVisibleRange(calcSignal), getVisibleRange(calcHist)))
     			: null;
 	}
     
@@ -112,18 +122,19 @@ public class taMACD extends Indicator
 
     @Override
     public void calculate() {
-        Dataset dataset = indicatorPane.getChartPanel().getDataset();
+        Dataset dataset = getDataset();
         if (dataset == null || dataset.getSize() == 0) {
-        	outputMacd = null;
-        	outputSignal = null;
-        	outputHist = null;
+        	calcMacd = null;
+        	calcSignal = null;
+        	calcHist = null;
+        	setCalculated(null);
         	return;
         }
         
         int count = dataset.getSize();
-        outputMacd = new double[count];
-        outputSignal = new double[count];
-        outputHist = new double[count];
+        double[] outMacd = new double[count];
+        double[] outSignal = new double[count];
+        double[] outHist = new double[count];
         
         /**********************************************************************/
         //This entire method is basically a copy/paste action into your own
@@ -140,29 +151,108 @@ public class taMACD extends Indicator
         int periodSignal = getPeriodSignal();        
         PriceType priceType = PriceType.valueOf(getPirceType());
 
-        double[] vals = dataset.getPrices(priceType);
+        double[] vals = dataset.getPriceColumn(priceType);
 
         //now do the calculation over the entire dataset
         //[First, perform the lookback call if one exists]
         //[Second, do the calculation call from TA-lib]
         Core core = TaLib.getCore();//needs to be here for serialization issues
         int lookback = core.macdLookback(periodFast, periodSlow, periodSignal);
-        core.macd(0, count-1, vals, periodFast, periodSlow, periodSignal, outBegIdx, outNbElement, outputMacd, outputSignal, outputHist);
+        core.macd(0, count-1, vals, periodFast, periodSlow, periodSignal, outBegIdx, outNbElement, outMacd, outSignal, outHist);
 
         //fix the output array's structure. TA-Lib does NOT match
         //indicator index and dataset index automatically. That's what
         //this function does for us.
-        outputMacd = TaLib.fixOutputArray(outputMacd, lookback);
-        outputSignal = TaLib.fixOutputArray(outputSignal, lookback);
-        outputHist = TaLib.fixOutputArray(outputHist, lookback);
+        calcMacd = TaLib.fixOutputArray(outMacd, lookback);
+        calcSignal = TaLib.fixOutputArray(outSignal, lookback);
+        calcHist = TaLib.fixOutputArray(outHist, lookback);
+        initTailState(vals, count, lookback);
+        setCalculated(dataset);
+    }
+    
+    private int getSortedPeriodFast() {
+    	int periodFast = getPeriodFast() == 0 ? 12 : getPeriodFast();
+    	int periodSlow = getPeriodSlow() == 0 ? 26 : getPeriodSlow();
+    	return Math.min(periodFast, periodSlow);
+    }
+    
+    private int getSortedPeriodSlow() {
+    	int periodFast = getPeriodFast() == 0 ? 12 : getPeriodFast();
+    	int periodSlow = getPeriodSlow() == 0 ? 26 : getPeriodSlow();
+    	return Math.max(periodFast, periodSlow);
+    }
+    
+    //Repeats the EMAs of TA-Lib up to the bar before the last one
+    private void initTailState(double[] vals, int count, int lookback) {
+    	int periodFast = getSortedPeriodFast();
+    	int periodSlow = getSortedPeriodSlow();
+    	int periodSignal = getPeriodSignal();
+    	tailReady = getPeriodFast() != 0 && getPeriodSlow() != 0 && periodSignal > 1 && count - 2 >= lookback;
+    	if (!tailReady) {
+    		return;
+    	}
+    	double kFast = 2.0 / (periodFast + 1);
+    	double kSlow = 2.0 / (periodSlow + 1);
+    	double kSignal = 2.0 / (periodSignal + 1);
+    	int first = periodSlow - 1;
+    	fastEma = TaLib.mean(vals, first - periodFast + 1, first);
+    	slowEma = TaLib.mean(vals, 0, first);
+    	double[] macd = new double[periodSignal];
+    	macd[0] = fastEma - slowEma;
+    	for (int i = first + 1; i <= count - 2; i++) {
+    		fastEma = ((vals[i] - fastEma) * kFast) + fastEma;
+    		slowEma = ((vals[i] - slowEma) * kSlow) + slowEma;
+    		if (i <= lookback) {
+    			macd[i - first] = fastEma - slowEma;
+    			if (i == lookback) {
+    				signalEma = TaLib.mean(macd, 0, periodSignal - 1);
+    			}
+    		} else {
+    			signalEma = (((fastEma - slowEma) - signalEma) * kSignal) + signalEma;
+    		}
+    	}
+    }
+    
+    @Override
+    protected boolean calculateTail(int fromIndex) {
+    	Dataset dataset = getDataset();
+    	if (calcMacd == null || !tailReady || fromIndex != dataset.getLastIndex()) {
+    		return false;
+    	}
+    	PriceType priceType = PriceType.valueOf(getPirceType());
+    	double val = dataset.getPriceAt(fromIndex, priceType);
+    	double fast = ((val - fastEma) * (2.0 / (getSortedPeriodFast() + 1))) + fastEma;
+    	double slow = ((val - slowEma) * (2.0 / (getSortedPeriodSlow() + 1))) + slowEma;
+    	double macd = fast - slow;
+    	double signal = ((macd - signalEma) * (2.0 / (getPeriodSignal() + 1))) + signalEma;
+    	calcMacd[fromIndex] = macd;
+    	calcSignal[fromIndex] = signal;
+    	calcHist[fromIndex] = macd - signal;
+    	return true;
+    }
+    
+    @Override
+    protected double[][] getResult() {
+    	return calcMacd == null ? null : new double[][] {calcMacd, calcSignal, calcHist};
+    }
+    
+    @Override
+    protected void setResult(double[][] result) {
+    	calcMacd = result == null ? null : result[0];
+    	calcSignal = result == null ? null : result[1];
+    	calcHist = result == null ? null : result[2];
     }
     
     @Override
     public void shift() {
-    	if (isCalculated()) {
-    		outputMacd = indicatorPane.getVisibleReal(outputMacd);
-        	outputSignal = indicatorPane.getVisibleReal(outputSignal);
-        	outputHist = indicatorPane.getVisibleReal(outputHist);
+    	if (calcMacd == null) {
+    		outputMacd = null;
+    		outputSignal = null;
+    		outputHist = null;
+    	} else {
+    		outputMacd = indicatorPane.getVisibleReal(calcMacd);
+        	outputSignal = indicatorPane.getVisibleReal(calcSignal);
+        	outputHist = indicatorPane.getVisibleReal(calcHist);
     	}
     }
 }
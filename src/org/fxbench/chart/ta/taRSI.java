@@ -38,6 +38,12 @@ public class taRSI extends Indicator
 
     //variables for TA-Lib utilization
     private double[] real;
+    private double[] calcReal;	//values over the whole dataset
+    
+    //Wilder's averages up to the bar before the last one
+    private boolean tailReady;
+    private double prevGain;
+    private double prevLoss;
 
     @Override
     public String getName() {
@@ -105,14 +111,15 @@ public class taRSI extends Indicator
 
     @Override
     public void calculate() {
-        Dataset dataset = indicatorPane.getChartPanel().getDataset();
+        Dataset dataset = getDataset();
         if (dataset == null || dataset.getSize() == 0) {
-        	real = null;
+        	calcReal = null;
+        	setCalculated(null);
         	return;
         }
         
         int count = dataset.getSize();
-        real = new double[count];
+        double[] out = new double[count];
         
         /**********************************************************************/
         //This entire method is basically a copy/paste action into your own
@@ -127,26 +134,94 @@ public class taRSI extends Indicator
         int period = getPeriod();
         PriceType priceType = PriceType.valueOf(getPirceType());
         
-        double[] vals = dataset.getPrices(priceType);
+        double[] vals = dataset.getPriceColumn(priceType);
         
         //now do the calculation over the entire dataset
         //[First, perform the lookback call if one exists]
         //[Second, do the calculation call from TA-lib]
         Core core = TaLib.getCore();//needs to be here for serialization issues
         int lookback = core.rsiLookback(period);
-        core.rsi(0, count - 1, vals, period, outBegIdx, outNbElement, real);
+        core.rsi(0, count - 1, vals, period, outBegIdx, outNbElement, out);
 
         //fix the output array's structure. TA-Lib does NOT match
         //indicator index and dataset index automatically. That's what
         //this function does for us.
-        real = TaLib.fixOutputArray(real, lookback);
+        calcReal = TaLib.fixOutputArray(out, lookback);
+        initTailState(vals, count, period);
+        setCalculated(dataset);
+    }
+    
+    //Repeats the smoothing of TA-Lib up to the bar before the last one
+    private void initTailState(double[] vals, int count, int period) {
+    	tailReady = period > 1 && count - 2 > period;
+    	if (!tailReady) {
+    		return;
+    	}
+    	double prevValue = vals[0];
+    	prevGain = 0;
+    	prevLoss = 0;
+    	for (int i = 1; i <= period; i++) {
+    		double diff = vals[i] - prevValue;
+    		prevValue = vals[i];
+    		if (diff < 0) {
+    			prevLoss -= diff;
+    		} else {
+    			prevGain += diff;
+    		}
+    	}
+    	prevLoss /= period;
+    	prevGain /= period;
+    	for (int i = period + 1; i <= count - 2; i++) {
+    		double diff = vals[i] - prevValue;
+    		prevValue = vals[i];
+    		prevLoss *= (period - 1);
+    		prevGain *= (period - 1);
+    		if (diff < 0) {
+    			prevLoss -= diff;
+    		} else {
+    			prevGain += diff;
+    		}
+    		prevLoss /= period;
+    		prevGain /= period;
+    	}
     }
     
     @Override
-    public void shift() {
-    	if (isCalculated()) {
-    		real = indicatorPane.getVisibleReal(real);
+    protected boolean calculateTail(int fromIndex) {
+    	Dataset dataset = getDataset();
+    	if (calcReal == null || !tailReady || fromIndex != dataset.getLastIndex()) {
+    		return false;
+    	}
+    	int period = getPeriod();
+    	PriceType priceType = PriceType.valueOf(getPirceType());
+    	double diff = dataset.getPriceAt(fromIndex, priceType) - dataset.getPriceAt(fromIndex - 1, priceType);
+    	double gain = prevGain * (period - 1);
+    	double loss = prevLoss * (period - 1);
+    	if (diff < 0) {
+    		loss -= diff;
+    	} else {
+    		gain += diff;
     	}
+    	loss /= period;
+    	gain /= period;
+    	double sum = gain + loss;
+    	calcReal[fromIndex] = TaLib.isZero(sum) ? 0 : 100 * (gain / sum);
+    	return true;
+    }
+    
+    @Override
+    protected double[][] getResult() {
+    	return calcReal == null ? null : new double[][] {calcReal};
+    }
+    
+    @Override
+    protected void setResult(double[][] result) {
+    	calcReal = result == null ? null : result[0];
+    }
+    
+    @Override
+    public void shift() {
+    	real = calcReal == null ? null : indicatorPane.getVisibleReal(calcReal);
     }
 }
 
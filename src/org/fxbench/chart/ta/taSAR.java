@@ -38,6 +38,14 @@ public class taSAR extends Indicator
 
     //variables for TA-Lib utilization
     private double[] real;
+    private double[] calcReal;	//values over the whole dataset
+    
+    //Parabolic state before the last bar
+    private boolean tailReady;
+    private boolean isLong;
+    private double sar;
+    private double ep;
+    private double af;
 
     @Override
     public String getName() {
@@ -62,7 +70,7 @@ public class taSAR extends Indicator
     
     @Override
 	public Range getRangeY() {
-		return isCalculated() ? Range.valueOf(real) : null;
+		return isCalculated() ? getVisibleRange(calcReal) : null;
 	}
     
     @Override
@@ -91,13 +99,14 @@ public class taSAR extends Indicator
 
     @Override
     public void calculate() {
-        Dataset dataset = overlayPane.getChartPanel().getDataset();
+        Dataset dataset = getDataset();
         if (dataset == null || dataset.getSize() == 0) {
-        	real = null;
+        	calcReal = null;
+        	setCalculated(null);
         	return;
         }
         int count = dataset.getSize();
-        real = new double[count];
+        double[] out = new double[count];
         
         /**********************************************************************/
         //This entire method is basically a copy/paste action into your own
@@ -111,27 +120,131 @@ public class taSAR extends Indicator
         MInteger outNbElement = new MInteger();
         double step = getStep();
         double max = getMax();
-        double[] highVals = dataset.getHighValues();
-        double[] lowVals = dataset.getLowValues();
+        double[] highVals = dataset.getHighColumn();
+        double[] lowVals = dataset.getLowColumn();
 
         //now do the calculation over the entire dataset
         //[First, perform the lookback call if one exists]
         //[Second, do the calculation call from TA-lib]
         Core core = TaLib.getCore();//needs to be here for serialization issues
         int lookback = core.sarLookback(step, max);
-        core.sar(0, count - 1, highVals, lowVals, step, max, outBegIdx, outNbElement, real);
+        core.sar(0, count - 1, highVals, lowVals, step, max, outBegIdx, outNbElement, out);
 
         //fix the output array's structure. TA-Lib does NOT match
         //indicator index and dataset index automatically. That's what
         //this function does for us.
-        real = TaLib.fixOutputArray(real, lookback);
+        calcReal = TaLib.fixOutputArray(out, lookback);
+        initTailState(highVals, lowVals, count, step, max);
+        setCalculated(dataset);
+    }
+    
+    //Repeats the SAR loop of TA-Lib up to the bar before the last one
+    private void initTailState(double[] highVals, double[] lowVals, int count, double step, double max) {
+    	tailReady = count - 2 >= 1;
+    	if (!tailReady) {
+    		return;
+    	}
+    	if (step > max) {
+    		step = max;
+    	}
+    	af = step;
+    	double diffP = highVals[1] - highVals[0];
+    	double diffM = lowVals[0] - lowVals[1];
+    	isLong = !(diffM > 0 && diffP < diffM);
+    	if (isLong) {
+    		ep = highVals[1];
+    		sar = lowVals[0];
+    	} else {
+    		ep = lowVals[1];
+    		sar = highVals[0];
+    	}
+    	for (int i = 1; i <= count - 2; i++) {
+    		int prev = i == 1 ? 1 : i - 1;
+    		next(highVals[i], lowVals[i], highVals[prev], lowVals[prev], step, max);
+    	}
+    }
+    
+    //Moves the parabolic state over one bar and returns the SAR of that bar
+    private double next(double newHigh, double newLow, double prevHigh, double prevLow, double step, double max) {
+    	double out;
+    	if (isLong) {
+    		if (newLow <= sar) {
+    			isLong = false;
+    			sar = Math.max(ep, Math.max(prevHigh, newHigh));
+    			out = sar;
+    			af = step;
+    			ep = newLow;
+    			sar = sar + af * (ep - sar);
+    			sar = Math.max(sar, Math.max(prevHigh, newHigh));
+    		} else {
+    			out = sar;
+    			if (newHigh > ep) {
+    				ep = newHigh;
+    				af = Math.min(af + step, max);
+    			}
+    			sar = sar + af * (ep - sar);
+    			sar = Math.min(sar, Math.min(prevLow, newLow));
+    		}
+    	} else {
+    		if (newHigh >= sar) {
+    			isLong = true;
+    			sar = Math.min(ep, Math.min(prevLow, newLow));
+    			out = sar;
+    			af = step;
+    			ep = newHigh;
+    			sar = sar + af * (ep - sar);
+    			sar = Math.min(sar, Math.min(prevLow, newLow));
+    		} else {
+    			out = sar;
+    			if (newLow < ep) {
+    				ep = newLow;
+    				af = Math.min(af + step, max);
+    			}
+    			sar = sar + af * (ep - sar);
+    			sar = Math.max(sar, Math.max(prevHigh, newHigh));
+    		}
+    	}
+    	return out;
     }
     
     @Override
-    public void shift() {
-    	if (isCalculated()) {
-    		real = overlayPane.getVisibleReal(real);
+    protected boolean calculateTail(int fromIndex) {
+    	Dataset dataset = getDataset();
+    	if (calcReal == null || !tailReady || fromIndex != dataset.getLastIndex()) {
+    		return false;
     	}
+    	double step = getStep();
+    	double max = getMax();
+    	if (step > max) {
+    		step = max;
+    	}
+    	boolean saveIsLong = isLong;
+    	double saveSar = sar;
+    	double saveEp = ep;
+    	double saveAf = af;
+    	calcReal[fromIndex] = next(dataset.getHighAt(fromIndex), dataset.getLowAt(fromIndex),
+    			dataset.getHighAt(fromIndex - 1), dataset.getLowAt(fromIndex - 1), step, max);
+    	//the forming bar must not move the state
+    	isLong = saveIsLong;
+    	sar = saveSar;
+    	ep = saveEp;
+    	af = saveAf;
+    	return true;
+    }
+    
+    @Override
+    protected double[][] getResult() {
+    	return calcReal == null ? null : new double[][] {calcReal};
+    }
+    
+    @Override
+    protected void setResult(double[][] result) {
+    	calcReal = result == null ? null : result[0];
+    }
+    
+    @Override
+    public void shift() {
+    	real = calcReal == null ? null : overlayPane.getVisibleReal(calcReal);
     }
 
 }
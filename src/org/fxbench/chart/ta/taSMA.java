@@ -38,6 +38,7 @@ public class taSMA extends Indicator
 
     //variables for TA-Lib utilization
     private double[] real;
+    private double[] calcReal;	//values over the whole dataset
 
     @Override
     public String getName() {
@@ -63,7 +64,7 @@ public class taSMA extends Indicator
     
     @Override
 	public Range getRangeY() {
-    	return isCalculated() ? Range.valueOf(real) : null;
+    	return isCalculated() ? getVisibleRange(calcReal) : null;
 	}
     
     @Override
@@ -92,13 +93,14 @@ public class taSMA extends Indicator
 
     @Override
     public void calculate() {
-        Dataset dataset = overlayPane.getChartPanel().getDataset();
+        Dataset dataset = getDataset();
         if (dataset == null || dataset.getSize() == 0) {
-        	real = null;
+        	calcReal = null;
+        	setCalculated(null);
         	return;
         }
         int count = dataset.getSize();
-        real = new double[count];
+        double[] out = new double[count];
         
         /**********************************************************************/
         //This entire method is basically a copy/paste action into your own
@@ -113,26 +115,53 @@ public class taSMA extends Indicator
         int period = getPeriod();
         PriceType priceType = PriceType.valueOf(getPirceType());
         
-        double[] vals = dataset.getPrices(priceType);
+        double[] vals = dataset.getPriceColumn(priceType);
 
         //now do the calculation over the entire dataset
         //[First, perform the lookback call if one exists]
         //[Second, do the calculation call from TA-lib]
         Core core = TaLib.getCore();//needs to be here for serialization issues
         int lookback = core.smaLookback(period);
-        core.sma(0, count - 1, vals, period, outBegIdx, outNbElement, real);
+        core.sma(0, count - 1, vals, period, outBegIdx, outNbElement, out);
 
         //fix the output array's structure. TA-Lib does NOT match
         //indicator index and dataset index automatically. That's what
         //this function does for us.
-        real = TaLib.fixOutputArray(real, lookback);
+        calcReal = TaLib.fixOutputArray(out, lookback);
+        setCalculated(dataset);
     }
     
     @Override
-    public void shift() {
-    	if (isCalculated()) {
-    		real = overlayPane.getVisibleReal(real);
+    protected boolean calculateTail(int fromIndex) {
+    	Dataset dataset = getDataset();
+    	int period = getPeriod();
+    	if (calcReal == null || fromIndex < period - 1) {
+    		return false;
     	}
+    	PriceType priceType = PriceType.valueOf(getPirceType());
+    	for (int i = fromIndex; i < dataset.getSize(); i++) {
+    		double sum = 0;
+    		for (int j = i - period + 1; j <= i; j++) {
+    			sum += dataset.getPriceAt(j, priceType);
+    		}
+    		calcReal[i] = sum / period;
+    	}
+    	return true;
+    }
+    
+    @Override
+    protected double[][] getResult() {
+    	return calcReal == null ? null : new double[][] {calcReal};
+    }
+    
+    @Override
+    protected void setResult(double[][] result) {
+    	calcReal = result == null ? null : result[0];
+    }
+    
+    @Override
+    public void shift() {
+    	real = calcReal == null ? null : overlayPane.getVisibleReal(calcReal);
     }
 }
 
@@ -38,6 +38,10 @@ public class taSTOCHASTIC extends Indicator
     //variables for TA-Lib utilization
     private double[] outputFastD;
     private double[] outputFastK;
+    //values over the whole dataset
+    private double[] calcSlowK;
+    private double[] calcSlowD;
+    private int calcLookback;
 
     @Override
     public String getName() {
@@ -116,16 +120,17 @@ public class taSTOCHASTIC extends Indicator
 
     @Override
     public void calculate() {
-        Dataset dataset = indicatorPane.getChartPanel().getDataset();
+        Dataset dataset = getDataset();
         if (dataset == null || dataset.getSize() == 0) {
-        	outputFastD = null;
-        	outputFastK = null;
+        	calcSlowK = null;
+        	calcSlowD = null;
+        	setCalculated(null);
         	return;
         }
         
         int count = dataset.getSize();
-        outputFastD = new double[count];
-        outputFastK = new double[count];
+        double[] outSlowD = new double[count];
+        double[] outSlowK = new double[count];
         
         /**********************************************************************/
         //This entire method is basically a copy/paste action into your own
@@ -143,29 +148,78 @@ public class taSTOCHASTIC extends Indicator
         MAType slowkType = getMAType(getSlowKType());
         MAType slowdType = getMAType(getSlowDType());
         
-        double[] highVals = dataset.getHighValues();
-        double[] lowVals = dataset.getLowValues();
-        double[] closeVals = dataset.getCloseValues();
+        double[] highVals = dataset.getHighColumn();
+        double[] lowVals = dataset.getLowColumn();
+        double[] closeVals = dataset.getCloseColumn();
 
         //now do the calculation over the entire dataset
         //[First, perform the lookback call if one exists]
         //[Second, do the calculation call from TA-lib]
         Core core = TaLib.getCore();//needs to be here for serialization issues
         int lookback = core.stochLookback(periodK, periodD, slowkType, periodSlowD, slowdType);
-        core.stoch(0, count-1, highVals, lowVals, closeVals, periodK, periodD, slowkType, periodSlowD, slowdType, outBegIdx, outNbElement, outputFastK, outputFastD);
+        core.stoch(0, count-1, highVals, lowVals, closeVals, periodK, periodD, slowkType, periodSlowD, slowdType, outBegIdx, outNbElement, outSlowK, outSlowD);
 
         //fix the output array's structure. TA-Lib does NOT match
         //indicator index and dataset index automatically. That's what
         //this function does for us.
-        outputFastD = TaLib.fixOutputArray(outputFastD, lookback);
-        outputFastK = TaLib.fixOutputArray(outputFastK, lookback);
+        calcSlowK = TaLib.fixOutputArray(outSlowK, lookback);
+        calcSlowD = TaLib.fixOutputArray(outSlowD, lookback);
+        calcLookback = lookback;
+        setCalculated(dataset);
+    }
+    
+    //Fast %K of TA-Lib for the bar at index
+    private double fastK(Dataset dataset, int index, int periodK) {
+    	double lowest = dataset.getLowAt(index);
+    	double highest = dataset.getHighAt(index);
+    	for (int i = index - periodK + 1; i < index; i++) {
+    		lowest = Math.min(lowest, dataset.getLowAt(i));
+    		highest = Math.max(highest, dataset.getHighAt(i));
+    	}
+    	double diff = (highest - lowest) / 100.0;
+    	return diff != 0 ? (dataset.getCloseAt(index) - lowest) / diff : 0;
+    }
+    
+    @Override
+    protected boolean calculateTail(int fromIndex) {
+    	Dataset dataset = getDataset();
+    	if (calcSlowK == null || fromIndex < calcLookback ||
+    		getMAType(getSlowKType()) != MAType.Sma || getMAType(getSlowDType()) != MAType.Sma) {
+    		return false;
+    	}
+    	int periodK = getPeriodK();
+    	int periodD = getPeriodD();
+    	int periodSlowD = getPeriodSlowD();
+    	for (int i = fromIndex; i < dataset.getSize(); i++) {
+    		double sumK = 0;
+    		for (int j = i - periodD + 1; j <= i; j++) {
+    			sumK += fastK(dataset, j, periodK);
+    		}
+    		calcSlowK[i] = sumK / periodD;
+    		calcSlowD[i] = TaLib.mean(calcSlowK, i - periodSlowD + 1, i);
+    	}
+    	return true;
+    }
+    
+    @Override
+    protected double[][] getResult() {
+    	return calcSlowK == null ? null : new double[][] {calcSlowK, calcSlowD};
+    }
+    
+    @Override
+    protected void setResult(double[][] result) {
+    	calcSlowK = result == null ? null : result[0];
+    	calcSlowD = result == null ? null : result[1];
     }
     
     @Override
     public void shift() {
-    	if (isCalculated()) {
-    		outputFastD = indicatorPane.getVisibleReal(outputFastD);
-    		outputFastK = indicatorPane.getVisibleReal(outputFastK);
+    	if (calcSlowK == null) {
+    		outputFastD = null;
+    		outputFastK = null;
+    	} else {
+    		outputFastD = indicatorPane.getVisibleReal(calcSlowD);
+    		outputFastK = indicatorPane.getVisibleReal(calcSlowK);
     	}
     }
 }
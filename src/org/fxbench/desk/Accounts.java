@@ -30,6 +30,10 @@ import org.fxbench.util.signal.Signal.SignalType;
 import org.fxbench.util.signal.SignalVector;
 import org.fxbench.util.signal.Signaler;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * A collection of Account objects.
  */
@@ -99,6 +103,15 @@ public class Accounts extends SignalVector implements ISignalListener
 //		}
     }
     
+    @Override
+    public void addAll(List<? extends BaseEntity> entityList) {
+    	super.addAll(entityList);
+    	for (BaseEntity entity : entityList) {
+    		fillAccount((TAccount)entity);
+    	}
+    	updateTotals();
+    }
+    
     @Override
     public BaseEntity set(int index, BaseEntity entity) {
         BaseEntity oldEntity = super.set(index, entity);
@@ -147,12 +160,16 @@ public class Accounts extends SignalVector implements ISignalListener
     }
 
     private TAccount update(TAccount aAccount) {
+        fillAccount(aAccount);
+        updateTotals();
+        return aAccount;
+    }
+    
+    private void fillAccount(TAccount aAccount) {
         double dblGrossPnLSum = tradeDesk.getOpenPositions().getGrossPLSum(aAccount.getAccountId());
         aAccount.setGrossPL(dblGrossPnLSum);
         aAccount.setEquity(aAccount.getBalance() + dblGrossPnLSum);
         aAccount.setUsableMargin(aAccount.getEquity() - aAccount.getUsedMargin());
-        updateTotals();
-        return aAccount;
     }
 
     private void updateTotals() {
@@ -203,6 +220,15 @@ public class Accounts extends SignalVector implements ISignalListener
 	        Object obj = signal.getElement();
 	        if (obj instanceof TPosition) {
 	        	update(getAccount(((TPosition)obj).getAccountId()));
+	        } else if (signal.getType() == SignalType.BATCH) {
+	        	Set<String> accountSet = new HashSet<String>();
+	        	for (Object element : signal.getElements()) {
+	        		String accountId = ((TPosition)element).getAccountId();
+	        		if (accountSet.add(accountId) && getAccount(accountId) != null) {
+	        			fillAccount(getAccount(accountId));
+	        		}
+	        	}
+	        	updateTotals();
 	        }
     	}
     }
@@ -0,0 +1,196 @@
+package org.fxbench.desk;
+
+import java.util.Calendar;
+
+import org.fxbench.entity.TPriceBar;
+import org.fxbench.entity.TPriceBar.Interval;
+import org.fxbench.util.properties.SettingManager;
+
+/**
+ * Builds the bars of a higher interval of one symbol from its m1 bars.<br>
+ * Minute intervals start at the whole minutes of the local clock, hour intervals
+ * and days start from the trading day, which begins at the market open hour.
+ * Base bars inside the closed market are skipped like in PriceBars.addPriceBarStartDate.<br>
+ * The forming bar is the merge of the closed base bars of its period and the
+ * base tail, so an update of the base tail costs O(1).<br>
+ * Not thread safe, called with the base series and then the derived series locked.
+ */
+public class BarAggregator
+{
+	public final static Interval BASE_INTERVAL = Interval.m1;
+
+	private final static int ASK_OPEN = 0;
+	private final static int ASK_HIGH = 1;
+	private final static int ASK_LOW = 2;
+	private final static int ASK_CLOSE = 3;
+	private final static int BID_OPEN = 4;
+	private final static int BID_HIGH = 5;
+	private final static int BID_LOW = 6;
+	private final static int BID_CLOSE = 7;
+
+	private final String symbol;
+	private final Interval interval;
+	private final Calendar calendar;
+	private volatile PriceBarSeries series;	//Series the bars are built into, null until built
+
+	private long bucketBegin;		//Period of the forming bar
+	private long bucketEnd;
+	private final double[] closed;	//Merge of the base bars of the period before the base tail
+	private boolean hasClosed;
+	private long baseTailTime;
+	private final double[] baseTail;
+	private boolean hasBaseTail;
+	private boolean added;			//The last update added a bar
+
+	public BarAggregator(String symbol, Interval interval) {
+		this.symbol = symbol;
+		this.interval = interval;
+		calendar = Calendar.getInstance();
+		closed = new double[8];
+		baseTail = new double[8];
+	}
+
+	public static boolean isDerivable(Interval interval) {
+		return interval.getSeconds() > BASE_INTERVAL.getSeconds() && interval.getSeconds() <= Interval.D1.getSeconds();
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public Interval getInterval() {
+		return interval;
+	}
+
+	public PriceBarSeries getSeries() {
+		return series;
+	}
+
+	public void reset() {
+		series = null;
+		bucketBegin = 0;
+		bucketEnd = 0;
+		hasClosed = false;
+		hasBaseTail = false;
+	}
+
+	//Builds all the bars of the series from the base series
+	public void build(PriceBarSeries baseSeries, PriceBarSeries series) {
+		reset();
+		series.clear();
+		this.series = series;
+		for (int i = 0; i < baseSeries.size(); i++) {
+			update(baseSeries.get(i));
+		}
+	}
+
+	/**
+	 * Takes over a new or changed base tail.
+	 * @return the bar added to or changed in the series, null if the base bar was skipped
+	 */
+	public TPriceBar update(TPriceBar baseBar) {
+		added = false;
+		if (series == null) {
+			return null;
+		}
+		long time = baseBar.getStartDate().getTime();
+		if (hasBaseTail && time < baseTailTime) {
+			return null;	//Older than the tail, not a stream update
+		}
+		if (!hasBaseTail || time >= bucketEnd || time < bucketBegin) {
+			if (!locateBucket(time)) {
+				return null;
+			}
+			hasClosed = false;
+			added = true;
+		} else if (time > baseTailTime) {
+			//The previous base tail is closed
+			merge(closed, hasClosed, baseTail);
+			hasClosed = true;
+		}
+		baseTailTime = time;
+		hasBaseTail = true;
+		copy(baseBar, baseTail);
+
+		TPriceBar priceBar;
+		if (hasClosed) {
+			priceBar = TPriceBar.valueOf(symbol, interval, bucketBegin,
+					closed[ASK_OPEN], Math.max(closed[ASK_HIGH], baseTail[ASK_HIGH]),
+					Math.min(closed[ASK_LOW], baseTail[ASK_LOW]), baseTail[ASK_CLOSE],
+					closed[BID_OPEN], Math.max(closed[BID_HIGH], baseTail[BID_HIGH]),
+					Math.min(closed[BID_LOW], baseTail[BID_LOW]), baseTail[BID_CLOSE]);
+		} else {
+			priceBar = TPriceBar.valueOf(symbol, interval, bucketBegin,
+					baseTail[ASK_OPEN], baseTail[ASK_HIGH], baseTail[ASK_LOW], baseTail[ASK_CLOSE],
+					baseTail[BID_OPEN], baseTail[BID_HIGH], baseTail[BID_LOW], baseTail[BID_CLOSE]);
+		}
+		if (added || series.size() == 0) {
+			series.add(priceBar);
+		} else {
+			series.set(series.size() - 1, priceBar);
+		}
+		return priceBar;
+	}
+
+	//Whether the last update() added a bar to the series, otherwise it changed the tail
+	public boolean isAdded() {
+		return added;
+	}
+
+	//Sets the period containing time, false if the market is closed then
+	private boolean locateBucket(long time) {
+		calendar.setTimeInMillis(time);
+		if (PriceBars.isMarketClosed(calendar)) {
+			return false;
+		}
+		long length = interval.getMilliSecond();
+		if (length < Interval.H1.getMilliSecond()) {
+			long zoneOffset = calendar.get(Calendar.ZONE_OFFSET) + calendar.get(Calendar.DST_OFFSET);
+			bucketBegin = time - mod(time + zoneOffset, length);
+		} else {
+			//The trading day begins at the market open hour
+			int openHour = SettingManager.getInstance().getMarketOpenHour();
+			if (calendar.get(Calendar.HOUR_OF_DAY) < openHour) {
+				calendar.add(Calendar.DAY_OF_MONTH, -1);
+			}
+			calendar.set(Calendar.HOUR_OF_DAY, openHour);
+			calendar.set(Calendar.MINUTE, 0);
+			calendar.set(Calendar.SECOND, 0);
+			calendar.set(Calendar.MILLISECOND, 0);
+			long dayBegin = calendar.getTimeInMillis();
+			bucketBegin = dayBegin + (time - dayBegin) / length * length;
+		}
+		bucketEnd = bucketBegin + length;
+		return true;
+	}
+
+	private static long mod(long value, long divisor) {
+		long mod = value % divisor;
+		return mod < 0 ? mod + divisor : mod;
+	}
+
+	private static void copy(TPriceBar priceBar, double[] values) {
+		values[ASK_OPEN] = priceBar.getAskOpen();
+		values[ASK_HIGH] = priceBar.getAskHigh();
+		values[ASK_LOW] = priceBar.getAskLow();
+		values[ASK_CLOSE] = priceBar.getAskClose();
+		values[BID_OPEN] = priceBar.getBidOpen();
+		values[BID_HIGH] = priceBar.getBidHigh();
+		values[BID_LOW] = priceBar.getBidLow();
+		values[BID_CLOSE] = priceBar.getBidClose();
+	}
+
+	//Merges the later values into the accumulated ones
+	private static void merge(double[] accumulated, boolean hasAccumulated, double[] later) {
+		if (!hasAccumulated) {
+			System.arraycopy(later, 0, accumulated, 0, later.length);
+			return;
+		}
+		accumulated[ASK_HIGH] = Math.max(accumulated[ASK_HIGH], later[ASK_HIGH]);
+		accumulated[ASK_LOW] = Math.min(accumulated[ASK_LOW], later[ASK_LOW]);
+		accumulated[ASK_CLOSE] = later[ASK_CLOSE];
+		accumulated[BID_HIGH] = Math.max(accumulated[BID_HIGH], later[BID_HIGH]);
+		accumulated[BID_LOW] = Math.min(accumulated[BID_LOW], later[BID_LOW]);
+		accumulated[BID_CLOSE] = later[BID_CLOSE];
+	}
+}
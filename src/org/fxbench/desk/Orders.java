@@ -63,6 +63,19 @@ public class Orders extends SignalVector implements ISignalListener
         mTradeIdMap.put(order.getTradeId(), order);
         super.add(order);
     }
+    
+    @Override
+    public void addAll(List<? extends BaseEntity> entityList) {
+    	for (BaseEntity entity : entityList) {
+    		TOrder order = (TOrder)entity;
+    		if (order.getRate() == 0.0) {
+    			TOffer rate = tradeDesk.getOffers().getOffer(order.getSymbol());
+    			order.setRate(order.getBS() == BnS.BUY ? rate.getAsk() : rate.getBid());
+    		}
+    		mTradeIdMap.put(order.getTradeId(), order);
+    	}
+    	super.addAll(entityList);
+    }
 
     /**
      * Finds the order by order id, returns null if not found.
@@ -0,0 +1,132 @@
+package org.fxbench.desk;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fxbench.entity.TPosition;
+
+/**
+ * The positions of each symbol sorted by open time and by close time,
+ * so that the positions opened or closed inside a period are found by binary search.<br>
+ * Maintained by Positions on every add, set and remove, under the lock of its list.
+ */
+class PositionTimeIndex
+{
+	private final Map<String, List<TPosition>> mapOpened;	//symbol -> positions by open time
+	private final Map<String, List<TPosition>> mapClosed;	//symbol -> positions with a close time, by close time
+
+	PositionTimeIndex() {
+		mapOpened = new HashMap<String, List<TPosition>>();
+		mapClosed = new HashMap<String, List<TPosition>>();
+	}
+
+	void add(TPosition position) {
+		if (position.getSymbol() == null) {
+			return;
+		}
+		if (position.getOpenTime() != null) {
+			insert(getList(mapOpened, position.getSymbol()), position, position.getOpenTime().getTime(), true);
+		}
+		if (position.getCloseTime() != null) {
+			insert(getList(mapClosed, position.getSymbol()), position, position.getCloseTime().getTime(), false);
+		}
+	}
+
+	void remove(TPosition position) {
+		if (position.getSymbol() == null) {
+			return;
+		}
+		remove(mapOpened.get(position.getSymbol()), position, true);
+		remove(mapClosed.get(position.getSymbol()), position, false);
+	}
+
+	void clear() {
+		mapOpened.clear();
+		mapClosed.clear();
+	}
+
+	/**
+	 * Positions of symbol opened or closed from fromDate to toDate (inclusive),
+	 * each position once, in open time order followed by the ones only closed inside.
+	 */
+	List<TPosition> getPositions(String symbol, Date fromDate, Date toDate) {
+		List<TPosition> positionList = new ArrayList<TPosition>();
+		long fromTime = fromDate.getTime();
+		long toTime = toDate.getTime();
+		List<TPosition> opened = mapOpened.get(symbol);
+		if (opened != null) {
+			for (int i = ceilIndex(opened, fromTime, true); i < opened.size() && getTime(opened.get(i), true) <= toTime; i++) {
+				positionList.add(opened.get(i));
+			}
+		}
+		List<TPosition> closed = mapClosed.get(symbol);
+		if (closed != null) {
+			for (int i = ceilIndex(closed, fromTime, false); i < closed.size() && getTime(closed.get(i), false) <= toTime; i++) {
+				TPosition position = closed.get(i);
+				long openTime = position.getOpenTime() == null ? Long.MIN_VALUE : position.getOpenTime().getTime();
+				if (openTime < fromTime || openTime > toTime) {
+					positionList.add(position);
+				}
+			}
+		}
+		return positionList;
+	}
+
+	private static List<TPosition> getList(Map<String, List<TPosition>> map, String symbol) {
+		List<TPosition> list = map.get(symbol);
+		if (list == null) {
+			list = new ArrayList<TPosition>();
+			map.put(symbol, list);
+		}
+		return list;
+	}
+
+	private static long getTime(TPosition position, boolean byOpen) {
+		return byOpen ? position.getOpenTime().getTime() : position.getCloseTime().getTime();
+	}
+
+	//Index of the first position at or after time
+	private static int ceilIndex(List<TPosition> list, long time, boolean byOpen) {
+		int low = 0;
+		int high = list.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getTime(list.get(mid), byOpen) < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	//Inserted after the positions of the same time
+	private static void insert(List<TPosition> list, TPosition position, long time, boolean byOpen) {
+		list.add(ceilIndex(list, time + 1, byOpen), position);
+	}
+
+	//The position is looked up by identity among the ones of the same time, its time may have changed
+	private static void remove(List<TPosition> list, TPosition position, boolean byOpen) {
+		if (list == null) {
+			return;
+		}
+		Date date = byOpen ? position.getOpenTime() : position.getCloseTime();
+		if (date != null) {
+			for (int i = ceilIndex(list, date.getTime(), byOpen); i < list.size() && getTime(list.get(i), byOpen) == date.getTime(); i++) {
+				if (list.get(i) == position) {
+					list.remove(i);
+					return;
+				}
+			}
+		}
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i) == position) {
+				list.remove(i);
+				return;
+			}
+		}
+	}
+}
@@ -36,9 +36,9 @@ import org.fxbench.util.signal.Signaler;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * A collection of Position objects for all open positions.
@@ -53,14 +53,24 @@ public class Positions extends SignalVector implements ISignalListener
     private double mTotalInterest;
     private double mTotalNetPnL;
     private double mTotalUsedMargin;
+    private final PositionTimeIndex timeIndex;	//Guarded by listEntity, updated after the list signal
+    private final Map<String, SymbolTotals> mapSymbolTotals;	//symbol -> positions and subtotals, guarded by listEntity
+    private SymbolTotals grandTotals;	//Sum of mapSymbolTotals, null once a subtotal has changed, guarded by listEntity
     
     public Positions(TradeDesk tradeDesk) {
     	this.tradeDesk = tradeDesk;
+    	this.timeIndex = new PositionTimeIndex();
+    	this.mapSymbolTotals = new HashMap<String, SymbolTotals>();
     }
     
     @Override
     public void clear() {
-    	super.clear();
+    	synchronized (listEntity) {
+    		super.clear();
+    		timeIndex.clear();
+    		mapSymbolTotals.clear();
+    		grandTotals = null;
+    	}
     	updateTotals();
     }
     
@@ -82,22 +92,83 @@ public class Positions extends SignalVector implements ISignalListener
             position.setClose(rate.getClosePrice(position.getBS()));
             fillPosition(position, rate);
         }
+		//The subtotals are read by the listeners of the signal
+		synchronized (listEntity) {
+			addSymbolTotals(position);
+		}
 		super.add(entity);
+		synchronized (listEntity) {
+			timeIndex.add(position);
+		}
 		updateTotals();
     }
     
+    @Override
+    public void addAll(List<? extends BaseEntity> entityList) {
+    	for (BaseEntity entity : entityList) {
+    		TPosition position = (TPosition)entity;
+    		if (position.getStage() == TPosition.Stage.Open && position.getClose() == 0) {
+    			TOffer rate = tradeDesk.getOffers().getOffer(position.getSymbol());
+    			position.setClose(rate.getClosePrice(position.getBS()));
+    			fillPosition(position, rate);
+    		}
+    	}
+    	synchronized (listEntity) {
+    		for (BaseEntity entity : entityList) {
+    			addSymbolTotals((TPosition)entity);
+    		}
+    	}
+    	super.addAll(entityList);
+    	synchronized (listEntity) {
+    		for (BaseEntity entity : entityList) {
+    			timeIndex.add((TPosition)entity);
+    		}
+    	}
+    	updateTotals();
+    }
+    
     @Override
     public BaseEntity remove(int aIndex) {
+    	synchronized (listEntity) {
+    		TPosition position = (TPosition)get(aIndex);
+    		if (position != null) {
+    			removeSymbolTotals(position);
+    		}
+    	}
     	BaseEntity removedEntity = super.remove(aIndex);
+    	if (removedEntity != null) {
+    		synchronized (listEntity) {
+    			timeIndex.remove((TPosition)removedEntity);
+    		}
+    	}
     	updateTotals();
     	return removedEntity;
     }
 
     @Override
     public BaseEntity set(int index, BaseEntity entity) {
-    	BaseEntity oldEntity = super.set(index, entity);
     	TPosition position = (TPosition) entity;
+    	synchronized (listEntity) {
+    		TPosition oldPosition = (TPosition)get(index);
+    		if (oldPosition != null) {
+    			removeSymbolTotals(oldPosition);
+    			addSymbolTotals(position);
+    		}
+    	}
+    	BaseEntity oldEntity = super.set(index, entity);
         fillPosition(position, tradeDesk.getOffers().getOffer(position.getSymbol()));
+    	synchronized (listEntity) {
+    		if (oldEntity != null) {
+    			timeIndex.remove((TPosition)oldEntity);
+    			timeIndex.add(position);
+    		}
+    		//Sums the symbol again with the filled position
+    		SymbolTotals totals = mapSymbolTotals.get(position.getSymbol());
+    		if (totals != null) {
+    			totals.recalc();
+    			grandTotals = null;
+    		}
+    	}
     	updateTotals();
         return oldEntity;
     }
@@ -159,17 +230,53 @@ public class Positions extends SignalVector implements ISignalListener
     }
 
     public double getGrossPLSum(String accountId) {
-    	double dblGrossPLSum = 0.0;
-        // calculating sum of all positions for the account
+        return getGrandTotals().getGrossPL(accountId);
+    }
+    
+    //Snapshot of the subtotals of symbol, null if it has no position
+    SymbolTotals getSymbolTotals(String symbol) {
+    	synchronized (listEntity) {
+    		SymbolTotals totals = mapSymbolTotals.get(symbol);
+    		return totals == null ? null : totals.copy();
+    	}
+    }
+    
+    /**
+     * Totals of all the symbols, summed once per change of the subtotals and shared
+     * by the callers until the next one. Read only.
+     */
+    SymbolTotals getGrandTotals() {
     	synchronized (listEntity) {
-	    	for (BaseEntity entity : listEntity) {
-	    		TPosition position = (TPosition)entity;
-	    		if (accountId.equals(position.getAccountId())) {
-	                dblGrossPLSum += position.getGrossPL();
-	            }
-	    	}
+    		if (grandTotals == null) {
+    			SymbolTotals totals = new SymbolTotals();
+    			for (SymbolTotals symbolTotals : mapSymbolTotals.values()) {
+    				totals.addTotals(symbolTotals);
+    			}
+    			grandTotals = totals;
+    		}
+    		return grandTotals;
+    	}
+    }
+    
+    private void addSymbolTotals(TPosition position) {
+    	SymbolTotals totals = mapSymbolTotals.get(position.getSymbol());
+    	if (totals == null) {
+    		totals = new SymbolTotals();
+    		mapSymbolTotals.put(position.getSymbol(), totals);
+    	}
+    	totals.add(position);
+    	grandTotals = null;
+    }
+    
+    private void removeSymbolTotals(TPosition position) {
+    	SymbolTotals totals = mapSymbolTotals.get(position.getSymbol());
+    	if (totals != null) {
+    		totals.remove(position);
+    		if (totals.getCount() == 0) {
+    			mapSymbolTotals.remove(position.getSymbol());
+    		}
+    		grandTotals = null;
     	}
-        return dblGrossPLSum;
     }
     
     private void fillPosition(TPosition aOpenPos, TOffer aRate) {
@@ -210,25 +317,13 @@ public class Positions extends SignalVector implements ISignalListener
         }
     }
     
-    public List<TPosition> getVisiblePositions(Date fromDate, Date toDate) {
-    	List<TPosition> positionList = new ArrayList<TPosition>();
+    /**
+     * Positions of symbol opened or closed from fromDate to toDate, found through the time index.
+     */
+    public List<TPosition> getVisiblePositions(String symbol, Date fromDate, Date toDate) {
     	synchronized (listEntity) {
-	        for (int i = 0; i < listEntity.size(); i++) {
-	        	boolean isAdd = false;
-	        	TPosition position = (TPosition)listEntity.get(i);
-	        	if (position.getOpenTime().compareTo(fromDate) >= 0 &&
-	        		position.getOpenTime().compareTo(toDate) <= 0) {
-	        		positionList.add(position);
-	        		isAdd = true;
-	        	}
-        		if (!isAdd && position.getCloseTime() != null &&
-        			position.getCloseTime().compareTo(fromDate) >= 0 &&
-	        		position.getCloseTime().compareTo(toDate) <= 0) {
-	        		positionList.add(position);
-	        	}
-	        }
+    		return timeIndex.getPositions(symbol, fromDate, toDate);
     	}
-    	return positionList;
     }
     
     @Override
@@ -265,26 +360,16 @@ public class Positions extends SignalVector implements ISignalListener
 		}
     }
 
+    //Sums the subtotals of the symbols
     private void updateTotals() {
-        mTotalAmount = 0;
-        mTotalPipPL = 0;
-        mTotalGrossPnL = 0;
-        mTotalNetPnL = 0;
-        mTotalCommision = 0;
-        mTotalInterest = 0;
-        mTotalUsedMargin = 0;
-        synchronized (listEntity) {
-	        for (int i = 0; i < listEntity.size(); i++) {
-	            TPosition openPos = (TPosition) listEntity.get(i);
-	            mTotalGrossPnL += openPos.getGrossPL();
-	            mTotalNetPnL += openPos.getNetPL();
-	            mTotalCommision += openPos.getCom();
-	            mTotalInterest += openPos.getInterest();
-	            mTotalUsedMargin += openPos.getUsedMargin();
-	            mTotalAmount += openPos.getAmount();
-	            mTotalPipPL += openPos.getPl();
-	        }
-        }
+    	SymbolTotals totals = getGrandTotals();
+        mTotalGrossPnL = totals.getGrossPLBuy() + totals.getGrossPLSell();
+        mTotalNetPnL = totals.getNetPL();
+        mTotalCommision = totals.getCom();
+        mTotalInterest = totals.getInterest();
+        mTotalUsedMargin = totals.getUsedMargin();
+        mTotalAmount = totals.getAmountBuy() + totals.getAmountSell();
+        mTotalPipPL = totals.getPipPL();
     }
     
     @Override
@@ -294,52 +379,36 @@ public class Positions extends SignalVector implements ISignalListener
     	}
     	if (signal.getType() == SignalType.CHANGE) {
             TOffer rate = (TOffer)signal.getNewElement();
-            // For all open positions for this currency
-            mTotalAmount = 0;
-            mTotalPipPL = 0;
-            mTotalGrossPnL = 0;
-            mTotalNetPnL = 0;
-            mTotalCommision = 0;
-            mTotalInterest = 0;
-            mTotalUsedMargin = 0;
-            Set<String> ccySet = new HashSet<String>();
-//            Set<String> accountSet = new HashSet<String>();
+            // Only the open positions for this currency and their subtotals are recalculated
             List<Integer> indexList = new ArrayList<Integer>();
             synchronized (listEntity) {
-	            for (int i = 0; i < listEntity.size(); i++) {
-	                TPosition position = (TPosition)listEntity.get(i);
-	                if (rate.getSymbol().equals(position.getSymbol())) {
-	                    double closePrice = rate.getClosePrice(position.getBS());
-	                    if (position.getClose() != closePrice) {
-	                    	position.setClose(closePrice);
-	                        fillPosition(position, rate);
-	                        ////xxx change all values before calling elementchanged later
-	                        if (ccySet.add(position.getSymbol())) {
-	                        	indexList.add(i);
-	                        }
-	//                        accountSet.add(position.getAccountName());
-	                    }                    	
-	                }
-	                mTotalGrossPnL += position.getGrossPL();
-	                mTotalNetPnL += position.getNetPL();
-	                mTotalCommision += position.getCom();
-	                mTotalInterest += position.getInterest();
-	                mTotalUsedMargin += position.getUsedMargin();
-	                mTotalAmount += position.getAmount();
-	                mTotalPipPL += position.getPl();
-	            }
+            	SymbolTotals totals = mapSymbolTotals.get(rate.getSymbol());
+            	if (totals == null) {
+            		return;
+            	}
+            	for (TPosition position : totals.positions) {
+            		double closePrice = rate.getClosePrice(position.getBS());
+            		if (position.getClose() != closePrice) {
+            			position.setClose(closePrice);
+            			fillPosition(position, rate);
+            			////xxx change all values before calling elementchanged later
+            			if (indexList.isEmpty()) {
+            				indexList.add(indexOf(position));
+            			}
+            		}
+            	}
+            	totals.recalc();
+            	grandTotals = null;
+            	updateTotals();
 	            elementChanged(indexList);
             }
-            //this is done here for performance reasons. only update these once per cycle
-//            for (String ccy : ccySet) {
-//                Summaries summaries = tradeDesk.getSummaries();
-//                summaries.update(ccy, signal.getType());
-//            }
-//            for (String acc : accountSet) {
-//                Accounts accounts = tradeDesk.getAccounts();
-//                accounts.update(acc);
-//            }
     	} else {
+    		synchronized (listEntity) {
+    			for (SymbolTotals totals : mapSymbolTotals.values()) {
+    				totals.recalc();
+    			}
+    			grandTotals = null;
+    		}
     		updateTotals();
     	}
     }
@@ -0,0 +1,218 @@
+package org.fxbench.desk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fxbench.entity.TPriceBar;
+import org.fxbench.entity.TPriceBar.Interval;
+
+/**
+ * The price bars of one symbol and interval, sorted by start date.<br>
+ * The bars are stored as primitive columns, a TPriceBar is only created when a bar
+ * is read, and dates are located by binary search over the start time column.<br>
+ * Not thread safe, callers synchronize on the series itself.
+ */
+public class PriceBarSeries
+{
+	private final String symbol;
+	private final Interval interval;
+	private int size;
+	private long[] times;	//Start time of each bar
+	private double[] askOpens;
+	private double[] askHighs;
+	private double[] askLows;
+	private double[] askCloses;
+	private double[] bidOpens;
+	private double[] bidHighs;
+	private double[] bidLows;
+	private double[] bidCloses;
+
+	public PriceBarSeries(String symbol, Interval interval) {
+		this(symbol, interval, 16);
+	}
+
+	public PriceBarSeries(String symbol, Interval interval, int capacity) {
+		this.symbol = symbol;
+		this.interval = interval;
+		allocate(Math.max(16, capacity));
+	}
+
+	private void allocate(int capacity) {
+		times = new long[capacity];
+		askOpens = new double[capacity];
+		askHighs = new double[capacity];
+		askLows = new double[capacity];
+		askCloses = new double[capacity];
+		bidOpens = new double[capacity];
+		bidHighs = new double[capacity];
+		bidLows = new double[capacity];
+		bidCloses = new double[capacity];
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public Interval getInterval() {
+		return interval;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	//A new bar holding the values at index, changing it does not change the series
+	public TPriceBar get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return TPriceBar.valueOf(symbol, interval, times[index],
+				askOpens[index], askHighs[index], askLows[index], askCloses[index],
+				bidOpens[index], bidHighs[index], bidLows[index], bidCloses[index]);
+	}
+
+	public long getTimeAt(int index) {
+		return times[index];
+	}
+
+	public TPriceBar getHead() {
+		return size == 0 ? null : get(0);
+	}
+
+	public TPriceBar getTail() {
+		return size == 0 ? null : get(size - 1);
+	}
+
+	//Index of the last bar starting at or before time, -1 if there is none
+	public int floorIndex(long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low - 1;
+	}
+
+	//Index of the first bar starting at or after time, size() if there is none
+	public int ceilIndex(long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	//Bars from beginPos to endPos (exclusive)
+	public List<TPriceBar> copy(int beginPos, int endPos) {
+		List<TPriceBar> priceBarList = new ArrayList<TPriceBar>(Math.max(0, endPos - beginPos));
+		for (int i = beginPos; i < endPos; i++) {
+			priceBarList.add(get(i));
+		}
+		return priceBarList;
+	}
+
+	public List<TPriceBar> copy() {
+		return copy(0, size);
+	}
+
+	public void add(TPriceBar priceBar) {
+		ensureCapacity(size + 1);
+		put(size, priceBar);
+		size++;
+	}
+
+	public void addAll(List<TPriceBar> priceBarList) {
+		addAll(size, priceBarList);
+	}
+
+	public void addAll(int index, List<TPriceBar> priceBarList) {
+		int count = priceBarList.size();
+		ensureCapacity(size + count);
+		move(index, index + count, size - index);
+		for (int i = 0; i < count; i++) {
+			put(index + i, priceBarList.get(i));
+		}
+		size += count;
+	}
+
+	public void set(int index, TPriceBar priceBar) {
+		put(index, priceBar);
+	}
+
+	/**
+	 * Updates the forming bar with an offer tick, only the primitive columns are touched.
+	 * @return the updated tail, null if the series is empty
+	 */
+	public TPriceBar updateTail(double ask, double bid) {
+		if (size == 0) {
+			return null;
+		}
+		int i = size - 1;
+		askCloses[i] = ask;
+		askHighs[i] = Math.max(askHighs[i], ask);
+		askLows[i] = Math.min(askLows[i], ask);
+		bidCloses[i] = bid;
+		bidHighs[i] = Math.max(bidHighs[i], bid);
+		bidLows[i] = Math.min(bidLows[i], bid);
+		return get(i);
+	}
+
+	//Keeps the first size bars
+	public void truncate(int size) {
+		if (size < this.size) {
+			this.size = Math.max(0, size);
+		}
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	private void put(int index, TPriceBar priceBar) {
+		times[index] = priceBar.getStartDate().getTime();
+		askOpens[index] = priceBar.getAskOpen();
+		askHighs[index] = priceBar.getAskHigh();
+		askLows[index] = priceBar.getAskLow();
+		askCloses[index] = priceBar.getAskClose();
+		bidOpens[index] = priceBar.getBidOpen();
+		bidHighs[index] = priceBar.getBidHigh();
+		bidLows[index] = priceBar.getBidLow();
+		bidCloses[index] = priceBar.getBidClose();
+	}
+
+	private void move(int from, int to, int count) {
+		System.arraycopy(times, from, times, to, count);
+		System.arraycopy(askOpens, from, askOpens, to, count);
+		System.arraycopy(askHighs, from, askHighs, to, count);
+		System.arraycopy(askLows, from, askLows, to, count);
+		System.arraycopy(askCloses, from, askCloses, to, count);
+		System.arraycopy(bidOpens, from, bidOpens, to, count);
+		System.arraycopy(bidHighs, from, bidHighs, to, count);
+		System.arraycopy(bidLows, from, bidLows, to, count);
+		System.arraycopy(bidCloses, from, bidCloses, to, count);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > times.length) {
+			long[] oldTimes = times;
+			double[][] oldColumns = {askOpens, askHighs, askLows, askCloses, bidOpens, bidHighs, bidLows, bidCloses};
+			allocate(Math.max(capacity, times.length * 2));
+			System.arraycopy(oldTimes, 0, times, 0, size);
+			double[][] columns = {askOpens, askHighs, askLows, askCloses, bidOpens, bidHighs, bidLows, bidCloses};
+			for (int i = 0; i < columns.length; i++) {
+				System.arraycopy(oldColumns[i], 0, columns[i], 0, size);
+			}
+		}
+	}
+}
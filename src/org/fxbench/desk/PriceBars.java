@@ -3,9 +3,10 @@ package org.fxbench.desk;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.fxbench.entity.TOffer;
 import org.fxbench.entity.TPriceBar;
@@ -22,32 +23,189 @@ import org.fxbench.util.signal.Signal.SignalType;
 public class PriceBars extends Signaler implements ISignalListener, IServerTimeListener
 {
 	private TradeDesk tradeDesk;
-	private Map<String, List<TPriceBar>> mapPriceBars;
+	//Each series is guarded by its own lock, so a history load of one symbol does not block the others
+	private Map<String, PriceBarSeries> mapPriceBars;
+	private Map<String, List<PriceBarSeries>> mapSymbolSeries;	//Symbol -> its series, walked on every offer tick
+	private Map<String, List<BarAggregator>> mapAggregators;	//Symbol -> builders of its higher intervals
 
 	public PriceBars(TradeDesk tradeDesk) {
     	this.tradeDesk = tradeDesk;
-    	mapPriceBars = new HashMap<String, List<TPriceBar>>();
+    	mapPriceBars = new ConcurrentHashMap<String, PriceBarSeries>();
+    	mapSymbolSeries = new ConcurrentHashMap<String, List<PriceBarSeries>>();
+    	mapAggregators = new ConcurrentHashMap<String, List<BarAggregator>>();
+    	for (String symbol : SettingManager.getInstance().getAggregateSymbols()) {
+    		setAggregation(symbol, true);
+    	}
     	tradeDesk.addServerTimeListener(this);
     }
+    
+    /**
+     * When enabled, the higher intervals of the symbol are built from its m1 bars
+     * instead of being loaded from the host, and kept up to date with them.
+     */
+    public void setAggregation(String symbol, boolean enable) {
+    	if (!enable) {
+    		mapAggregators.remove(symbol);
+    	} else if (!mapAggregators.containsKey(symbol)) {
+    		List<BarAggregator> aggregators = new CopyOnWriteArrayList<BarAggregator>();
+    		for (String period : TPriceBar.SHOW_INTERVAL_LIST) {
+    			Interval interval = Interval.valueOf(period);
+    			if (BarAggregator.isDerivable(interval)) {
+    				aggregators.add(new BarAggregator(symbol, interval));
+    			}
+    		}
+    		mapAggregators.put(symbol, aggregators);
+    	}
+    }
+    
+    public boolean isAggregated(String symbol) {
+    	return mapAggregators.containsKey(symbol);
+    }
+    
+    private BarAggregator getAggregator(String symbol, Interval interval) {
+    	List<BarAggregator> aggregators = mapAggregators.get(symbol);
+    	if (aggregators != null) {
+	    	for (BarAggregator aggregator : aggregators) {
+	    		if (aggregator.getInterval() == interval) {
+	    			return aggregator;
+	    		}
+	    	}
+    	}
+    	return null;
+    }
+    
+    //Whether the series is kept up to date by an aggregator rather than by the host
+    private boolean isAggregatedSeries(PriceBarSeries series) {
+    	List<BarAggregator> aggregators = mapAggregators.get(series.getSymbol());
+    	if (aggregators != null) {
+	    	for (BarAggregator aggregator : aggregators) {
+	    		if (aggregator.getSeries() == series) {
+	    			return true;
+	    		}
+	    	}
+    	}
+    	return false;
+    }
+    
+    /**
+     * Series of a higher interval built from the m1 bars, built at the first request.
+     * Null when the symbol is not aggregated, there are no m1 bars yet, or the interval
+     * has already been loaded from the host.
+     */
+    private PriceBarSeries getAggregatedSeries(String symbol, Interval interval) {
+    	BarAggregator aggregator = getAggregator(symbol, interval);
+    	if (aggregator == null) {
+    		return null;
+    	}
+    	PriceBarSeries baseSeries = mapPriceBars.get(getKey(symbol, BarAggregator.BASE_INTERVAL.name()));
+    	if (baseSeries == null) {
+    		return null;
+    	}
+    	String key = getKey(symbol, interval.name());
+    	PriceBarSeries series = mapPriceBars.get(key);
+    	if (series != null && series == aggregator.getSeries()) {
+    		return series;
+    	}
+    	int baseSize;
+    	synchronized (baseSeries) {
+    		baseSize = baseSeries.size();
+    	}
+    	if (baseSize == 0) {
+    		return null;
+    	}
+    	//Created before the base series is locked, the index lock is never taken inside a series lock
+    	series = getSeries(key, symbol, interval, baseSize / (interval.getSeconds() / BarAggregator.BASE_INTERVAL.getSeconds()) + 1);
+    	synchronized (baseSeries) {
+    		if (series != aggregator.getSeries()) {
+    			synchronized (series) {
+    				if (series.size() > 0) {
+    					return null;	//Loaded from the host
+    				}
+    				aggregator.build(baseSeries, series);
+    			}
+    		}
+    		return series;
+    	}
+    }
+    
+    /**
+     * Takes a new or changed m1 bar over into the built higher intervals,
+     * called with the base series locked. The signals to fire are added to signals.
+     */
+    private void aggregate(TPriceBar baseBar, List<Signal> signals) {
+    	List<BarAggregator> aggregators = mapAggregators.get(baseBar.getSymbol());
+    	if (aggregators == null || baseBar.getInterval() != BarAggregator.BASE_INTERVAL) {
+    		return;
+    	}
+    	for (BarAggregator aggregator : aggregators) {
+    		PriceBarSeries series = aggregator.getSeries();
+    		if (series != null) {
+    			synchronized (series) {
+    				TPriceBar priceBar = aggregator.update(baseBar);
+    				if (priceBar != null && signals != null) {
+    					signals.add(aggregator.isAdded() ?
+    							Signal.newAddSignal(series.size() - 1, priceBar) :
+    							Signal.newChangeSignal(series.size() - 1, priceBar, priceBar));
+    				}
+    			}
+    		}
+    	}
+    }
+    
+    //Rebuilds the built higher intervals after older m1 bars were inserted, called with the base series locked
+    private void reaggregate(PriceBarSeries baseSeries, List<Signal> signals) {
+    	List<BarAggregator> aggregators = mapAggregators.get(baseSeries.getSymbol());
+    	if (aggregators == null) {
+    		return;
+    	}
+    	for (BarAggregator aggregator : aggregators) {
+    		PriceBarSeries series = aggregator.getSeries();
+    		if (series != null) {
+    			synchronized (series) {
+    				aggregator.build(baseSeries, series);
+    				if (series.size() > 0) {
+    					signals.add(Signal.newAddSignal(0, series.getTail()));
+    				}
+    			}
+    		}
+    	}
+    }
+    
+    private void resetAggregators(String symbol) {
+    	List<BarAggregator> aggregators = mapAggregators.get(symbol);
+    	if (aggregators != null) {
+	    	for (BarAggregator aggregator : aggregators) {
+	    		aggregator.reset();
+	    	}
+    	}
+    }
+    
+    private void notify(List<Signal> signals) {
+    	for (Signal signal : signals) {
+    		notify(signal);
+    	}
+    }
 	
 	public boolean isEmpty() {
-		synchronized (mapPriceBars) {
-			return mapPriceBars.isEmpty();
-		}
+		return mapPriceBars.isEmpty();
     }
     
     public int size() {
-    	synchronized (mapPriceBars) {
-    		return mapPriceBars.size();
-    	}
+    	return mapPriceBars.size();
     }
     
     public void clear() {
-    	synchronized (mapPriceBars) {
-	    	for (List<TPriceBar> val : mapPriceBars.values()) {
-	    	    val.clear();
+    	synchronized (mapSymbolSeries) {
+	    	for (PriceBarSeries series : mapPriceBars.values()) {
+	    		synchronized (series) {
+	    			series.clear();
+	    		}
 	    	}
 	    	mapPriceBars.clear();
+	    	mapSymbolSeries.clear();
+	    	for (String symbol : mapAggregators.keySet()) {
+	    		resetAggregators(symbol);
+	    	}
     	}
     	Runtime.getRuntime().gc();
     }
@@ -57,18 +215,56 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     }
     
     public void clear(String key) {
-    	synchronized (mapPriceBars) {
-    		List<TPriceBar> priceBarList = mapPriceBars.get(key);
-    		if (priceBarList != null) {
-    			priceBarList.clear();
-    			mapPriceBars.remove(key);
+    	synchronized (mapSymbolSeries) {
+    		PriceBarSeries series = mapPriceBars.remove(key);
+    		if (series != null) {
+    			List<PriceBarSeries> seriesList = mapSymbolSeries.get(series.getSymbol());
+    			if (seriesList != null) {
+    				seriesList.remove(series);
+    			}
+    			synchronized (series) {
+    				series.clear();
+    			}
+    			//The higher intervals built from the removed series are built again at the next request
+    			resetAggregators(series.getSymbol());
     		}
     	}
     }
     
+    //Series of the key of the price bar, created when missing
+    private PriceBarSeries getSeries(TPriceBar priceBar, int capacity) {
+    	return getSeries(priceBar.getKey(), priceBar.getSymbol(), priceBar.getInterval(), capacity);
+    }
+    
+    private PriceBarSeries getSeries(String key, String symbol, Interval interval, int capacity) {
+    	PriceBarSeries series = mapPriceBars.get(key);
+    	if (series != null) {
+    		return series;
+    	}
+    	synchronized (mapSymbolSeries) {
+    		series = mapPriceBars.get(key);
+    		if (series == null) {
+    			series = new PriceBarSeries(symbol, interval, capacity);
+    			List<PriceBarSeries> seriesList = mapSymbolSeries.get(symbol);
+    			if (seriesList == null) {
+    				seriesList = new CopyOnWriteArrayList<PriceBarSeries>();
+    				mapSymbolSeries.put(symbol, seriesList);
+    			}
+    			seriesList.add(series);
+    			mapPriceBars.put(key, series);
+    		}
+    		return series;
+    	}
+    }
+    
+    //Copy of the bars of the key
     public List<TPriceBar> get(String key) {
-    	synchronized (mapPriceBars) {
-    		return mapPriceBars.get(key);
+    	PriceBarSeries series = mapPriceBars.get(key);
+    	if (series == null) {
+    		return null;
+    	}
+    	synchronized (series) {
+    		return series.copy();
     	}
     }
     
@@ -81,20 +277,15 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     }
     
     public List<TPriceBar> get(String key, Date fromDate, Date toDate) {
-    	List<TPriceBar> retPriceBarList = null;
-    	synchronized (mapPriceBars) {
-    		List<TPriceBar> priceBarList = mapPriceBars.get(key);
-    		if (priceBarList != null) {
-    			retPriceBarList = new ArrayList<TPriceBar>();
-    			for (TPriceBar priceBar : priceBarList) {
-    	    		if (priceBar.getStartDate().compareTo(fromDate) >= 0 &&
-    	    			priceBar.getStartDate().compareTo(toDate) <= 0) {
-    	    			retPriceBarList.add(priceBar);
-    	    		}
-    	    	}
-    		}
+    	PriceBarSeries series = mapPriceBars.get(key);
+    	if (series == null) {
+    		return null;
+    	}
+    	synchronized (series) {
+    		int beginPos = series.ceilIndex(fromDate.getTime());
+    		int endPos = series.floorIndex(toDate.getTime()) + 1;
+    		return beginPos < endPos ? series.copy(beginPos, endPos) : new ArrayList<TPriceBar>();
     	}
-    	return retPriceBarList;
     }
     
     public List<TPriceBar> get(String symbol, String period, Date fromDate, Date toDate) {
@@ -109,38 +300,28 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     	referSpot.referSize = size;
     	referSpot.referOffset = offset;
     	
-    	int count = 0;
 		int beginPos = 0;
 		int endPos = 0;
 		int listSize = 0;
 		List<TPriceBar> getPriceBarList = null;
-    	synchronized (mapPriceBars) {
-    		List<TPriceBar> priceBarList = mapPriceBars.get(getKey(symbol, interval.name()));
-        	if (priceBarList != null) {
-        		listSize = priceBarList.size();
+		//An aggregated interval is built from the m1 bars, the host is only asked for the m1 bars
+		PriceBarSeries series = getAggregatedSeries(symbol, interval);
+		boolean aggregated = series != null;
+		if (!aggregated) {
+			series = mapPriceBars.get(getKey(symbol, interval.name()));
+		}
+    	if (series != null) {
+    		synchronized (series) {
+        		listSize = series.size();
         		if (listSize > 1) {
-        			referSpot.headDate = priceBarList.get(0).getStartDate();
-        			referSpot.tailDate = priceBarList.get(listSize - 1).getStartDate();
-        			endPos = listSize;
-    	    		for (int i = listSize - 1; i >= 0; i--) {
-    	    			TPriceBar priceBar =  priceBarList.get(i);
-    	    			int compare = priceBar.getStartDate().compareTo(toDate);
-    	    			if (compare == 0) {
-    	    				count++;
-    	    				endPos = i + 1;
-    	    			} else if (compare < 0) {
-    	    				count++;
-        					if (i < listSize - 1) {
-        						if (priceBarList.get(i + 1).getStartDate().compareTo(toDate) > 0) {
-        							endPos = i + 1;
-        						}
-        					}
-    	    			}
-    	    			if (count >= size) {
-    	    				beginPos = i;
-    	    				break;
-    	    			}
-    	    		}
+        			referSpot.headDate = series.getHead().getStartDate();
+        			referSpot.tailDate = series.getTail().getStartDate();
+        			//size bars ending at the last bar at or before toDate, all the bars if there is none
+        			int floorPos = series.floorIndex(toDate.getTime());
+        			endPos = floorPos < 0 ? listSize : floorPos + 1;
+        			if (floorPos >= 0 && endPos >= size) {
+        				beginPos = endPos - size;
+        			}
     	    		
     	    		beginPos += offset;
     	    		if (beginPos < 0) {
@@ -154,7 +335,7 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     	    			endPos = listSize;
     	    		}
     	    		
-    	    		getPriceBarList = new ArrayList<TPriceBar>(priceBarList.subList(beginPos, endPos));
+    	    		getPriceBarList = series.copy(beginPos, endPos);
         		}
         	}
     	}
@@ -163,6 +344,16 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     	referSpot.takeBeginPos = beginPos;
     	referSpot.takeEndPos = endPos;
     	
+    	if (aggregated) {
+    		//The history of an aggregated interval is paged through its m1 bars
+    		int ratio = interval.getSeconds() / BarAggregator.BASE_INTERVAL.getSeconds();
+    		referSpot.interval = BarAggregator.BASE_INTERVAL;
+    		referSpot.referSize = size * ratio;
+    		referSpot.referOffset = offset * ratio;
+    		referSpot.listSize = listSize * ratio;
+    		referSpot.takeBeginPos = beginPos * ratio;
+    		referSpot.takeEndPos = endPos * ratio;
+    	}
 //    	SwingUtilities.invokeLater(new Runnable() {
 //			public void run() {
 				tradeDesk.getTradingServerSession().firePriceBarsReferSpot(referSpot);
@@ -171,18 +362,41 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     	
     	return getPriceBarList;
     }
-        
+    
+    /**
+     * Start date of the bar offset bars away from the last bar at or before toDate,
+     * clamped to the loaded bars. Unlike get() it does not ask the session to load more bars.
+     */
+    public Date getStartDate(String symbol, Interval interval, Date toDate, int offset) {
+    	PriceBarSeries series = mapPriceBars.get(getKey(symbol, interval.name()));
+    	if (series == null) {
+    		return null;
+    	}
+    	synchronized (series) {
+    		if (series.size() == 0) {
+    			return null;
+    		}
+    		int pos = Math.max(series.floorIndex(toDate.getTime()), 0) + offset;
+    		if (pos < 0) {
+    			pos = 0;
+    		} else if (pos > series.size() - 1) {
+    			pos = series.size() - 1;
+    		}
+    		return series.get(pos).getStartDate();
+    	}
+    }
+
     public TPriceBar getHead(String symbol, String period) {
     	return getHead(getKey(symbol, period));
     }
     
     public TPriceBar getHead(String key) {
-    	synchronized (mapPriceBars) {
-	    	List<TPriceBar> priceBarList = mapPriceBars.get(key);
-	    	if (priceBarList == null || priceBarList.size() == 0) {
-	    		return null;
-	    	}
-	    	return priceBarList.get(0);
+    	PriceBarSeries series = mapPriceBars.get(key);
+    	if (series == null) {
+    		return null;
+    	}
+    	synchronized (series) {
+	    	return series.getHead();
     	}
     }
     
@@ -191,12 +405,12 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     }
     
     public TPriceBar getTail(String key) {
-    	synchronized (mapPriceBars) {
-	    	List<TPriceBar> priceBarList = mapPriceBars.get(key);
-	    	if (priceBarList == null || priceBarList.size() == 0) {
-	    		return null;
-	    	}
-	    	return priceBarList.get(priceBarList.size() - 1);
+    	PriceBarSeries series = mapPriceBars.get(key);
+    	if (series == null) {
+    		return null;
+    	}
+    	synchronized (series) {
+	    	return series.getTail();
     	}
     }
     
@@ -205,30 +419,32 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     		return;
     	}
     	
-    	String key = priceBarList.get(0).getKey();
     	TPriceBar notifyTail = null;
-    	    	
-    	synchronized (mapPriceBars) {
-    		List<TPriceBar> existPriceBarList = mapPriceBars.get(key);
-	    	if (existPriceBarList == null || existPriceBarList.size() == 0) {
-	    		mapPriceBars.put(key, priceBarList);
-	    		existPriceBarList = priceBarList;
+    	List<Signal> aggregateSignals = new ArrayList<Signal>();
+    	PriceBarSeries series = getSeries(priceBarList.get(0), priceBarList.size());
+    	synchronized (series) {
+	    	if (series.size() == 0) {
+	    		series.addAll(priceBarList);
 	    		notifyTail = priceBarList.get(priceBarList.size() - 1);
+	    		for (TPriceBar priceBar : priceBarList) {
+	    			aggregate(priceBar, aggregateSignals);
+	    		}
 	    	} else {
-	    		TPriceBar addHead = priceBarList.get(0);
+	    		long addHeadTime = priceBarList.get(0).getStartDate().getTime();
 	    		TPriceBar addTail = priceBarList.get(priceBarList.size() - 1);
-	    		TPriceBar existHead = existPriceBarList.get(0);
-	    		TPriceBar existTail = existPriceBarList.get(existPriceBarList.size() - 1);
+	    		long existHeadTime = series.getTimeAt(0);
+	    		long existTailTime = series.getTimeAt(series.size() - 1);
 	    		
-	    		if (addHead.getStartDate().compareTo(existHead.getStartDate()) < 0) {
+	    		if (addHeadTime < existHeadTime) {
 	    			int addEndPos = 1;
 	    			for (; addEndPos < priceBarList.size(); addEndPos++) {
-	    				if (priceBarList.get(addEndPos).getStartDate().compareTo(existHead.getStartDate()) >= 0) {
+	    				if (priceBarList.get(addEndPos).getStartDate().getTime() >= existHeadTime) {
 	    					break;
 	    				}
 	    			}
-	    			existPriceBarList.addAll(0, priceBarList.subList(0, addEndPos));
+	    			series.addAll(0, priceBarList.subList(0, addEndPos));
 	    			notifyTail = priceBarList.get(addEndPos - 1);
+	    			reaggregate(series, aggregateSignals);
 //	    			int beginPos = 0;
 //	    			Integer latestPos = mapReferencdPos.get(getKey(addHead.getSymbol(), addHead.getInterval().name()));
 //	    			if (latestPos != null) {
@@ -238,19 +454,25 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
 //	    			}
 //	    			tradeDesk.getTradingServerSession().reservePriceBars(addHead, beginPos);
 	    			
-	    		} else if (addHead.getStartDate().compareTo(existTail.getStartDate()) <= 0 &&
-	    					addTail.getStartDate().compareTo(existTail.getStartDate()) > 0) {
+	    		} else if (addHeadTime <= existTailTime &&
+	    					addTail.getStartDate().getTime() > existTailTime) {
 	    			int addBeginPos = 1;
 	    			for (; addBeginPos < priceBarList.size(); addBeginPos++) {
-	    				if (priceBarList.get(addBeginPos).getStartDate().compareTo(existTail.getStartDate()) > 0) {
+	    				if (priceBarList.get(addBeginPos).getStartDate().getTime() > existTailTime) {
 	    					break;
 	    				}
 	    			}
-	    			existPriceBarList.addAll(priceBarList.subList(addBeginPos, priceBarList.size()));
+	    			series.addAll(priceBarList.subList(addBeginPos, priceBarList.size()));
 	    			notifyTail = addTail;
-	    		} else if (addHead.getStartDate().compareTo(existTail.getStartDate()) > 0) {
-	    			existPriceBarList.addAll(priceBarList);
+	    			for (TPriceBar priceBar : priceBarList.subList(addBeginPos, priceBarList.size())) {
+	    				aggregate(priceBar, aggregateSignals);
+	    			}
+	    		} else if (addHeadTime > existTailTime) {
+	    			series.addAll(priceBarList);
 	    			notifyTail = addTail;
+	    			for (TPriceBar priceBar : priceBarList) {
+	    				aggregate(priceBar, aggregateSignals);
+	    			}
 	    		}    		
 	    	}
     	}
@@ -258,39 +480,42 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     	if (notifyTail != null) {
     		notify(Signal.newAddSignal(0, notifyTail));
     	}
+    	notify(aggregateSignals);
     }
     
     public void add(TPriceBar priceBar) {
-    	String key = priceBar.getKey();
     	int addIndex = 0;
-    	synchronized (mapPriceBars) {
-    		List<TPriceBar> priceBarList = mapPriceBars.get(key);
-	    	if (priceBarList == null) {
-	    		priceBarList = new ArrayList<TPriceBar>();
-	    		mapPriceBars.put(key, priceBarList);
-	    	}
-	    	priceBarList.add(priceBar);
-	    	addIndex = priceBarList.size() - 1;
+    	List<Signal> aggregateSignals = new ArrayList<Signal>();
+    	PriceBarSeries series = getSeries(priceBar, 16);
+    	synchronized (series) {
+	    	series.add(priceBar);
+	    	addIndex = series.size() - 1;
+	    	aggregate(priceBar, aggregateSignals);
     	}
     	notify(Signal.newAddSignal(addIndex, priceBar));
+    	notify(aggregateSignals);
     }
     
     public void append(TPriceBar priceBar) {
-    	synchronized (mapPriceBars) {
-    		List<TPriceBar> priceBarList = mapPriceBars.get(priceBar.getKey());
-    		if (priceBarList != null && priceBarList.size() > 0) {
-    			TPriceBar tail = priceBarList.get(priceBarList.size() - 1);
-    	    	long intervalSeconds = Interval.valueOf(tail.getInterval().toString()).getMilliSecond();
-    	    	Date nextFromDate = new Date(tail.getStartDate().getTime() + intervalSeconds);
-    	    	Date nextToDate = new Date(tail.getStartDate().getTime() + 2 * intervalSeconds);
-    	    	if (priceBar.getStartDate().compareTo(tail.getStartDate()) >= 0 &&
-    	        	priceBar.getStartDate().compareTo(nextFromDate) <= 0) {
-    	    		priceBar.setStartDate(tail.getStartDate());
-    	    		priceBarList.set(priceBarList.size() - 1, priceBar);
-    	    	} else if (priceBar.getStartDate().compareTo(nextFromDate) >= 0 &&
-    	    		priceBar.getStartDate().compareTo(nextToDate) <= 0) {
-    	    		priceBar.setStartDate(nextFromDate);
-    	    		priceBarList.add(priceBar);
+    	PriceBarSeries series = mapPriceBars.get(priceBar.getKey());
+    	if (series == null) {
+    		return;
+    	}
+    	synchronized (series) {
+    		if (series.size() > 0) {
+    			int tailIndex = series.size() - 1;
+    			long tailTime = series.getTimeAt(tailIndex);
+    	    	long intervalMillis = series.get(tailIndex).getInterval().getMilliSecond();
+    	    	long nextFromTime = tailTime + intervalMillis;
+    	    	long startTime = priceBar.getStartDate().getTime();
+    	    	if (startTime >= tailTime && startTime <= nextFromTime) {
+    	    		priceBar.setStartDate(series.get(tailIndex).getStartDate());
+    	    		series.set(tailIndex, priceBar);
+    	    		aggregate(priceBar, null);
+    	    	} else if (startTime >= nextFromTime && startTime <= nextFromTime + intervalMillis) {
+    	    		priceBar.setStartDate(new Date(nextFromTime));
+    	    		series.add(priceBar);
+    	    		aggregate(priceBar, null);
     	    	}
         	}
     	}
@@ -299,17 +524,22 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     public TPriceBar set(TPriceBar priceBar) {
     	TPriceBar oldPriceBar = null;
     	int setIndex = 0;
-    	synchronized (mapPriceBars) {
-    		List<TPriceBar> priceBarList = mapPriceBars.get(priceBar.getKey());
-    		if (priceBarList != null && priceBarList.size() > 0) {
-    			TPriceBar tail = priceBarList.get(priceBarList.size() - 1);
-    	    	if (priceBar.getStartDate().equals(tail.getStartDate())) {
-    	    		oldPriceBar = priceBarList.set(priceBarList.size() - 1, priceBar);
-    	    	}
-    	    	setIndex = priceBarList.size() - 1;
+    	List<Signal> aggregateSignals = new ArrayList<Signal>();
+    	PriceBarSeries series = mapPriceBars.get(priceBar.getKey());
+    	if (series != null) {
+    		synchronized (series) {
+    			if (series.size() > 0) {
+    				setIndex = series.size() - 1;
+    				if (priceBar.getStartDate().getTime() == series.getTimeAt(setIndex)) {
+    					oldPriceBar = series.get(setIndex);
+    					series.set(setIndex, priceBar);
+    					aggregate(priceBar, aggregateSignals);
+    				}
+    			}
     		}
     	}
     	notify(Signal.newChangeSignal(setIndex, priceBar, oldPriceBar));
+    	notify(aggregateSignals);
     	return oldPriceBar;
     }
     
@@ -318,18 +548,13 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     }
     
     public void removeLeaveTail(String key, int leaveSize) {
-    	synchronized (mapPriceBars) {
-	    	List<TPriceBar> priceBarList = mapPriceBars.get(key);
-	    	if (priceBarList != null) {
-	    		int totalSize = priceBarList.size();
-		    	if (totalSize > leaveSize) {
-		    		List<TPriceBar> subList = new ArrayList<TPriceBar>(
-		    				priceBarList.subList(0, totalSize - leaveSize));
-		    		priceBarList.clear();
-		    		priceBarList.addAll(subList);
-		    		subList.clear();
-		    	}
-	    	}
+    	PriceBarSeries series = mapPriceBars.get(key);
+    	if (series != null) {
+    		synchronized (series) {
+    			if (series.size() > leaveSize) {
+    				series.truncate(series.size() - leaveSize);
+    			}
+    		}
     	}
     }
     
@@ -351,18 +576,27 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
     	calendar.setTime(toDate);
     	while (size > 0) {
     		calendar.add(Calendar.SECOND, interval);
-    		int wday = calendar.get(Calendar.DAY_OF_WEEK) - 1;
-    		int hour = calendar.get(Calendar.HOUR_OF_DAY);
-    		if (wday == closeWday && hour > closeHour ||
-    			wday == openWday && hour < openHour ||
-    			wday == 0/*sunday*/) {
-    		} else {
+    		if (!isMarketClosed(calendar, openWday, openHour, closeWday, closeHour)) {
     			size--;
     		}
     	}
     	return calendar.getTime();
     }
     
+    static boolean isMarketClosed(Calendar calendar) {
+    	SettingManager settingManager = SettingManager.getInstance();
+    	return isMarketClosed(calendar, settingManager.getMarketOpenWday(), settingManager.getMarketOpenHour(),
+    			settingManager.getMarketCloseWday(), settingManager.getMarketCloseHour());
+    }
+    
+    private static boolean isMarketClosed(Calendar calendar, int openWday, int openHour, int closeWday, int closeHour) {
+		int wday = calendar.get(Calendar.DAY_OF_WEEK) - 1;
+		int hour = calendar.get(Calendar.HOUR_OF_DAY);
+		return wday == closeWday && hour > closeHour ||
+			wday == openWday && hour < openHour ||
+			wday == 0/*sunday*/;
+    }
+    
 	@Override
 	// come from offer
     public void onSignal(Signaler src, Signal signal) {
@@ -370,23 +604,28 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
 	        Object obj = signal.getElement();
 	        if (obj instanceof TOffer) {
 	        	TOffer offer = (TOffer)obj;
-	        	List<TPriceBar> changePriceBarList = new ArrayList<TPriceBar>();
-	        	synchronized (mapPriceBars) {
-		        	for (Map.Entry<String, List<TPriceBar>> entry : mapPriceBars.entrySet()) {
-		        		String key = entry.getKey();
-		        		if (key.startsWith(offer.getSymbol())) {
-		        			List<TPriceBar> priceBarList = entry.getValue();
-		        			if (priceBarList.size() > 0) {
-		        				TPriceBar priceBar = priceBarList.get(priceBarList.size() - 1);
-		        				priceBar.updateByOffer(offer);
-		        				changePriceBarList.add(priceBar);
-		        			}
-		        		}
-		        	}
+	        	List<PriceBarSeries> seriesList = mapSymbolSeries.get(offer.getSymbol());
+	        	if (seriesList == null) {
+	        		return;
+	        	}
+	        	List<TPriceBar> changePriceBarList = new ArrayList<TPriceBar>(seriesList.size());
+	        	List<Signal> aggregateSignals = new ArrayList<Signal>();
+	        	for (PriceBarSeries series : seriesList) {
+	        		if (isAggregatedSeries(series)) {
+	        			continue;	//Follows its m1 tail
+	        		}
+	        		synchronized (series) {
+	        			TPriceBar priceBar = series.updateTail(offer.getAsk(), offer.getBid());
+	        			if (priceBar != null) {
+	        				changePriceBarList.add(priceBar);
+	        				aggregate(priceBar, aggregateSignals);
+	        			}
+	        		}
 	        	}
 	        	for (TPriceBar priceBar : changePriceBarList) {
 	        		notify(Signal.newChangeSignal(-1, priceBar, priceBar));
 	        	}
+	        	notify(aggregateSignals);
 	        }
     	}
     }
@@ -396,16 +635,17 @@ public class PriceBars extends Signaler implements ISignalListener, IServerTimeL
 	public void timeUpdated(ServerTime aTime) {		
 		List<TPriceBar> tailPriceBarList = new ArrayList<TPriceBar>();
 		
-		synchronized (mapPriceBars) {
-			for (Map.Entry<String, List<TPriceBar>> entry : mapPriceBars.entrySet()) {
-				List<TPriceBar> priceBarList = entry.getValue();
-				if (priceBarList.size() > 0) {
-					TPriceBar tail = priceBarList.get(priceBarList.size() - 1);
+		for (PriceBarSeries series : mapPriceBars.values()) {
+			if (isAggregatedSeries(series)) {
+				continue;	//Not loaded from the host
+			}
+			synchronized (series) {
+				TPriceBar tail = series.getTail();
+				if (tail != null) {
 					if (aTime.getTime() - tail.getStartDate().getTime() >= tail.getInterval().getMilliSecond()) {
 						tailPriceBarList.add(tail);
 					}
-					
-				}				
+				}
 			}
 		}
 		
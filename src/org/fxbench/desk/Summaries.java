@@ -22,7 +22,6 @@ package org.fxbench.desk;
 
 import org.fxbench.entity.Field;
 import org.fxbench.entity.TPosition;
-import org.fxbench.entity.TPosition.BnS;
 import org.fxbench.entity.TSummary;
 import org.fxbench.ui.panel.SummaryPanel;
 import org.fxbench.util.signal.ISignalListener;
@@ -31,6 +30,9 @@ import org.fxbench.util.signal.Signal.SignalType;
 import org.fxbench.util.signal.SignalVector;
 import org.fxbench.util.signal.Signaler;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * A collection of Summary objects.
  */
@@ -236,68 +238,29 @@ public class Summaries extends SignalVector implements ISignalListener
     }
 
     public void update(String aCurrency, SignalType aSignalType) {
-        double grossPnlBuy = 0;
-        double grossPnlSell = 0;
-        double netPnlBuy = 0;
-        double netPnlSell = 0;
-        long amountBuy = 0;
-        long amountSell = 0;
-        double sumOfMultBuyByBuyAmount = 0;
-        double sumOfMultSellBySellAmount = 0;
-        int numOfPositions = 0;
-        long totalBuyAmount = 0;
-        long totalSellAmount = 0;
-        double totalGrossBuyPnL = 0;
-        double totalGrossSellPnL = 0;
-        double totalNetBuyPnL = 0;
-        double totalNetSellPnL = 0;
+        // the subtotals of the currency and the totals come from the subtotals kept by the positions
         Positions positions = tradeDesk.getOpenPositions();
-        for (int i = 0; i < positions.size(); i++) {
-            TPosition position = (TPosition) positions.get(i);
-            if (aCurrency.equals(position.getSymbol())) {
-                if (position.getBS() == BnS.BUY) {
-                    amountBuy += position.getAmount();
-                    grossPnlBuy += position.getGrossPL();
-                    netPnlBuy += position.getNetPnL();
-                    sumOfMultBuyByBuyAmount += position.getAmount() * position.getOpen();
-                } else {
-                    amountSell += position.getAmount();
-                    grossPnlSell += position.getGrossPL();
-                    netPnlSell += position.getNetPnL();
-                    sumOfMultSellBySellAmount += position.getAmount() * position.getOpen();
-                }
-                numOfPositions++;
-            } else {
-                if (position.getBS() == TPosition.BnS.BUY) {
-                    totalBuyAmount += position.getAmount();
-                    totalGrossBuyPnL += position.getGrossPL();
-                    totalNetBuyPnL += position.getNetPnL();
-                } else {
-                    totalSellAmount += position.getAmount();
-                    totalGrossSellPnL += position.getGrossPL();
-                    totalNetSellPnL += position.getNetPnL();
-                }
-            }
+        SymbolTotals totals = positions.getSymbolTotals(aCurrency);
+        if (totals == null) {
+            totals = new SymbolTotals();
         }
+        SymbolTotals grandTotals = positions.getGrandTotals();
+        long amountBuy = totals.getAmountBuy();
+        long amountSell = totals.getAmountSell();
+        double grossPnlBuy = totals.getGrossPLBuy();
+        double grossPnlSell = totals.getGrossPLSell();
+        double netPnlBuy = totals.getNetPLBuy();
+        double netPnlSell = totals.getNetPLSell();
+        int numOfPositions = totals.getCount();
 
-        totalBuyAmount += amountBuy;
-        totalGrossBuyPnL += grossPnlBuy;
-        totalNetBuyPnL += netPnlBuy;
-        totalSellAmount += amountSell;
-        totalGrossSellPnL += grossPnlSell;
-        totalNetSellPnL += netPnlSell;
-        long totalAmount = totalBuyAmount + totalSellAmount;
-        double totalGrossPnL = totalGrossBuyPnL + totalGrossSellPnL;
-        double totalNetPnL = totalNetBuyPnL + totalNetSellPnL;
-
-        mTotalSellPnL = totalGrossSellPnL;
-        mTotalBuyPnL = totalGrossBuyPnL;
-        mTotalAmountSell = totalSellAmount;
-        mTotalAmountBuy = totalBuyAmount;
-        mTotalAmount = totalAmount;
-        mGrossTotalPnL = totalGrossPnL;
-        mNetTotalPnL = totalNetPnL;
-        mTotalPositionCount = positions.size();
+        mTotalSellPnL = grandTotals.getGrossPLSell();
+        mTotalBuyPnL = grandTotals.getGrossPLBuy();
+        mTotalAmountSell = grandTotals.getAmountSell();
+        mTotalAmountBuy = grandTotals.getAmountBuy();
+        mTotalAmount = grandTotals.getAmountBuy() + grandTotals.getAmountSell();
+        mGrossTotalPnL = grandTotals.getGrossPLBuy() + grandTotals.getGrossPLSell();
+        mNetTotalPnL = grandTotals.getNetPLBuy() + grandTotals.getNetPLSell();
+        mTotalPositionCount = grandTotals.getCount();
         // looking for summary with specified currency
         TSummary summary = (TSummary) get(aCurrency);
         int index = -1;
@@ -310,19 +273,10 @@ public class Summaries extends SignalVector implements ISignalListener
 
         // filling summary
         summary.setSellPnL(grossPnlSell);
-        if (amountSell > 0) {
-            summary.setAvgSellRate(sumOfMultSellBySellAmount / amountSell);
-        } else {
-            summary.setAvgSellRate(0);
-        }
+        summary.setAvgSellRate(totals.getAvgSellRate());
         summary.setAmountSell(amountSell);
         summary.setBuyPnL(grossPnlBuy);
-
-        if (amountBuy > 0) {
-            summary.setAvgBuyRate(sumOfMultBuyByBuyAmount / amountBuy);
-        } else {
-            summary.setAvgBuyRate(0);
-        }
+        summary.setAvgBuyRate(totals.getAvgBuyRate());
         summary.setAmountBuy(amountBuy);
 
         summary.setPositionsCount(numOfPositions);
@@ -347,6 +301,14 @@ public class Summaries extends SignalVector implements ISignalListener
         	TPosition position = (TPosition)signal.getElement();
         	if (position != null) {
         		update(position.getSymbol(), signal.getType());
+        	} else if (signal.getType() == SignalType.BATCH) {
+        		Set<String> symbolSet = new HashSet<String>();
+        		for (Object element : signal.getElements()) {
+        			String symbol = ((TPosition)element).getSymbol();
+        			if (symbolSet.add(symbol)) {
+        				update(symbol, SignalType.ADD);
+        			}
+        		}
         	}
 //        }
     }
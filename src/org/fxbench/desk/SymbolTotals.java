@@ -0,0 +1,183 @@
+package org.fxbench.desk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.fxbench.entity.TPosition;
+import org.fxbench.entity.TPosition.BnS;
+
+/**
+ * The positions of one symbol and their subtotals, or the grand totals of all the symbols.<br>
+ * Maintained by Positions under the lock of its list: a tick of a symbol recalculates the
+ * positions and the subtotals of that symbol only, the grand totals are then summed over the
+ * symbols once and read by the totals of the positions, the summaries and the accounts.
+ */
+class SymbolTotals
+{
+	final List<TPosition> positions;	//Empty for the grand totals
+	private final Map<String, Double> mapAccountGrossPL;	//account id -> gross P/L
+	private int count;
+	private long amountBuy;
+	private long amountSell;
+	private double grossPLBuy;
+	private double grossPLSell;
+	private double netPLBuy;
+	private double netPLSell;
+	private double openBuy;		//Sum of amount * open rate of the buy positions
+	private double openSell;
+	private double netPL;		//Sum of the net P/L of the positions, as set by their fill
+	private double pipPL;
+	private double com;
+	private double interest;
+	private double usedMargin;
+
+	SymbolTotals() {
+		positions = new ArrayList<TPosition>();
+		mapAccountGrossPL = new HashMap<String, Double>();
+	}
+
+	void add(TPosition position) {
+		positions.add(position);
+		addTotals(position);
+	}
+
+	void remove(TPosition position) {
+		for (int i = 0; i < positions.size(); i++) {
+			if (positions.get(i) == position) {
+				positions.remove(i);
+				recalc();
+				return;
+			}
+		}
+	}
+
+	//Sums the positions again
+	void recalc() {
+		count = 0;
+		amountBuy = amountSell = 0;
+		grossPLBuy = grossPLSell = netPLBuy = netPLSell = openBuy = openSell = 0;
+		netPL = pipPL = com = interest = usedMargin = 0;
+		mapAccountGrossPL.clear();
+		for (TPosition position : positions) {
+			addTotals(position);
+		}
+	}
+
+	private void addTotals(TPosition position) {
+		count++;
+		if (position.getBS() == BnS.BUY) {
+			amountBuy += position.getAmount();
+			grossPLBuy += position.getGrossPL();
+			netPLBuy += position.getNetPnL();
+			openBuy += position.getAmount() * position.getOpen();
+		} else {
+			amountSell += position.getAmount();
+			grossPLSell += position.getGrossPL();
+			netPLSell += position.getNetPnL();
+			openSell += position.getAmount() * position.getOpen();
+		}
+		netPL += position.getNetPL();
+		pipPL += position.getPl();
+		com += position.getCom();
+		interest += position.getInterest();
+		usedMargin += position.getUsedMargin();
+		addAccountGrossPL(position.getAccountId(), position.getGrossPL());
+	}
+
+	//Adds the subtotals of a symbol to the grand totals
+	void addTotals(SymbolTotals totals) {
+		count += totals.count;
+		amountBuy += totals.amountBuy;
+		amountSell += totals.amountSell;
+		grossPLBuy += totals.grossPLBuy;
+		grossPLSell += totals.grossPLSell;
+		netPLBuy += totals.netPLBuy;
+		netPLSell += totals.netPLSell;
+		openBuy += totals.openBuy;
+		openSell += totals.openSell;
+		netPL += totals.netPL;
+		pipPL += totals.pipPL;
+		com += totals.com;
+		interest += totals.interest;
+		usedMargin += totals.usedMargin;
+		for (Entry<String, Double> entry : totals.mapAccountGrossPL.entrySet()) {
+			addAccountGrossPL(entry.getKey(), entry.getValue().doubleValue());
+		}
+	}
+
+	private void addAccountGrossPL(String accountId, double grossPL) {
+		Double sum = mapAccountGrossPL.get(accountId);
+		mapAccountGrossPL.put(accountId, Double.valueOf(sum == null ? grossPL : sum.doubleValue() + grossPL));
+	}
+
+	//Copy of the subtotals without the positions
+	SymbolTotals copy() {
+		SymbolTotals totals = new SymbolTotals();
+		totals.addTotals(this);
+		return totals;
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	long getAmountBuy() {
+		return amountBuy;
+	}
+
+	long getAmountSell() {
+		return amountSell;
+	}
+
+	double getGrossPLBuy() {
+		return grossPLBuy;
+	}
+
+	double getGrossPLSell() {
+		return grossPLSell;
+	}
+
+	double getNetPLBuy() {
+		return netPLBuy;
+	}
+
+	double getNetPLSell() {
+		return netPLSell;
+	}
+
+	double getAvgBuyRate() {
+		return amountBuy > 0 ? openBuy / amountBuy : 0;
+	}
+
+	double getAvgSellRate() {
+		return amountSell > 0 ? openSell / amountSell : 0;
+	}
+
+	double getNetPL() {
+		return netPL;
+	}
+
+	double getPipPL() {
+		return pipPL;
+	}
+
+	double getCom() {
+		return com;
+	}
+
+	double getInterest() {
+		return interest;
+	}
+
+	double getUsedMargin() {
+		return usedMargin;
+	}
+
+	double getGrossPL(String accountId) {
+		Double grossPL = mapAccountGrossPL.get(accountId);
+		return grossPL == null ? 0 : grossPL.doubleValue();
+	}
+}
@@ -54,6 +54,7 @@ import org.fxbench.util.Utils;
 //import org.apache.commons.logging.LogFactory;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
@@ -399,9 +400,11 @@ public class TradeDesk
 	}
 	
 	public void addAccounts(List<BaseEntity> accountList) {
+		List<BaseEntity> list = new ArrayList<BaseEntity>(accountList.size());
 		for (BaseEntity entity : accountList) {
-			mAccounts.add(new TAccount(AccountPanel.getFieldDefStub(), (TAccount)entity));
+			list.add(new TAccount(AccountPanel.getFieldDefStub(), (TAccount)entity));
 		}
+		mAccounts.addAll(list);
 	}
 
 	public void addClosedPosition(TPosition positin) {
@@ -411,9 +414,11 @@ public class TradeDesk
 	}
 	
 	public void addClosedPositions(List<BaseEntity> positionList) {
+		List<BaseEntity> list = new ArrayList<BaseEntity>(positionList.size());
 		for (BaseEntity entity : positionList) {
-			mClosedPositions.add(new TPosition(Stage.Closed, ClosedPositionPanel.getFieldDefStub(), (TPosition)entity));
+			list.add(new TPosition(Stage.Closed, ClosedPositionPanel.getFieldDefStub(), (TPosition)entity));
 		}
+		mClosedPositions.addAll(list);
 	}
 
 	public void addMessage(TMessage message) {
@@ -435,9 +440,11 @@ public class TradeDesk
 	}
 	
 	public void addOrders(List<BaseEntity> orderList) {
+		List<BaseEntity> list = new ArrayList<BaseEntity>(orderList.size());
 		for (BaseEntity entity : orderList) {
-			mOrders.add(new TOrder(OrderPanel.getFieldDefStub(), (TOrder)entity));
+			list.add(new TOrder(OrderPanel.getFieldDefStub(), (TOrder)entity));
 		}
+		mOrders.addAll(list);
 	}
 
 	public void addOffer(TOffer offer) {
@@ -447,9 +454,11 @@ public class TradeDesk
 	}
 	
 	public void addOffers(List<BaseEntity> offerList) {
+		List<BaseEntity> list = new ArrayList<BaseEntity>(offerList.size());
 		for (BaseEntity entity : offerList) {
-			mOffers.add(new TOffer(SymbolPanel.getFieldDefStub(), (TOffer)entity));
+			list.add(new TOffer(SymbolPanel.getFieldDefStub(), (TOffer)entity));
 		}
+		mOffers.addAll(list);
 	}
 
 	public void clear() {
@@ -75,5 +75,11 @@ public abstract class BaseEntity implements Cloneable
     
     public abstract String getKey();
 	public abstract String getSelSql();
+	
+	//Values of the ? placeholders of getSelSql(), in order
+	public Object[] getSelParams() {
+		return new Object[0];
+	}
+	
 	public abstract BaseEntity newEntity(ResultSet resultSet) throws SQLException;
 }
@@ -333,10 +333,15 @@ public class TAccount extends BaseEntity {
 		StringBuffer sb = new StringBuffer();
 		sb.append("SELECT * FROM `Account`");
 		sb.append(" WHERE");
-		sb.append(" `AccountID`=").append("'").append(accountId).append("'");
+		sb.append(" `AccountID`=?");
 		return sb.toString();
 	}
 	
+	@Override
+	public Object[] getSelParams() {
+		return new Object[] {accountId};
+	}
+	
 	@Override
 	public BaseEntity newEntity(ResultSet resultSet) throws SQLException {
 		TAccount account = new TAccount();
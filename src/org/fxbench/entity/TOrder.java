@@ -152,6 +152,10 @@ public class TOrder extends BaseEntity
 	
 	public TOrder(FieldDefStub<FieldDef> fieldDefStub, TOrder src) {
 		this(fieldDefStub);
+		setFieldVals(src);
+	}
+	
+	private void setFieldVals(TOrder src) {
 		setOrderID(src.orderID);
 		setRequestID(src.requestID);
 		setAccountId(src.accountId);
@@ -591,16 +595,25 @@ public class TOrder extends BaseEntity
 		StringBuffer sb = new StringBuffer();
 		sb.append("SELECT * FROM `Order`");
 		sb.append(" WHERE");
-		sb.append(" `AccountID`=").append("'").append(accountId).append("'");
+		sb.append(" `AccountID`=?");
 		if (orderID != null && orderID.length() > 0) {
-			sb.append(" `OrderID`=").append("'").append(orderID).append("'");
+			sb.append(" AND `OrderID`=?");
 		}
 		return sb.toString();
 	}
 	
+	@Override
+	public Object[] getSelParams() {
+		if (orderID != null && orderID.length() > 0) {
+			return new Object[] {accountId, orderID};
+		}
+		return new Object[] {accountId};
+	}
+	
 	@Override
 	public BaseEntity newEntity(ResultSet resultSet) throws SQLException {
-		TOrder order = new TOrder();
+		//Built with the fields of this order, if any, rather than copied afterwards
+		TOrder order = fieldDefStub == null ? new TOrder() : new TOrder(fieldDefStub);
 		order.orderID = resultSet.getString("OrderID");
 		order.requestID = resultSet.getString("RequestID");
 		order.accountId = resultSet.getString("AccountID");
@@ -641,6 +654,9 @@ public class TOrder extends BaseEntity
 //		order.typeStop = resultSet.getInt("TypeStop");
 //		order.typeLimit = resultSet.getInt("TypeLimit");
 //		order.oCOBulkID = resultSet.getInt("OCOBulkID");
+		if (fieldDefStub != null) {
+			order.setFieldVals(order);
+		}
 		return order;
 	}
 	
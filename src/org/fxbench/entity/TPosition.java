@@ -2,8 +2,11 @@ package org.fxbench.entity;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import javax.swing.SwingConstants;
 
@@ -63,6 +66,8 @@ public class TPosition extends BaseEntity
 	private String trailStopPeriod;
 	private String trailStopName;
 	private String trailMoveTsName;
+	private int pageSize;			//Selection by pages when positive
+	private TPosition pageAfter;
 	
 	public TPosition() {
 	}
@@ -75,6 +80,10 @@ public class TPosition extends BaseEntity
 	
 	public TPosition(Stage stage, FieldDefStub<FieldDef> fieldDefStub, TPosition src) {
 		this(stage, fieldDefStub);
+		setFieldVals(src);
+	}
+	
+	private void setFieldVals(TPosition src) {
 		setTradeID(src.tradeID);
 		setAccountId(src.accountId);
 //		setAccountName(src.accountName);
@@ -565,17 +574,53 @@ public class TPosition extends BaseEntity
 		sb.append(" WHERE");
 		sb.append(" t.AccountID=ts.AccountID");
 		sb.append(" AND t.TradeID=ts.TradeID");
-		sb.append(" AND t.AccountID=").append("'").append(accountId).append("'");
+		sb.append(" AND t.AccountID=?");
 		if (tradeID != null && tradeID.length() > 0) {
-			sb.append(" AND t.TradeID=").append("'").append(tradeID).append("'");
+			sb.append(" AND t.TradeID=?");
 		}
 		sb.append(" AND ts.TradeMethodName<>''");
+		if (pageSize > 0) {
+			//Keyset pagination from the newest closed position on
+			if (pageAfter != null) {
+				sb.append(" AND (t.CloseTime<? OR t.CloseTime=? AND t.TradeID<?)");
+			}
+			sb.append(" ORDER BY t.CloseTime DESC, t.TradeID DESC LIMIT ?");
+		}
 		return sb.toString();
 	}
 	
+	@Override
+	public Object[] getSelParams() {
+		List<Object> params = new ArrayList<Object>();
+		params.add(accountId);
+		if (tradeID != null && tradeID.length() > 0) {
+			params.add(tradeID);
+		}
+		if (pageSize > 0) {
+			if (pageAfter != null) {
+				Timestamp closeTime = new Timestamp(pageAfter.closeTime.getTime());
+				params.add(closeTime);
+				params.add(closeTime);
+				params.add(pageAfter.tradeID);
+			}
+			params.add(pageSize);
+		}
+		return params.toArray();
+	}
+	
+	/**
+	 * Selects pageSize closed positions, from the newest one on or after the
+	 * position after (the last one of the previous page) if not null.
+	 */
+	public void setPage(int pageSize, TPosition after) {
+		this.pageSize = pageSize;
+		this.pageAfter = after;
+	}
+	
 	@Override
 	public BaseEntity newEntity(ResultSet resultSet) throws SQLException {
-		TPosition position = new TPosition();
+		//Built with the fields of this position, if any, rather than copied afterwards
+		TPosition position = fieldDefStub == null ? new TPosition() : new TPosition(stage, fieldDefStub);
 		position.tradeID = resultSet.getString("TradeID");	
 		position.accountId = resultSet.getString("AccountID");	
 //		position.accountName = resultSet.getString("AccountName");	
@@ -613,9 +658,38 @@ public class TPosition extends BaseEntity
 		position.trailStopPeriod = resultSet.getString("TrailStopPeriod");
 		position.trailStopName = resultSet.getString("TrailStopName");
 		position.trailMoveTsName = resultSet.getString("TrailMoveTsName");
+		if (fieldDefStub != null) {
+			position.setFieldVals(position);
+		}
 		return position;
 	}
-	
+
+	//Closed position of a simulation, without fields until it is added to the closed positions
+	public static TPosition valueOf(String tradeID, String accountId, String symbol, double amount, BnS bs,
+			double open, double close, double stop, double limit, double high, double low,
+			double pl, double grossPL, Date openTime, Date closeTime,
+			String tradeMethodPeriod, String tradeMethodName) {
+		TPosition position = new TPosition();
+		position.tradeID = tradeID;
+		position.accountId = accountId;
+		position.symbol = symbol;
+		position.amount = amount;
+		position.bs = bs;
+		position.open = open;
+		position.close = close;
+		position.stop = stop;
+		position.limit = limit;
+		position.high = high;
+		position.low = low;
+		position.pl = pl;
+		position.grossPL = grossPL;
+		position.openTime = openTime;
+		position.closeTime = closeTime;
+		position.tradeMethodPeriod = tradeMethodPeriod;
+		position.tradeMethodName = tradeMethodName;
+		return position;
+	}
+
 	public Field getField(FieldDef fieldDef) {
 		return getField(fieldDefStub.getFieldNo(fieldDef));
 	}
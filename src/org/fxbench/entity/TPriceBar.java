@@ -74,13 +74,15 @@ public class TPriceBar extends BaseEntity implements Comparable<TPriceBar>
 	private double bidLow;	//The lowest price of the bid bar.
 	private double bidOpen;	//The open price of the bid bar or bid tick.
 	private FieldDefStub<FieldDef> fieldDefStub;
+	private boolean fieldsDirty;	//The Field view is behind the prices
 	
 	public TPriceBar() {
 	}
 
+	//The Field view is only built when a field is read, the setters touch the prices only
 	public TPriceBar(FieldDefStub<FieldDef> fieldDefStub) {
-		initFields(fieldDefStub.getFieldDefArray());
 		this.fieldDefStub = fieldDefStub;
+		this.fieldsDirty = true;
 	}
 	
 	public String getSymbol() {
@@ -88,125 +90,77 @@ public class TPriceBar extends BaseEntity implements Comparable<TPriceBar>
 	}
 	public void setSymbol(String symbol) {
 		this.symbol = symbol;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.SYMBOL), symbol);
-		
-		String precisionStr = Utils.getFormatStr(
-				BenchApp.getInst().getTradeDesk().getTradingServerSession().getSymbolPrecision(symbol), '.', '#');
-		int fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_OPEN);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_HIGH);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_LOW);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_CLOSE);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_OPEN);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_HIGH);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_LOW);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_CLOSE);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_MEDIAN);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_TYPICAL);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_WEIGHTED);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_MEDIAN);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_TYPICAL);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
-		fieldNo = fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_WEIGHTED);
-		setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
+		fieldsDirty = true;
 	}
 	public Date getStartDate() {
 		return startDate;
 	}
 	public void setStartDate(Date startDate) {
 		this.startDate = startDate;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_DATE), startDate);
+		fieldsDirty = true;
 	}
 	public Interval getInterval() {
 		return interval;
 	}
 	public void setInterval(Interval interval) {
 		this.interval = interval;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_INTERVAL), interval);
+		fieldsDirty = true;
 	}
 	public double getAskClose() {
 		return askClose;
 	}
 	public void setAskClose(double askClose) {
 		this.askClose = askClose;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_CLOSE), askClose);
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_TYPICAL), getAskTypical());
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_WEIGHTED), getAskWeighted());
+		fieldsDirty = true;
 	}
 	public double getAskHigh() {
 		return askHigh;
 	}
 	public void setAskHigh(double askHigh) {
 		this.askHigh = askHigh;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_HIGH), askHigh);
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_MEDIAN), getAskMedian());
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_TYPICAL), getAskTypical());
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_WEIGHTED), getAskWeighted());
+		fieldsDirty = true;
 	}
 	public double getAskLow() {
 		return askLow;
 	}
 	public void setAskLow(double askLow) {
 		this.askLow = askLow;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_LOW), askLow);
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_MEDIAN), getAskMedian());
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_TYPICAL), getAskTypical());
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_WEIGHTED), getAskWeighted());
+		fieldsDirty = true;
 	}
 	public double getAskOpen() {
 		return askOpen;
 	}
 	public void setAskOpen(double askOpen) {
 		this.askOpen = askOpen;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_OPEN), askOpen);
+		fieldsDirty = true;
 	}
 	public double getBidClose() {
 		return bidClose;
 	}
 	public void setBidClose(double bidClose) {
 		this.bidClose = bidClose;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_CLOSE), bidClose);
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_TYPICAL), getBidTypical());
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_WEIGHTED), getBidWeighted());
-		
+		fieldsDirty = true;
 	}
 	public double getBidHigh() {
 		return bidHigh;
 	}
 	public void setBidHigh(double bidHigh) {
 		this.bidHigh = bidHigh;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_HIGH), bidHigh);
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_MEDIAN), getBidMedian());
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_TYPICAL), getBidTypical());
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_WEIGHTED), getBidWeighted());
+		fieldsDirty = true;
 	}
 	public double getBidLow() {
 		return bidLow;
 	}
 	public void setBidLow(double bidLow) {
 		this.bidLow = bidLow;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_LOW), bidLow);
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_MEDIAN), getBidMedian());
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_TYPICAL), getBidTypical());
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_WEIGHTED), getBidWeighted());
+		fieldsDirty = true;
 	}
 	public double getBidOpen() {
 		return bidOpen;
 	}
 	public void setBidOpen(double bidOpen) {
 		this.bidOpen = bidOpen;
-		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_OPEN), bidOpen);
+		fieldsDirty = true;
 	}
 	
 	public double getAskMedian() {
@@ -268,21 +222,22 @@ public class TPriceBar extends BaseEntity implements Comparable<TPriceBar>
 	}
 	
 	public void updateByOffer(TOffer offer) {
-		setAskClose(offer.getAsk());
-		if (askHigh < offer.getAsk()) {
-			setAskHigh(offer.getAsk());
+		askClose = offer.getAsk();
+		if (askHigh < askClose) {
+			askHigh = askClose;
 		}
-		if (askLow > offer.getAsk()) {
-			setAskLow(offer.getAsk());
+		if (askLow > askClose) {
+			askLow = askClose;
 		}
 		
-		setBidClose(offer.getBid());
-		if (bidHigh < offer.getBid()) {
-			setBidHigh(offer.getBid());
+		bidClose = offer.getBid();
+		if (bidHigh < bidClose) {
+			bidHigh = bidClose;
 		}
-		if (bidLow > offer.getBid()) {
-			setBidLow(offer.getBid());
+		if (bidLow > bidClose) {
+			bidLow = bidClose;
 		}
+		fieldsDirty = true;
 	}
 	
 	@Override
@@ -332,13 +287,43 @@ public class TPriceBar extends BaseEntity implements Comparable<TPriceBar>
 			return null;
 		}
 	}
+
+	public static TPriceBar valueOf(String symbol, Interval interval, long startTime,
+			double askOpen, double askHigh, double askLow, double askClose,
+			double bidOpen, double bidHigh, double bidLow, double bidClose) {
+		TPriceBar priceBar = new TPriceBar();
+		priceBar.symbol = symbol;
+		priceBar.interval = interval;
+		priceBar.startDate = new Date(startTime);
+		priceBar.askOpen = askOpen;
+		priceBar.askHigh = askHigh;
+		priceBar.askLow = askLow;
+		priceBar.askClose = askClose;
+		priceBar.bidOpen = bidOpen;
+		priceBar.bidHigh = bidHigh;
+		priceBar.bidLow = bidLow;
+		priceBar.bidClose = bidClose;
+		return priceBar;
+	}
+
+	public void setFieldDefStub(FieldDefStub<FieldDef> fieldDefStub) {
+		this.fieldDefStub = fieldDefStub;
+		fieldList.clear();
+		fieldsDirty = true;
+	}
+	
+	@Override
+	public Field getField(int fieldNo) {
+		updateFields();
+		return super.getField(fieldNo);
+	}
 	
 	public Field getField(FieldDef fieldDef) {
-		return getField(fieldDefStub.getFieldNo(fieldDef));
+		return fieldDefStub == null ? null : getField(fieldDefStub.getFieldNo(fieldDef));
 	}
 	
 	public String getFieldFromatText(FieldDef fieldDef) {
-		Field field = getField(fieldDefStub.getFieldNo(fieldDef));
+		Field field = getField(fieldDef);
 		if (field == null) {
 			return "";
 		} else {
@@ -384,6 +369,47 @@ public class TPriceBar extends BaseEntity implements Comparable<TPriceBar>
 		}
 	}
     
+	//Builds the Field view on first use and brings it up to date with the prices
+	private void updateFields() {
+		if (fieldDefStub == null || !fieldsDirty && fieldList.size() > 0) {
+			return;
+		}
+		fieldsDirty = false;
+		if (fieldList.size() == 0) {
+			initFields(fieldDefStub.getFieldDefArray());
+			if (symbol != null) {
+				String precisionStr = Utils.getFormatStr(
+						BenchApp.getInst().getTradeDesk().getTradingServerSession().getSymbolPrecision(symbol), '.', '#');
+				FieldDef[] priceFieldDefs = {
+						FieldDef.PRICEBAR_ASK_OPEN, FieldDef.PRICEBAR_ASK_HIGH, FieldDef.PRICEBAR_ASK_LOW, FieldDef.PRICEBAR_ASK_CLOSE,
+						FieldDef.PRICEBAR_BID_OPEN, FieldDef.PRICEBAR_BID_HIGH, FieldDef.PRICEBAR_BID_LOW, FieldDef.PRICEBAR_BID_CLOSE,
+						FieldDef.PRICEBAR_ASK_MEDIAN, FieldDef.PRICEBAR_ASK_TYPICAL, FieldDef.PRICEBAR_ASK_WEIGHTED,
+						FieldDef.PRICEBAR_BID_MEDIAN, FieldDef.PRICEBAR_BID_TYPICAL, FieldDef.PRICEBAR_BID_WEIGHTED};
+				for (FieldDef fieldDef : priceFieldDefs) {
+					int fieldNo = fieldDefStub.getFieldNo(fieldDef);
+					setFieldFormat(fieldNo, getFieldFormat(fieldNo) + precisionStr);
+				}
+			}
+		}
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.SYMBOL), symbol);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_INTERVAL), interval);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_DATE), startDate);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_OPEN), askOpen);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_HIGH), askHigh);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_LOW), askLow);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_CLOSE), askClose);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_OPEN), bidOpen);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_HIGH), bidHigh);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_LOW), bidLow);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_CLOSE), bidClose);
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_MEDIAN), getAskMedian());
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_TYPICAL), getAskTypical());
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_ASK_WEIGHTED), getAskWeighted());
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_MEDIAN), getBidMedian());
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_TYPICAL), getBidTypical());
+		setFieldVal(fieldDefStub.getFieldNo(FieldDef.PRICEBAR_BID_WEIGHTED), getBidWeighted());
+	}
+	
 	private void initFields(FieldDef[] fieldDefArray) {
 		for (int i = 0; i < fieldDefArray.length; i++) {
 			Field field = new Field(i);
@@ -34,6 +34,7 @@ package org.fxbench.trader;
 
 import org.fxbench.desk.PriceBars.ReferSpot;
 import org.fxbench.desk.TradeDesk;
+import org.fxbench.entity.BaseEntity;
 import org.fxbench.entity.TOrder;
 import org.fxbench.BenchApp;
 import org.fxbench.trader.Liaison.LiaisonStatus;
@@ -47,6 +48,7 @@ import javax.swing.JOptionPane;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
@@ -243,6 +245,24 @@ public abstract class TradingServerSession
         }
     }
 	
+	//Whether closed positions are left to be loaded by loadMoreClosedPositions()
+	public boolean hasMoreClosedPositions() {
+		return false;
+	}
+	
+	/**
+	 * Reads the next page of closed positions into handler by batches, on the calling thread,
+	 * for the sessions loading them by pages. The positions are not added to the desk.
+	 */
+	public void loadMoreClosedPositions(BatchHandler handler) {
+	}
+	
+	//Receives the entities read by a session, one batch at a time
+	public interface BatchHandler
+	{
+		public void handle(List<BaseEntity> batch);
+	}
+	
 	public void loadPriceBarFromHost(String symbol, String interval, Date loadFromDate, Date loadToDate) {
 		IRequest request = liaison.getRequestFactory().getPriceHistory(symbol, interval, loadFromDate, loadToDate);
 		try {
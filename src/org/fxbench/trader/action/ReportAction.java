@@ -165,7 +165,8 @@ public class ReportAction extends TradeAction implements ISignalListener
      * @param aSignal signal
      */
     public void onSignal(Signaler aSrc, Signal aSignal) {
-        if (aSignal.getType() == SignalType.ADD || aSignal.getType() == SignalType.REMOVE) {
+        if (aSignal.getType() == SignalType.ADD || aSignal.getType() == SignalType.REMOVE
+        		|| aSignal.getType() == SignalType.BATCH) {
             setInitialEnable();
             checkActionEnabled();
         }
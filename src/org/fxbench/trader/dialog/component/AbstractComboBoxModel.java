@@ -46,4 +46,22 @@ public abstract class AbstractComboBoxModel extends AbstractListModel implements
             fireContentsChanged(this, -1, -1);
         }
     }
+
+    /**
+     * Notifies that the items have changed, keeping the selected item.<br>
+     * The selected item is taken over from the item with the same title, wherever it is now,
+     * so no selection nor action event is fired.
+     */
+    public void fireContentsChanged() {
+        if (mSelectedItem != null) {
+            for (int i = 0; i < getSize(); i++) {
+                Object item = getElementAt(i);
+                if (mSelectedItem.equals(item)) {
+                    mSelectedItem = item;
+                    break;
+                }
+            }
+        }
+        fireContentsChanged(this, 0, getSize() - 1);
+    }
 }
\ No newline at end of file
@@ -236,6 +236,10 @@ public abstract class BusinessDataComboBox extends KeySensitiveComboBox implemen
                 setSelectedIndex(index);
             } else if (aSignal.getType() == SignalType.REMOVE) {
                 shouldUpdate = removeOnSignal(aSignal);
+            } else if (aSignal.getType() == SignalType.BATCH) {
+                //The selection is kept by its title, the listeners are not told it has changed
+                getComboBoxModel().fireContentsChanged();
+                shouldUpdate = true;
             }
             if (shouldUpdate) {
                 refreshAll();
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 FXDaemon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fxbench.trader.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.fxbench.entity.TPriceBar;
+import org.fxbench.entity.TPriceBar.Interval;
+
+/**
+ * Fixed-width binary price bar file, the binary twin of a ".dat" CSV file.<br>
+ * Header: magic(int), version(int), then records of<br>
+ * startTime(long epoch millis), askOpen, askHigh, askLow, askClose, bidOpen, bidHigh, bidLow, bidClose(double).<br>
+ * Records are sorted by start time, so a date range is located by binary search.
+ */
+public class BarFile
+{
+	private final static Log logger = LogFactory.getLog(BarFile.class);
+
+	public final static String FILE_EXT = ".bar";
+
+	private final static int MAGIC = 0x46584242;	//"FXBB"
+	private final static int VERSION = 1;
+	private final static int HEADER_SIZE = 8;
+	private final static int RECORD_SIZE = 8 + 8 * 8;
+
+	public static boolean exists(String filePath) {
+		File file = new File(filePath);
+		return file.exists() && file.isFile() && file.canRead();
+	}
+
+	public static List<TPriceBar> read(String filePath, String symbol, Interval interval, long fromTime, long toTime) {
+		List<TPriceBar> priceBarList = new ArrayList<TPriceBar>();
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(filePath, "r");
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				logger.warn("Invalid bar file ==> " + filePath);
+				return priceBarList;
+			}
+			int count = (buffer.limit() - HEADER_SIZE) / RECORD_SIZE;
+			for (int i = lowerBound(buffer, count, fromTime); i < count; i++) {
+				int pos = HEADER_SIZE + i * RECORD_SIZE;
+				long startTime = buffer.getLong(pos);
+				if (startTime > toTime) {
+					break;
+				}
+				priceBarList.add(TPriceBar.valueOf(symbol, interval, startTime,
+						buffer.getDouble(pos + 8), buffer.getDouble(pos + 16),
+						buffer.getDouble(pos + 24), buffer.getDouble(pos + 32),
+						buffer.getDouble(pos + 40), buffer.getDouble(pos + 48),
+						buffer.getDouble(pos + 56), buffer.getDouble(pos + 64)));
+			}
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		} finally {
+			close(raf);
+		}
+		return priceBarList;
+	}
+
+	//Index of the first record whose start time is not before the given time
+	private static int lowerBound(ByteBuffer buffer, int count, long time) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (buffer.getLong(HEADER_SIZE + mid * RECORD_SIZE) < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	public static void write(String filePath, List<TPriceBar> priceBarList) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + priceBarList.size() * RECORD_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		for (TPriceBar priceBar : priceBarList) {
+			buffer.putLong(priceBar.getStartDate().getTime());
+			buffer.putDouble(priceBar.getAskOpen());
+			buffer.putDouble(priceBar.getAskHigh());
+			buffer.putDouble(priceBar.getAskLow());
+			buffer.putDouble(priceBar.getAskClose());
+			buffer.putDouble(priceBar.getBidOpen());
+			buffer.putDouble(priceBar.getBidHigh());
+			buffer.putDouble(priceBar.getBidLow());
+			buffer.putDouble(priceBar.getBidClose());
+		}
+		buffer.flip();
+
+		//Write to a temporary file first so a reader never maps a half written file
+		File file = new File(filePath);
+		File tmpFile = new File(filePath + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			close(raf);
+		}
+		if (file.exists() && !file.delete() || !tmpFile.renameTo(file)) {
+			throw new IOException("Cannot replace bar file ==> " + filePath);
+		}
+	}
+
+	/**
+	 * Converts every ".dat" file under the data directory whose ".bar" file is missing or older.
+	 * @return the number of converted files
+	 */
+	public static int convert(File dir) {
+		int converted = 0;
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return converted;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				converted += convert(file);
+			} else if (file.getName().endsWith(DataReader.FILE_EXT)) {
+				String datPath = file.getPath();
+				String barPath = datPath.substring(0, datPath.length() - DataReader.FILE_EXT.length()) + FILE_EXT;
+				File barFile = new File(barPath);
+				if (barFile.exists() && barFile.lastModified() >= file.lastModified()) {
+					continue;
+				}
+				List<TPriceBar> priceBarList = DataReader.readCsv(datPath, null, Interval.un, Long.MIN_VALUE, Long.MAX_VALUE);
+				try {
+					write(barPath, priceBarList);
+					converted++;
+				} catch (IOException e) {
+					logger.error(e.getMessage());
+				}
+			}
+		}
+		return converted;
+	}
+
+	private static void close(RandomAccessFile raf) {
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				logger.error(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * One-shot converter of the local data tree.<br>
+	 * Usage: BarFile &lt;dataDir&gt;
+	 */
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.out.println("Usage: BarFile <dataDir>");
+			return;
+		}
+		File dir = new File(args[0]);
+		if (!dir.isDirectory()) {
+			System.out.println("Not a directory ==> " + args[0]);
+			return;
+		}
+		long start = System.currentTimeMillis();
+		int converted = convert(dir);
+		System.out.println("Converted " + converted + " files in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
@@ -2,21 +2,33 @@ package org.fxbench.trader.local;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.fxbench.entity.BaseEntity;
 import org.fxbench.trader.LoginException;
 
+/**
+ * Small pool of connections to the local database, so that independent tables
+ * can be selected concurrently. Connections are opened on demand up to MAX_CONNECTIONS.
+ */
 public class DBAccess
 {
 	private final static Log logger = LogFactory.getLog(DBAccess.class);
-	private Connection conn;
+	public final static int MAX_CONNECTIONS = 3;
+	
+	private final BlockingQueue<Connection> idleConns = new LinkedBlockingQueue<Connection>();
+	private final List<Connection> conns = new ArrayList<Connection>();
+	private String url;
+	private String dbUserName;
+	private String dbPassword;
 	
 	public DBAccess() {
 	}
@@ -32,8 +44,11 @@ public class DBAccess
 			sb.append("jdbc:mysql://");
 			sb.append(dbHost).append("/");
 			sb.append(dbName).append("?");
-			conn = DriverManager.getConnection(sb.toString(), dbUserName, dbPassword);
-//			dbAccess.conn.setAutoCommit(true);
+			url = sb.toString();
+			this.dbUserName = dbUserName;
+			this.dbPassword = dbPassword;
+			//The first connection checks the login, the others are opened when needed
+			idleConns.add(openConnection());
 		} catch (SQLException ex) {
 			logger.error("SQLException: " + ex.getMessage());
 			logger.error("SQLState: " + ex.getSQLState());
@@ -42,25 +57,92 @@ public class DBAccess
 		}
 	}
 	
+	private Connection openConnection() throws SQLException {
+		Connection conn = DriverManager.getConnection(url, dbUserName, dbPassword);
+//		conn.setAutoCommit(true);
+		synchronized (conns) {
+			conns.add(conn);
+		}
+		return conn;
+	}
+	
+	//Idle connection, a new one while there are less than MAX_CONNECTIONS, otherwise waits for one
+	private Connection acquire() throws SQLException {
+		Connection conn = idleConns.poll();
+		if (conn != null) {
+			return conn;
+		}
+		synchronized (conns) {
+			if (conns.size() < MAX_CONNECTIONS) {
+				return openConnection();
+			}
+		}
+		try {
+			return idleConns.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(e.getMessage());
+		}
+	}
+	
+	private void release(Connection conn) {
+		synchronized (conns) {
+			if (conns.contains(conn)) {
+				idleConns.offer(conn);
+			}
+		}
+	}
+	
 	public void close() {
-        try {
-            if (!conn.isClosed()) {
-                conn.close();
-            }
-        } catch (SQLException e) {
-        	logger.error(e.toString());
-        }
+		synchronized (conns) {
+			for (Connection conn : conns) {
+		        try {
+		            if (!conn.isClosed()) {
+		                conn.close();
+		            }
+		        } catch (SQLException e) {
+		        	logger.error(e.toString());
+		        }
+			}
+			conns.clear();
+			idleConns.clear();
+		}
     }
 		
 	public List<BaseEntity> select(BaseEntity baseEntity) {
-		Statement stmt = null;
+		final List<BaseEntity> result = new ArrayList<BaseEntity>();
+		select(baseEntity, new EntityHandler() {
+			public void handle(BaseEntity entity) {
+				result.add(entity);
+			}
+		});
+		return result;
+	}
+	
+	/**
+	 * Streams the rows selected by baseEntity to handler one by one, so that they are
+	 * never all held in memory. The query is prepared with the parameters of baseEntity
+	 * on a connection of the pool, held until the last row is handled.
+	 * @return the number of rows
+	 */
+	public int select(BaseEntity baseEntity, EntityHandler handler) {
+		Connection conn = null;
+		PreparedStatement stmt = null;
 		ResultSet rs = null;
-		List<BaseEntity> result = new ArrayList<BaseEntity>();
+		int count = 0;
 		try {
-		    stmt = conn.createStatement();
-		    rs = stmt.executeQuery(baseEntity.getSelSql());
+			conn = acquire();
+		    stmt = conn.prepareStatement(baseEntity.getSelSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		    //Rows are streamed by the MySQL driver instead of being read all at once
+		    stmt.setFetchSize(Integer.MIN_VALUE);
+		    Object[] params = baseEntity.getSelParams();
+		    for (int i = 0; i < params.length; i++) {
+		    	stmt.setObject(i + 1, params[i]);
+		    }
+		    rs = stmt.executeQuery();
 		    while (rs.next()) {
-                result.add(baseEntity.newEntity(rs));
+		    	handler.handle(baseEntity.newEntity(rs));
+		    	count++;
             }
 		} catch (SQLException ex){
 		    // handle any errors
@@ -81,7 +163,15 @@ public class DBAccess
 		        } catch (SQLException sqlEx) { } // ignore
 		        stmt = null;
 		    }
+		    if (conn != null) {
+		    	release(conn);
+		    }
 		}
-		return result;
+		return count;
+	}
+	
+	public interface EntityHandler
+	{
+		public void handle(BaseEntity entity);
 	}
 }
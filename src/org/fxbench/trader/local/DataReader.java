@@ -20,17 +20,65 @@ public class DataReader
 {
 	private final static Log logger = LogFactory.getLog(DBAccess.class);
 	
-	private final static String FILE_EXT = ".dat";
+	final static String FILE_EXT = ".dat";
 //	private final static char SEPARATOR = '/';
 	
 	public static List<TPriceBar> read(String fileDir, Date startDate, String symbol, Interval interval) {
+		return read(fileDir, startDate, symbol, interval, new Date(Long.MIN_VALUE), new Date(Long.MAX_VALUE));
+	}
+	
+	public static List<TPriceBar> read(String fileDir, Date startDate, String symbol, Interval interval, Date fromDate, Date toDate) {
+		return read(getFilePath(fileDir, startDate, symbol, interval), symbol, interval, fromDate, toDate);
+	}
+	
+	private static String getFilePath(String fileDir, Date startDate, String symbol, Interval interval) {
 		StringBuffer sb = new StringBuffer();
 		sb.append(fileDir).append(File.separator);
 		sb.append(symbol.replace('/', '-')).append(File.separator);
 		sb.append(Utils.getYear(startDate)).append(File.separator);
 		sb.append(getFileName(interval.name(), startDate)).append(FILE_EXT);		
-//		return read(sb.toString(), symbol, interval, startDate, new Date(Long.MAX_VALUE));
-		return read(sb.toString(), symbol, interval, new Date(Long.MIN_VALUE), new Date(Long.MAX_VALUE));
+		return sb.toString();
+	}
+	
+	//True if the CSV file or its binary twin exists
+	private static boolean exists(String filePath) {
+		String barPath = filePath.substring(0, filePath.length() - FILE_EXT.length()) + BarFile.FILE_EXT;
+		return new File(filePath).isFile() || BarFile.exists(barPath);
+	}
+	
+	/**
+	 * Bars of symbol from startDate to endDate, read from the monthly or yearly files covering the range.
+	 * Bar times are compared with the range shifted by the zone offset.
+	 */
+	public static List<TPriceBar> readRange(String dataPath, String symbol, Interval interval, Date startDate, Date endDate) {
+		List<TPriceBar> totalPriceBarList = new ArrayList<TPriceBar>();
+		String period = interval.name();
+		int zoneOffset = Calendar.getInstance().get(Calendar.ZONE_OFFSET);
+		Date fromDate = new Date(startDate.getTime() + zoneOffset);
+		Date toDate = new Date(endDate.getTime() + zoneOffset);
+		for (Date nextStartDate = startDate; nextStartDate != null;) {
+			//Months or years without a file are skipped without a warning
+			String filePath = getFilePath(dataPath, nextStartDate, symbol, interval);
+			List<TPriceBar> priceBarList = exists(filePath) ?
+					read(filePath, symbol, interval, fromDate, toDate) : new ArrayList<TPriceBar>();
+			if (priceBarList.size() > 0) {
+				totalPriceBarList.addAll(priceBarList);
+				TPriceBar tail = priceBarList.get(priceBarList.size() - 1);
+				Date loadToDate = new Date(tail.getStartDate().getTime() - zoneOffset);
+				if (loadToDate.compareTo(endDate) < 0) {
+					nextStartDate = addStartDate(loadToDate, period, 1);
+				} else {
+					nextStartDate = null;
+				}
+			} else {
+				//The file may hold only bars before the range, go on with the next one
+				nextStartDate = addStartDate(nextStartDate, period, 1);
+				if (nextStartDate.compareTo(endDate) >= 0) {
+					nextStartDate = null;
+				}
+			}
+		}
+		return totalPriceBarList;
 	}
 	
 	public static List<TPriceBar> read(String filePath, String symbol, Interval interval) {
@@ -38,6 +86,17 @@ public class DataReader
 	}
 	
 	public static List<TPriceBar> read(String filePath, String symbol, Interval interval, Date fromDate, Date toDate) {
+		//Prefer the binary twin of the CSV file unless the CSV file has been updated since the conversion
+		if (filePath.endsWith(FILE_EXT)) {
+			String barPath = filePath.substring(0, filePath.length() - FILE_EXT.length()) + BarFile.FILE_EXT;
+			if (BarFile.exists(barPath) && new File(barPath).lastModified() >= new File(filePath).lastModified()) {
+				return BarFile.read(barPath, symbol, interval, fromDate.getTime(), toDate.getTime());
+			}
+		}
+		return readCsv(filePath, symbol, interval, fromDate.getTime(), toDate.getTime());
+	}
+	
+	static List<TPriceBar> readCsv(String filePath, String symbol, Interval interval, long fromTime, long toTime) {
 		List<TPriceBar> priceBarList = new ArrayList<TPriceBar>();
 		try {
 			File file = new File(filePath);
@@ -47,11 +106,10 @@ public class DataReader
 				while ((line = br.readLine()) != null) {
 					TPriceBar priceBar = TPriceBar.valueOf(symbol, interval, line);
 					if (priceBar != null) {
-						int compareFrom = priceBar.getStartDate().compareTo(fromDate);
-						int compareTo = priceBar.getStartDate().compareTo(toDate);
-						if (compareFrom >= 0 && compareTo <= 0) {
+						long startTime = priceBar.getStartDate().getTime();
+						if (startTime >= fromTime && startTime <= toTime) {
 							priceBarList.add(priceBar);
-						} else if (compareTo > 0) {
+						} else if (startTime > toTime) {
 							break;
 						}
 					}
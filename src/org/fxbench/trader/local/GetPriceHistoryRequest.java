@@ -25,8 +25,6 @@
  */
 package org.fxbench.trader.local;
 
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
@@ -63,26 +61,7 @@ public class GetPriceHistoryRequest extends BaseRequest implements IRequester
      */
     public LiaisonStatus doIt() throws LiaisonException {
     	try {
-    		List<TPriceBar> totalPriceBarList = new ArrayList<TPriceBar>();
-    		Interval interval = Interval.valueOf(period); 
-    		for (Date nextStartDate = startDate; nextStartDate != null;) {
-	    		List<TPriceBar> priceBarList = DataReader.read(dataPath, nextStartDate, symbol, interval);
-	    		if (priceBarList.size() > 0) {
-//	    			System.out.println("GetPriceHistoryRequest.srartDate: " + nextStartDate.toString());
-//	    			System.out.println("GetPriceHistoryRequest.loadHead: " + priceBarList.get(0).getStartDate().toString());
-//	    			System.out.println("GetPriceHistoryRequest.loadTail: " + priceBarList.get(priceBarList.size() - 1).getStartDate().toString());
-	    			totalPriceBarList.addAll(priceBarList);
-	    			TPriceBar tail = priceBarList.get(priceBarList.size() - 1);
-	    			Date loadToDate = new Date(tail.getStartDate().getTime() - Calendar.getInstance().get(Calendar.ZONE_OFFSET));
-	    			if (loadToDate.compareTo(endDate) < 0) {
-	    				nextStartDate = DataReader.addStartDate(loadToDate, period, 1);
-	    			} else {
-	    				nextStartDate = null;
-	    			}
-	    		} else {
-	    			nextStartDate = null;
-	    		}
-    		}
+    		List<TPriceBar> totalPriceBarList = DataReader.readRange(dataPath, symbol, Interval.valueOf(period), startDate, endDate);
     		if (totalPriceBarList.size() > 0) {
     			BenchApp.getInst().getTradeDesk().getPriceBars().add(totalPriceBarList);
     		}
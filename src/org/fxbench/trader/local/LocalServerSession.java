@@ -1,5 +1,8 @@
 package org.fxbench.trader.local;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.fxbench.chart.ta.Indicator;
 import org.fxbench.desk.PriceBars;
 import org.fxbench.desk.TradeDesk;
 import org.fxbench.desk.PriceBars.ReferSpot;
@@ -8,20 +11,44 @@ import org.fxbench.entity.TAccount;
 import org.fxbench.entity.TOffer;
 import org.fxbench.entity.TOrder;
 import org.fxbench.entity.TPosition;
+import org.fxbench.entity.TPosition.Stage;
+import org.fxbench.entity.TPriceBar;
 import org.fxbench.entity.TPriceBar.Interval;
+import org.fxbench.ui.panel.ClosedPositionPanel;
+import org.fxbench.ui.panel.OrderPanel;
 import org.fxbench.util.Utils;
+import org.fxbench.util.properties.ChartSchema;
 import org.fxbench.util.properties.PropertyManager;
+import org.fxbench.util.properties.SettingManager;
+import org.fxbench.util.signal.SignalVector;
 import org.fxbench.trader.ConnectionsManager;
 import org.fxbench.trader.TradingServerSession;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LocalServerSession extends TradingServerSession
 {
+	private final static Log logger = LogFactory.getLog(LocalServerSession.class);
+	private final static int PREFETCH_SIZE = Indicator.TA_CALCULATE_SIZE * 3;	//Bars read ahead for the first chart
+	private final static int BATCH_SIZE = 1000;	//Entities streamed into the desk per batch when there is no page
+	
 	DBAccess dbAccess;
+	private Replayer replayer;
+	private TPosition lastClosedPosition;	//Last closed position of the last page
+	private boolean moreClosedPositions;
+	private boolean loadingClosedPositions;	//A page is being read
 
     public LocalServerSession(TradeDesk tradeDesk) {
     	super(tradeDesk);
@@ -80,33 +107,222 @@ public class LocalServerSession extends TradingServerSession
         return "JPY";
     }
     
+	/**
+     * Loads the tables and the properties of the login user in two phases.<br>
+     * The accounts and the offers are selected together first, the properties need the offers.
+     * Then the orders, the closed positions and the properties are loaded together, and the
+     * history of the first chart is read as soon as its properties are known, so that it is
+     * in the price bars when the chart is painted.
+     */
 	@Override
     public void getUserObjects() throws Exception {
-    	TAccount account = new TAccount(getLiaison().getLoginRequest().getAccountName());
-    	List<BaseEntity> accountList = dbAccess.select(account);
-    	if (accountList.size() == 0) {
+    	ExecutorService executor = Executors.newFixedThreadPool(DBAccess.MAX_CONNECTIONS, new ThreadFactory() {
+    		private final AtomicInteger count = new AtomicInteger();
+    		public Thread newThread(Runnable r) {
+    			Thread thread = new Thread(r, "Bootstrap-" + count.incrementAndGet());
+    			thread.setDaemon(true);
+    			return thread;
+    		}
+    	});
+    	try {
+    		final String accountName = getLiaison().getLoginRequest().getAccountName();
+    		Future<List<BaseEntity>> accounts = executor.submit(new Phase<List<BaseEntity>>("Accounts") {
+    			List<BaseEntity> load() {
+    				return dbAccess.select(new TAccount(accountName));
+    			}
+    		});
+    		Future<List<BaseEntity>> offers = executor.submit(new Phase<List<BaseEntity>>("Offers") {
+    			List<BaseEntity> load() {
+    				return dbAccess.select(new TOffer());
+    			}
+    		});
+    		//The accounts are added whatever the offers, the steps after them need both
+    		List<BaseEntity> accountList = get(accounts);
+    		if (accountList.size() == 0) {
+    			PropertyManager.getInstance().loadLoginUserProperties(mUsername);
+    			return;
+    		}
+    		tradeDesk.addAccounts(accountList);
+    		List<BaseEntity> offerList = get(offers);
+    		if (offerList.size() == 0) {
+    			PropertyManager.getInstance().loadLoginUserProperties(mUsername);
+    			return;
+    		}
+    		tradeDesk.addOffers(offerList);
+    		
+    		//Orders and positions are streamed into the desk by batches, built with the fields of their panels
+    		Future<Object> orders = executor.submit(new Phase<Object>("Orders") {
+    			Object load() {
+    				TOrder order = new TOrder(OrderPanel.getFieldDefStub());
+    				order.setAccountIdEx(accountName);
+    				Batches batches = new Batches(new DeskHandler(tradeDesk.getOrders()), BATCH_SIZE);
+    				dbAccess.select(order, batches);
+    				batches.flush();
+    				return null;
+    			}
+    		});
+    		Future<Object> positions = executor.submit(new Phase<Object>("Closed positions") {
+    			Object load() {
+    				synchronized (LocalServerSession.this) {
+    					lastClosedPosition = null;
+    					moreClosedPositions = true;
+    				}
+    				loadMoreClosedPositions(new DeskHandler(tradeDesk.getClosedPositions()));
+    				return null;
+    			}
+    		});
+    		Future<Object> properties = executor.submit(new Phase<Object>("Properties") {
+    			Object load() {
+    				PropertyManager.getInstance().loadLoginUserProperties(mUsername);
+    				prefetchPriceBars();
+    				return null;
+    			}
+    		});
+    		get(orders);
+    		get(positions);
+    		get(properties);
+    	} finally {
+    		executor.shutdown();
+    	}
+    }
+    
+    private static <T> T get(Future<T> future) throws Exception {
+    	try {
+    		return future.get();
+    	} catch (ExecutionException e) {
+    		throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+    	}
+    }
+    
+    //Reads the history the first chart will ask for up to the login start date
+    private void prefetchPriceBars() {
+    	Iterator<String> it = PropertyManager.getInstance().getChartPropSheets().keySet().iterator();
+    	Date startDate = getLiaison().getLoginRequest().getStartDate();
+    	if (!it.hasNext() || startDate == null) {
     		return;
     	}
-    	tradeDesk.addAccounts(accountList);
-    	
-    	List<BaseEntity> offerList = dbAccess.select(new TOffer());
-    	if (offerList.size() == 0) {
+    	ChartSchema chartSchema = ChartSchema.valueOf(it.next());
+    	Interval interval;
+    	try {
+    		interval = Interval.valueOf(chartSchema.getPeriod());
+    	} catch (IllegalArgumentException e) {
     		return;
     	}
-    	tradeDesk.addOffers(offerList);
+    	long time = System.currentTimeMillis();
+    	Date loadFromDate = PriceBars.addPriceBarStartDate(interval.getSeconds() * -1, startDate, PREFETCH_SIZE);
+    	Date loadToDate = DataReader.addStartDate(startDate, interval.name(), 1);
+    	List<TPriceBar> priceBarList = DataReader.readRange(getLiaison().getLoginRequest().getDataPath(),
+    			chartSchema.getSymbol(), interval, loadFromDate, loadToDate);
+    	if (priceBarList.size() > 0) {
+    		tradeDesk.getPriceBars().add(priceBarList);
+    	}
+    	logger.info("History of " + chartSchema.getSymbol() + " " + interval + " loaded in " +
+    			(System.currentTimeMillis() - time) + " ms");
+    }
+    
+    //Task of the bootstrap, logs its time
+    private abstract class Phase<T> implements Callable<T>
+    {
+    	private final String name;
     	
-    	TOrder order = new TOrder();
-    	order.setAccountIdEx(getLiaison().getLoginRequest().getAccountName());
-    	List<BaseEntity> orderList = dbAccess.select(order);
-    	if (orderList.size() > 0) {
-    		tradeDesk.addOrders(orderList);
+    	Phase(String name) {
+    		this.name = name;
     	}
     	
-    	TPosition position = new TPosition();
+    	abstract T load();
+    	
+    	public T call() {
+    		long time = System.currentTimeMillis();
+    		T result = load();
+    		logger.info(name + " loaded in " + (System.currentTimeMillis() - time) + " ms");
+    		return result;
+    	}
+    }
+    
+    @Override
+    public synchronized boolean hasMoreClosedPositions() {
+    	return moreClosedPositions;
+    }
+    
+    /**
+     * Reads the next page of closed positions, from the newest one on,
+     * or all of them when the page size of the settings is 0.<br>
+     * The session is only locked to take and advance the page, not while the page is read;
+     * a page asked for while another one is being read is ignored.
+     */
+    @Override
+    public void loadMoreClosedPositions(BatchHandler handler) {
+    	final int pageSize = SettingManager.getInstance().getClosedPositionPageSize();
+    	TPosition position = new TPosition(Stage.Closed, ClosedPositionPanel.getFieldDefStub());
     	position.setAccountIdEx(getLiaison().getLoginRequest().getAccountName());
-    	List<BaseEntity> positionList = dbAccess.select(position);
-    	if (positionList.size() > 0) {
-    		tradeDesk.addClosedPositions(positionList);
+    	synchronized (this) {
+    		if (!moreClosedPositions || loadingClosedPositions || dbAccess == null) {
+    			return;
+    		}
+    		loadingClosedPositions = true;
+    		position.setPage(pageSize, lastClosedPosition);
+    	}
+    	final TPosition[] last = new TPosition[1];
+    	int count = -1;
+    	try {
+    		Batches batches = new Batches(handler, pageSize > 0 ? pageSize : BATCH_SIZE) {
+    			public void handle(BaseEntity entity) {
+    				last[0] = (TPosition)entity;
+    				super.handle(entity);
+    			}
+    		};
+    		count = dbAccess.select(position, batches);
+    		batches.flush();
+    	} finally {
+    		synchronized (this) {
+    			if (last[0] != null) {
+    				lastClosedPosition = last[0];
+    			}
+    			moreClosedPositions = pageSize > 0 && count == pageSize;
+    			loadingClosedPositions = false;
+    		}
+    	}
+    }
+    
+    //Buffers the streamed entities and hands them to handler by batches
+    private static class Batches implements DBAccess.EntityHandler
+    {
+    	private final BatchHandler handler;
+    	private final int batchSize;
+    	private List<BaseEntity> batch;
+    	
+    	Batches(BatchHandler handler, int batchSize) {
+    		this.handler = handler;
+    		this.batchSize = batchSize;
+    		this.batch = new ArrayList<BaseEntity>(batchSize);
+    	}
+    	
+    	public void handle(BaseEntity entity) {
+    		batch.add(entity);
+    		if (batch.size() >= batchSize) {
+    			flush();
+    		}
+    	}
+    	
+    	void flush() {
+    		if (batch.size() > 0) {
+    			handler.handle(batch);
+    			batch = new ArrayList<BaseEntity>(batchSize);
+    		}
+    	}
+    }
+    
+    //Adds the batches to vector of the desk, with one signal each
+    private static class DeskHandler implements BatchHandler
+    {
+    	private final SignalVector vector;
+    	
+    	DeskHandler(SignalVector vector) {
+    		this.vector = vector;
+    	}
+    	
+    	public void handle(List<BaseEntity> batch) {
+    		vector.addAll(batch);
     	}
     }
 
@@ -128,14 +344,35 @@ public class LocalServerSession extends TradingServerSession
         mTerminal = dbName;
         mHostUrl = dbHost;
 
+        long time = System.currentTimeMillis();
         dbAccess = DBAccess.newInstance();
         dbAccess.connect(dbHost, dbName, dbUserName, dbPassword);
+        logger.info("Connected in " + (System.currentTimeMillis() - time) + " ms");
         getUserObjects();
+        logger.info("Session loaded in " + (System.currentTimeMillis() - time) + " ms");
 
         ConnectionsManager.setLastConnection(mTerminal, mUsername);
-        PropertyManager.getInstance().loadLoginUserProperties(mUsername);
         
         liaison.communicationEstablished();
+        startReplay();
+    }
+    
+    //Replays the symbols of the settings from the server time of the login, if any
+    private void startReplay() {
+    	String[] symbols = SettingManager.getInstance().getReplaySymbols();
+    	if (symbols.length == 0) {
+    		return;
+    	}
+    	String period = SettingManager.getInstance().getReplayInterval();
+    	Interval interval = period == null || period.length() == 0 ? Interval.m1 : Interval.valueOf(period);
+    	replayer = new Replayer(tradeDesk, getLiaison().getLoginRequest().getDataPath(), symbols, interval,
+    			tradeDesk.getServerTime(), new Date(), SettingManager.getInstance().getReplaySpeed());
+    	replayer.start();
+    }
+    
+    //Running replay, null if there is none
+    public Replayer getReplayer() {
+    	return replayer;
     }
     
     /**
@@ -144,6 +381,10 @@ public class LocalServerSession extends TradingServerSession
 	@Override
     public void logout() {
         mLogout = true;
+        if (replayer != null) {
+        	replayer.stop();
+        	replayer = null;
+        }
         if (dbAccess != null) {
         	dbAccess.close();
         }
@@ -190,6 +431,19 @@ public class LocalServerSession extends TradingServerSession
 		return Integer.MAX_VALUE;
 	}
 	
+	//During a replay, the history is read up to the replayed time only
+	@Override
+	public void loadPriceBarFromHost(String symbol, String interval, Date loadFromDate, Date loadToDate) {
+		Replayer replay = replayer;
+		if (replay != null && replay.isRunning() && loadToDate.after(replay.getTime())) {
+			loadToDate = new Date(replay.getTime().getTime() - 1);
+			if (!loadToDate.after(loadFromDate)) {
+				return;
+			}
+		}
+		super.loadPriceBarFromHost(symbol, interval, loadFromDate, loadToDate);
+	}
+	
 	private void loadPriceBarFromHost(String symbol, Interval interval, Date loadToDate, int loadSize) {
 		Date loadFromDate = PriceBars.addPriceBarStartDate(interval.getSeconds() * -1, loadToDate, loadSize);
 		loadToDate = DataReader.addStartDate(loadToDate, interval.name(), 1);
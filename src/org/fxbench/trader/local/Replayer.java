@@ -0,0 +1,293 @@
+package org.fxbench.trader.local;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.fxbench.desk.PriceBars;
+import org.fxbench.desk.TradeDesk;
+import org.fxbench.entity.TOffer;
+import org.fxbench.entity.TPriceBar;
+import org.fxbench.entity.TPriceBar.Interval;
+
+/**
+ * Replays the local history of some symbols as if it came from a server.<br>
+ * Each stored bar is added to the price bars with its open, then its high, low and close are
+ * sent as ticks to the offers over the time of the bar, low first for a rising bar. Tick files
+ * are replayed tick by tick. The server time follows the replayed ticks, so the run is the same
+ * whatever the speed: 1 replays in real time, n n times faster and 0 as fast as possible.<br>
+ * The files are read one at a time, a replay of years of history takes the memory of one file
+ * per symbol.
+ */
+public class Replayer implements Runnable
+{
+	private final static Log logger = LogFactory.getLog(Replayer.class);
+
+	private final TradeDesk tradeDesk;
+	private final String dataPath;
+	private final String[] symbols;
+	private final Interval interval;
+	private final Date endDate;
+	private final int zoneOffset;	//Bar times are the server times shifted by the zone offset
+	private final Object lock = new Object();
+	private volatile int speed;
+	private volatile long time;		//Server time of the last tick
+	private volatile long tickCount;
+	private boolean paused;
+	private long stepToTime;		//Ticks up to this server time are replayed while paused
+	private boolean stopped;
+	private long baseTime;			//Server time and wall clock time the pace is measured from
+	private long baseNanos;
+	private Thread thread;
+
+	public Replayer(TradeDesk tradeDesk, String dataPath, String[] symbols, Interval interval,
+			Date startDate, Date endDate, int speed) {
+		this.tradeDesk = tradeDesk;
+		this.dataPath = dataPath;
+		this.symbols = symbols.clone();
+		this.interval = interval;
+		this.endDate = endDate;
+		this.speed = speed;
+		this.time = startDate.getTime();
+		this.zoneOffset = Calendar.getInstance().get(Calendar.ZONE_OFFSET);
+	}
+
+	public synchronized void start() {
+		if (thread == null) {
+			thread = new Thread(this, "Replayer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	public void stop() {
+		synchronized (lock) {
+			stopped = true;
+			lock.notifyAll();
+		}
+	}
+
+	public boolean isRunning() {
+		Thread t = thread;
+		return t != null && t.isAlive();
+	}
+
+	public void pause() {
+		synchronized (lock) {
+			paused = true;
+			stepToTime = time;
+		}
+	}
+
+	public void resume() {
+		synchronized (lock) {
+			paused = false;
+			rebase();
+			lock.notifyAll();
+		}
+	}
+
+	public boolean isPaused() {
+		synchronized (lock) {
+			return paused;
+		}
+	}
+
+	//While paused, replays the ticks of the next bar, or the next tick of a tick replay
+	public void step() {
+		synchronized (lock) {
+			if (paused) {
+				stepToTime = Math.max(stepToTime, time) + (interval == Interval.T ? 1 : interval.getMilliSecond());
+				lock.notifyAll();
+			}
+		}
+	}
+
+	public void setSpeed(int speed) {
+		synchronized (lock) {
+			this.speed = Math.max(0, speed);
+			rebase();
+			lock.notifyAll();
+		}
+	}
+
+	public int getSpeed() {
+		return speed;
+	}
+
+	//Server time of the last replayed tick
+	public Date getTime() {
+		return new Date(time);
+	}
+
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	public void run() {
+		PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>();
+		for (int i = 0; i < symbols.length; i++) {
+			Cursor cursor = new Cursor(symbols[i], i, time + zoneOffset);
+			if (cursor.next()) {
+				queue.add(cursor);
+			}
+		}
+		synchronized (lock) {
+			rebase();
+		}
+		try {
+			while (!queue.isEmpty()) {
+				Cursor cursor = queue.poll();
+				long tickTime = cursor.tickTime - zoneOffset;
+				if (!await(tickTime)) {
+					break;
+				}
+				publish(cursor, tickTime);
+				if (cursor.next()) {
+					queue.add(cursor);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			logger.error(e.getMessage(), e);
+		}
+		logger.info("Replay ended at " + getTime() + " after " + tickCount + " ticks");
+	}
+
+	//Waits until the tick at tickTime is due, false once stopped
+	private boolean await(long tickTime) throws InterruptedException {
+		synchronized (lock) {
+			while (!stopped) {
+				if (paused) {
+					if (tickTime <= stepToTime) {
+						return true;
+					}
+					lock.wait();
+					continue;
+				}
+				if (speed == 0) {
+					return true;
+				}
+				long waitNanos = baseNanos + (tickTime - baseTime) * 1000000L / speed - System.nanoTime();
+				if (waitNanos <= 0) {
+					return true;
+				}
+				lock.wait(waitNanos / 1000000L, (int)(waitNanos % 1000000L));
+			}
+			return false;
+		}
+	}
+
+	private void rebase() {
+		baseTime = time;
+		baseNanos = System.nanoTime();
+	}
+
+	private void publish(Cursor cursor, long tickTime) {
+		TPriceBar priceBar = cursor.priceBar;
+		if (cursor.tick == 0 && interval != Interval.T) {
+			addBar(priceBar);
+		}
+		time = Math.max(time, tickTime);
+		tradeDesk.syncServerTime(new Date(time), true);
+		double ask, bid;
+		int tick = cursor.tick;
+		boolean lowFirst = priceBar.getBidClose() >= priceBar.getBidOpen();
+		if (interval == Interval.T || tick == 3) {
+			ask = priceBar.getAskClose();
+			bid = priceBar.getBidClose();
+		} else if (tick == 0) {
+			ask = priceBar.getAskOpen();
+			bid = priceBar.getBidOpen();
+		} else if ((tick == 1) == lowFirst) {
+			ask = priceBar.getAskLow();
+			bid = priceBar.getBidLow();
+		} else {
+			ask = priceBar.getAskHigh();
+			bid = priceBar.getBidHigh();
+		}
+		TOffer offer = tradeDesk.getOffer(priceBar.getSymbol());
+		if (offer != null) {
+			offer.setAsk(ask);
+			offer.setBid(bid);
+			offer.setTime(new Date(time));
+			tradeDesk.updateOffer(offer);
+		}
+		tickCount++;
+	}
+
+	//New bar at its open, a bar already loaded from the history is replaced by it
+	private void addBar(TPriceBar priceBar) {
+		TPriceBar openBar = TPriceBar.valueOf(priceBar.getSymbol(), priceBar.getInterval(),
+				priceBar.getStartDate().getTime(),
+				priceBar.getAskOpen(), priceBar.getAskOpen(), priceBar.getAskOpen(), priceBar.getAskOpen(),
+				priceBar.getBidOpen(), priceBar.getBidOpen(), priceBar.getBidOpen(), priceBar.getBidOpen());
+		PriceBars priceBars = tradeDesk.getPriceBars();
+		TPriceBar tail = priceBars.getTail(openBar.getKey());
+		if (tail == null || tail.getStartDate().getTime() < openBar.getStartDate().getTime()) {
+			priceBars.add(openBar);
+		} else if (tail.getStartDate().getTime() == openBar.getStartDate().getTime()) {
+			priceBars.set(openBar);
+		}
+	}
+
+	//Next ticks of one symbol, read file by file
+	private class Cursor implements Comparable<Cursor>
+	{
+		private final String symbol;
+		private final int order;		//Ticks at the same time are replayed in the order of the symbols
+		private final long fromTime;	//Bar time of the first tick
+		private Date fileStartDate;
+		private List<TPriceBar> priceBarList;
+		private int index;
+		private int tick;				//Tick of the bar, 0 (open) to 3 (close)
+		private TPriceBar priceBar;
+		private long tickTime;
+
+		private Cursor(String symbol, int order, long fromTime) {
+			this.symbol = symbol;
+			this.order = order;
+			this.fromTime = fromTime;
+			this.fileStartDate = new Date(fromTime - zoneOffset);
+			this.priceBarList = new ArrayList<TPriceBar>();
+			this.index = -1;
+			this.tick = 3;
+		}
+
+		private boolean next() {
+			if (priceBar != null && interval != Interval.T && tick < 3) {
+				tick++;
+				tickTime = priceBar.getStartDate().getTime() + (long)interval.getMilliSecond() * tick / 4;
+				return true;
+			}
+			while (++index >= priceBarList.size()) {
+				if (fileStartDate == null) {
+					return false;
+				}
+				priceBarList = DataReader.read(dataPath, fileStartDate, symbol, interval,
+						new Date(fromTime), new Date(endDate.getTime() + zoneOffset));
+				index = -1;
+				fileStartDate = DataReader.addStartDate(fileStartDate, interval.name(), 1);
+				if (fileStartDate.after(endDate)) {
+					fileStartDate = null;
+				}
+			}
+			priceBar = priceBarList.get(index);
+			tick = 0;
+			tickTime = priceBar.getStartDate().getTime();
+			return true;
+		}
+
+		public int compareTo(Cursor cursor) {
+			if (tickTime != cursor.tickTime) {
+				return tickTime < cursor.tickTime ? -1 : 1;
+			}
+			return order - cursor.order;
+		}
+	}
+}
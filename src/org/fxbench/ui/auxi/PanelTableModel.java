@@ -170,6 +170,19 @@ public abstract class PanelTableModel extends AbstractTableModel implements ISig
         fireTableStructureChanged();
     }
 
+    /**
+     * Current row of the element of a CHANGE signal, -1 if it is no longer there.<br>
+     * A rate limited signal is delivered later than it is fired, rows may have been
+     * inserted or deleted in between, so the row is found by the key of the element.
+     */
+    public static int getRowIndex(SignalVector rowData, Signal signal) {
+        Object element = signal.getElement();
+        if (element instanceof BaseEntity && rowData != null) {
+            return rowData.indexOf(((BaseEntity)element).getKey());
+        }
+        return signal.getIndex();
+    }
+
     /**
      * This method is called when signal is fired.
      *
@@ -181,11 +194,16 @@ public abstract class PanelTableModel extends AbstractTableModel implements ISig
             return;
         }
         if (signal.getType() == SignalType.CHANGE) {
-            fireTableRowsUpdated(signal.getIndex(), signal.getIndex());
+            int index = getRowIndex(rowData, signal);
+            if (index != -1) {
+                fireTableRowsUpdated(index, index);
+            }
         } else if (signal.getType() == SignalType.ADD) {
             fireTableRowsInserted(signal.getIndex(), signal.getIndex());
         } else if (signal.getType() == SignalType.REMOVE) {
             fireTableRowsDeleted(signal.getIndex(), signal.getIndex());
+        } else if (signal.getType() == SignalType.BATCH) {
+            fireTableDataChanged();
         }
     }
 }
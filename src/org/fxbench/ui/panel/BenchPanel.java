@@ -488,7 +488,7 @@ public class BenchPanel extends JPanel
 			if (shiftEndDate == null) {
 				return;
 			}
-			minChartPanel.refresh();
+			minChartPanel.refreshView();
 		}
 		int shiftBars = minChartPanel.getShiftFrameBars() * direction * frames;
 		if (frames > 0) {
@@ -496,7 +496,7 @@ public class BenchPanel extends JPanel
 			if (shiftEndDate == null) {
 				return;
 			}
-			minChartPanel.refresh();
+			minChartPanel.refreshView();
 		}
 		for (Dockable dockable : chartDockableList) {
 			ChartPanel chartPanel = (ChartPanel)dockable.getContent();
@@ -506,7 +506,7 @@ public class BenchPanel extends JPanel
 				chartPanel.setAutoScale(true);
 				chartPanel.shift(Double.valueOf(shiftBars / multi).intValue());
 				chartPanel.shift(shiftEndDate);
-				chartPanel.refresh();
+				chartPanel.refreshView();
 			}
 		}
 	}
@@ -30,6 +30,7 @@ import java.awt.event.ItemListener;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -43,13 +44,17 @@ import javax.swing.JToolBar;
 import javax.swing.SwingUtilities;
 import javax.swing.border.EtchedBorder;
 
+import org.fxbench.chart.BarPyramid;
+import org.fxbench.chart.ChartWorker;
 import org.fxbench.chart.IndicatorChangeDialog;
 import org.fxbench.chart.IndicatorPane;
 import org.fxbench.chart.IndicatorSelectDialog;
 import org.fxbench.chart.OverlayPane;
 import org.fxbench.chart.DataItem;
 import org.fxbench.chart.Dataset;
+import org.fxbench.chart.ta.ExpressionGraph;
 import org.fxbench.chart.ta.Indicator;
+import org.fxbench.desk.PriceBars;
 import org.fxbench.entity.TPriceBar;
 import org.fxbench.entity.TPriceBar.Interval;
 import org.fxbench.ui.BenchFrame;
@@ -71,6 +76,8 @@ public class ChartPanel extends BasePanel implements ISignalListener
 	private final static double AXIS_X_SCALE = 10;		//10pixels / 1peirod
 	private final static double ZOOM_X_FACTOR = 0.1;
 	private final static int SPLIT_DIVIDER_SIZE = 2;
+	private final static int REFRESH_RATE = 20;			//Maximum price bar updates per second
+	private final static double WINDOW_MARGIN = 0.5;	//Bars loaded on each side of the viewport, in viewports
 	
 	private ChartToolBar chartToolbar;
 	private ChartPopupMenu chartPopupMenu;
@@ -80,15 +87,18 @@ public class ChartPanel extends BasePanel implements ISignalListener
 	
 	private int ask_bid;
 	private List<TPriceBar> priceBarList;
-	private Dataset dataset;
+	private volatile Dataset dataset;	//Never changed once set, it may be read by the chart worker
 	private Date panelBeginDate;
-	private Date chartEndDate;
+	private Date chartEndDate;		//Start date of the last visible bar
+	private int visibleEnd;			//End of the viewport in the dataset being published
 	
 	private ChartSchema chartSchema;
 	private String symbol;
 	private Interval interval;
 	private OverlayPane overlayPane;
 	private List<IndicatorPane> indicatorPaneList; 
+	private ChartWorker chartWorker;
+	private ExpressionGraph expressionGraph;	//Expressions of the indicators, sharing their sub-expressions
 
 	public ChartPanel(BenchFrame mainFrame, ChartSchema schema, List<PropertySheet> chartPropSheetList) {
 		super(mainFrame);
@@ -109,7 +119,9 @@ public class ChartPanel extends BasePanel implements ISignalListener
 
 		overlayPane = new OverlayPane(this);
 		add(overlayPane.getSplitPane());
-		indicatorPaneList = new ArrayList<IndicatorPane>();
+		indicatorPaneList = new CopyOnWriteArrayList<IndicatorPane>();	//Iterated by the chart worker
+		chartWorker = new ChartWorker(this);
+		expressionGraph = new ExpressionGraph();
 		
 		for (PropertySheet propSheet : chartPropSheetList) {
 			if (propSheet.getName().equals(TemplateManager.PRICEBAR_NODE)) {
@@ -122,12 +134,13 @@ public class ChartPanel extends BasePanel implements ISignalListener
 		}
 		overlayPane.rePosIndicatorLabel();
 
-		getTradeDesk().getPriceBars().subscribe(this, SignalType.ADD);
-		getTradeDesk().getPriceBars().subscribe(this, SignalType.CHANGE);
+		getTradeDesk().getPriceBars().subscribe(this, SignalType.ADD, REFRESH_RATE);
+		getTradeDesk().getPriceBars().subscribe(this, SignalType.CHANGE, REFRESH_RATE);
 		
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
-				loadPriceBarFromDesk(getTradeDesk().getServerTime(), 0);		
+				loadPriceBarFromDesk(getTradeDesk().getServerTime(), 0);
+				refresh();
 			}
 		});
 	}
@@ -169,6 +182,10 @@ public class ChartPanel extends BasePanel implements ISignalListener
 		return loadBars;
 	}
 	
+	private int getPriceBarMargin() {
+		return Double.valueOf(overlayPane.getAxisXVisibleBars() * WINDOW_MARGIN).intValue();
+	}
+	
 	@Override
 	protected String id() {
 		return String.valueOf(chartSchema.getNo());
@@ -187,7 +204,7 @@ public class ChartPanel extends BasePanel implements ISignalListener
 	private void clear() {
 		synchronized (priceBarList) {
 			priceBarList.clear();
-			dataset.clear();
+			dataset = new Dataset();	//The old one may still be read by the chart worker
 		}
 		axisXScale = AXIS_X_SCALE;
 //		isLockView = false;
@@ -198,12 +215,29 @@ public class ChartPanel extends BasePanel implements ISignalListener
     	refresh();
 	}
 	
+	/**
+	 * Loads the window of bars for a viewport ending offset bars away from takeEndDate.
+	 * The window keeps a margin of bars on both sides of the viewport, so shift() and zoom()
+	 * can move the viewport inside it without loading and calculating again.
+	 * @return the last bar of the viewport, which becomes the chart end date
+	 */
 	private TPriceBar loadPriceBarFromDesk(Date takeEndDate, int offset) {
 		TPriceBar tail = null;
-		List<TPriceBar> takePriceBarList = getTradeDesk().getPriceBars().get(
-				symbol, interval, takeEndDate, getPriceBarLoadSize(), offset);
+		PriceBars priceBars = getTradeDesk().getPriceBars();
+		int margin = getPriceBarMargin();
+		Date endDate = priceBars.getStartDate(symbol, interval, takeEndDate, offset);
+		Date windowEndDate = priceBars.getStartDate(symbol, interval, takeEndDate, margin);
+		List<TPriceBar> takePriceBarList = priceBars.get(symbol, interval,
+				windowEndDate == null ? takeEndDate : windowEndDate, getPriceBarLoadSize() + 2 * margin, offset);
 		if (takePriceBarList != null && takePriceBarList.size() > 0) {
 			tail = takePriceBarList.get(takePriceBarList.size() - 1);
+			for (int i = takePriceBarList.size() - 1; i > 0 && endDate != null; i--) {
+				if (takePriceBarList.get(i).getStartDate().compareTo(endDate) <= 0) {
+					break;
+				}
+				tail = takePriceBarList.get(i - 1);
+			}
+			chartEndDate = tail.getStartDate();
 			synchronized (priceBarList) {
 				priceBarList.clear();
 				priceBarList.addAll(takePriceBarList);
@@ -276,6 +310,7 @@ public class ChartPanel extends BasePanel implements ISignalListener
 		}
 		prevSplitPane.setRightComponent(indicatorPane.getSplitPane().getRightComponent());
 		indicatorPaneList.remove(index);
+		indicatorPane.getIndicator().dispose();
 	}
 	
 	public IndicatorPane getIndicatorPane(JSplitPane splitPane) {
@@ -337,10 +372,63 @@ public class ChartPanel extends BasePanel implements ISignalListener
 		this.dataset = dataset;
 	}
 	
-	public Dataset getVisibleDataset() {
+	public Dataset getVisibleDataset(Dataset dataset) {
 		synchronized (priceBarList) {
 			return dataset == null || dataset.getSize() == 0 ? null :
-				dataset.subDataset(dataset.getSize() - overlayPane.getAxisXVisibleBars(), dataset.getSize());
+				dataset.subDataset(visibleEnd - overlayPane.getAxisXVisibleBars(), visibleEnd);
+		}
+	}
+	
+	//Visible bars merged into the nodes of level, so that zoomed-out charts draw one candle per pixel column
+	public Dataset getVisibleDataset(Dataset dataset, BarPyramid pyramid, int level) {
+		synchronized (priceBarList) {
+			if (dataset == null || dataset.getSize() == 0) {
+				return null;
+			}
+			pyramid.update(dataset);
+			return pyramid.subDataset(level, visibleEnd - overlayPane.getAxisXVisibleBars(), visibleEnd);
+		}
+	}
+	
+	//Index of the first visible bar in the dataset
+	public int getVisibleBegin() {
+		return Math.max(0, visibleEnd - overlayPane.getAxisXVisibleBars());
+	}
+	
+	//Locates the viewport in the dataset about to be published, the bars after it are the right margin
+	public void locateView(Dataset dataset) {
+		if (dataset == null) {
+			visibleEnd = 0;
+		} else if (chartEndDate == null) {
+			visibleEnd = dataset.getSize();
+		} else {
+			visibleEnd = Math.max(dataset.floorIndex(chartEndDate.getTime()) + 1, 
+					Math.min(dataset.getSize(), overlayPane.getAxisXVisibleBars()));
+		}
+	}
+	
+	public int getVisibleEnd() {
+		return visibleEnd;
+	}
+	
+	//Whether the viewport ending at endIndex lies inside the loaded window with enough bars before it to calculate
+	private boolean isInWindow(int endIndex) {
+		synchronized (priceBarList) {
+			if (dataset == null || endIndex < 0 || endIndex >= dataset.getSize()) {
+				return false;
+			}
+			if (endIndex + 1 >= getPriceBarLoadSize()) {
+				return true;
+			}
+			//No more bars before the window
+			TPriceBar head = getTradeDesk().getPriceBars().getHead(symbol, interval.name());
+			return head != null && head.getStartDate().getTime() == dataset.getTimeAt(0);
+		}
+	}
+	
+	private int getViewEndIndex() {
+		synchronized (priceBarList) {
+			return dataset == null || chartEndDate == null ? -1 : dataset.floorIndex(chartEndDate.getTime());
 		}
 	}
 	
@@ -446,6 +534,10 @@ public class ChartPanel extends BasePanel implements ISignalListener
 	public void setIndicatorPaneList(List<IndicatorPane> indicatorPaneList) {
 		this.indicatorPaneList = indicatorPaneList;
 	}
+
+	public ExpressionGraph getExpressionGraph() {
+		return expressionGraph;
+	}
 	
 	public void addIndicator(PropertySheet propSheet) {
 		if (propSheet == null) {
@@ -454,18 +546,10 @@ public class ChartPanel extends BasePanel implements ISignalListener
 		if (propSheet.getName() == TemplateManager.OVERLAY_NODE) {
 			overlayPane.addIndicator(propSheet);
 			overlayPane.rePosIndicatorLabel();
-			overlayPane.update();
-			overlayPane.repaint();
 		} else if(propSheet.getName() == TemplateManager.INDICATOR_NODE) {
-			final IndicatorPane indicatorPane = new IndicatorPane(this, propSheet);
-			addIndicatorPane(indicatorPane);
-			SwingUtilities.invokeLater(new Runnable() {
-				public void run() {
-					indicatorPane.update();
-					indicatorPane.repaint();					
-				}
-			});
+			addIndicatorPane(new IndicatorPane(this, propSheet));
 		}
+		refresh();
 		PropertyManager.getInstance().addChartPropSheet(chartSchema.toString(), propSheet);
 	}
 	
@@ -496,52 +580,75 @@ public class ChartPanel extends BasePanel implements ISignalListener
 		}
 	}
 	
+	//Positive shiftBars moves to later bars, negative to earlier ones
 	public Date shift(int shiftBars) {
-		Date endDate = null;		
-		if (shiftBars > 0) {
-			//Move to the left
-			TPriceBar tail = loadPriceBarFromDesk(chartEndDate, shiftBars);
-			if (tail != null) {
-				endDate = tail.getStartDate();
-			}
-		} else if (shiftBars < 0) {
-			//Move to the right
-			shiftBars = Math.abs(shiftBars);
+		if (shiftBars == 0) {
+			return chartEndDate;
+		}
+		int endIndex = getViewEndIndex();
+		if (endIndex >= 0 && isInWindow(endIndex + shiftBars)) {
 			synchronized (priceBarList) {
-				if (shiftBars < priceBarList.size()) {
-					endDate = priceBarList.get(priceBarList.size() - 1 - shiftBars).getStartDate();
-				}
-			}
-			if (endDate != null) {
-				loadPriceBarFromDesk(endDate, 0);
+				chartEndDate = dataset.getDateAt(endIndex + shiftBars);
 			}
+			return chartEndDate;
 		}
-		if (endDate != null) {
-			chartEndDate = endDate;
-		}
-		return endDate;
+		TPriceBar tail = loadPriceBarFromDesk(chartEndDate, shiftBars);
+		return tail == null ? null : tail.getStartDate();
 	}
 	
 	//Move to endDate
 	public Date shift(Date endDate) {
-		TPriceBar tail = loadPriceBarFromDesk(endDate, 0);
-		if (tail == null) {
-			return null;
-		} else {
-			chartEndDate = tail.getStartDate();
-			return chartEndDate;
+		synchronized (priceBarList) {
+			int endIndex = dataset == null ? -1 : dataset.floorIndex(endDate.getTime());
+			//A date after the window may have bars in the desk that are not loaded yet
+			if (endIndex >= 0 && (endIndex < dataset.getLastIndex() || dataset.getTimeAt(endIndex) == endDate.getTime()) &&
+				isInWindow(endIndex)) {
+				chartEndDate = dataset.getDateAt(endIndex);
+				return chartEndDate;
+			}
 		}
+		TPriceBar tail = loadPriceBarFromDesk(endDate, 0);
+		return tail == null ? null : tail.getStartDate();
 	}
 	
 	public void zoom(double factor) { 
 		axisXScale += factor;
-		loadPriceBarFromDesk(chartEndDate, 0);
+		if (!isInWindow(getViewEndIndex())) {
+			loadPriceBarFromDesk(chartEndDate, 0);
+		}
 	}
 	
+	//Requests a recalculation on the chart worker, the chart is repainted when it is published
 	public void refresh() {
-    	overlayPane.update();
+		chartWorker.request(ChartWorker.FULL);
+	}
+	
+	//Recalculates only the last bar, used when the forming bar is updated by a tick
+	public void refreshTail() {
+		chartWorker.request(ChartWorker.TAIL);
+	}
+	
+	//Publishes the calculated values again after shift() or zoom() moved the viewport inside the window
+	public void refreshView() {
+		chartWorker.request(ChartWorker.VIEW);
+	}
+	
+	//Called by the chart worker
+	public void calculate(Dataset dataset, boolean tailOnly) {
+    	overlayPane.calculate(dataset, tailOnly);
     	for (IndicatorPane indicatorPane : indicatorPaneList) {
-    		indicatorPane.update();
+    		indicatorPane.calculate(dataset, tailOnly);
+    	}
+	}
+	
+	//Called on the event dispatch thread with the dataset the calculation was done on
+	public void publish(Dataset dataset) {
+		locateView(dataset);
+    	overlayPane.publish(dataset);
+    	overlayPane.invalidateLayer();
+    	for (IndicatorPane indicatorPane : indicatorPaneList) {
+    		indicatorPane.publish(dataset);
+    		indicatorPane.invalidateLayer();
     	}    	    	
     	repaint();
 	}
@@ -550,6 +657,10 @@ public class ChartPanel extends BasePanel implements ISignalListener
 	public void onClose() {
 		getTradeDesk().getPriceBars().unsubscribe(this, SignalType.ADD);
 		getTradeDesk().getPriceBars().unsubscribe(this, SignalType.CHANGE);
+		overlayPane.disposeIndicators();
+		for (IndicatorPane indicatorPane : indicatorPaneList) {
+			indicatorPane.getIndicator().dispose();
+		}
 		mMainFrame.getBenchPanel().removeChartPanel(this);
 		PropertyManager.getInstance().removeChartPropSheet(chartSchema.toString());
 	}
@@ -576,17 +687,22 @@ public class ChartPanel extends BasePanel implements ISignalListener
     		loadPriceBarFromDesk(chartEndDate, 0);
             
     	} else if (signal.getType() == SignalType.CHANGE) {
+    		boolean tailChanged = false;
     		synchronized (priceBarList) {
     			if (priceBarList.size() > 0) {
     				TPriceBar tail = priceBarList.get(priceBarList.size() - 1);
+    				tailChanged = priceBar.getStartDate().getTime() == tail.getStartDate().getTime();
     				if (priceBar.getStartDate().getTime() <= tail.getStartDate().getTime() + interval.getMilliSecond()) {
     					priceBarList.set(priceBarList.size() - 1, priceBar);
 		    			if (dataset != null) {
+		    				//Copy on write, the chart worker may be calculating on the current dataset
+		    				Dataset updated = dataset.copy();
 		    				if (ask_bid == TPriceBar.PRICE_ASK) {
-		    					dataset.setDataItem(DataItem.valueOf(priceBar));
+		    					updated.setDataItem(DataItem.valueOf(priceBar));
 		    				} else {
-		    					dataset.setDataItem(DataItem.valueOfB(priceBar));
+		    					updated.setDataItem(DataItem.valueOfB(priceBar));
 		    				}
+		    				dataset = updated;
 		    			}
     				}
     			}
@@ -596,6 +712,10 @@ public class ChartPanel extends BasePanel implements ISignalListener
 			} else if (ask_bid == TPriceBar.PRICE_BID) {
 				overlayPane.getRateMarker().setVal(Double.valueOf(priceBar.getBidClose()));
 			}
+			if (tailChanged) {
+				refreshTail();
+				return;
+			}
 		}
     	
     	refresh();
@@ -709,7 +829,7 @@ public class ChartPanel extends BasePanel implements ISignalListener
 					chartPanel.shift(getShiftFrameBars() * SHIFT_PREV);
 //					prevButton.setEnabled(!chartPanel.isChartBegin());
 //					nextButton.setEnabled(true);
-					chartPanel.refresh();
+					chartPanel.refreshView();
 				}
 	        };
 	        UIManager.getInst().addAction(prevAction,
@@ -729,7 +849,7 @@ public class ChartPanel extends BasePanel implements ISignalListener
 					chartPanel.shift(getShiftFrameBars() * SHIFT_NEXT);
 //					prevButton.setEnabled(true);
 //					nextButton.setEnabled(!chartPanel.isChartEnd());
-					chartPanel.refresh();
+					chartPanel.refreshView();
 				}
 	        };
 	        UIManager.getInst().addAction(nextAction,
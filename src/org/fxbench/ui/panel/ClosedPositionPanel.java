@@ -21,10 +21,15 @@
 package org.fxbench.ui.panel;
 
 import javax.swing.ImageIcon;
+import javax.swing.JScrollBar;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
+import org.fxbench.entity.BaseEntity;
 import org.fxbench.entity.Field.FieldType;
 import org.fxbench.entity.TPosition.FieldDef;
+import org.fxbench.trader.TradingServerSession;
 import org.fxbench.ui.BenchFrame;
 import org.fxbench.ui.auxi.PanelTableModel;
 import org.fxbench.util.FieldDefStub;
@@ -32,6 +37,8 @@ import org.fxbench.util.ResourceManager;
 import org.fxbench.util.properties.PropertySheet;
 import org.fxbench.util.signal.SignalVector;
 
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
 import java.net.URL;
 import java.util.List;
 
@@ -54,6 +61,8 @@ public class ClosedPositionPanel<E> extends TablePanel<E>
 		FieldDef.TRADE_OPEN_TIME, FieldDef.TRADE_CLOSE_TIME/*, FieldDef.TRADE_CQ_TXT,
 		FieldDef.TRADE_OQ_TXT*/};
 	private static final FieldDefStub<FieldDef> fieldDefStub = new FieldDefStub<FieldDef>(FIELDS_DEF, FieldDef.class);
+	
+	private boolean loadingPositions;	//A page of closed positions is being loaded
 
     /**
      * Constructor.
@@ -77,6 +86,46 @@ public class ClosedPositionPanel<E> extends TablePanel<E>
         setRenderers(mCellRenderer, mHeaderRenderer);
         
         fireSorting();
+        
+        //The next page of closed positions is loaded when the table is scrolled to its end
+        getScrollPane().getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+        	public void adjustmentValueChanged(AdjustmentEvent e) {
+        		JScrollBar scrollBar = (JScrollBar)e.getAdjustable();
+        		if (!e.getValueIsAdjusting() && scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum()) {
+        			loadMorePositions();
+        		}
+        	}
+        });
+    }
+    
+    //Reads the next page in the background, the positions are added to the desk on the EDT batch by batch
+    private void loadMorePositions() {
+    	final TradingServerSession session = getTradeDesk().getTradingServerSession();
+    	if (loadingPositions || session == null || !session.hasMoreClosedPositions()) {
+    		return;
+    	}
+    	loadingPositions = true;
+    	new SwingWorker<Object, Object>() {
+    		@Override
+    		protected Object doInBackground() {
+    			session.loadMoreClosedPositions(new TradingServerSession.BatchHandler() {
+    				public void handle(final List<BaseEntity> batch) {
+    					SwingUtilities.invokeLater(new Runnable() {
+    						public void run() {
+    							getTradeDesk().getClosedPositions().addAll(batch);
+    						}
+    					});
+    				}
+    			});
+    			return null;
+    		}
+    		
+    		//Queued after the batches
+    		@Override
+    		protected void done() {
+    			loadingPositions = false;
+    		}
+    	}.execute();
     }
     
     @Override
@@ -83,6 +83,8 @@ import org.fxbench.util.signal.Signaler;
 public abstract class TablePanel<E> extends BasePanel 
 	implements ILocaleListener, IPropertyListener, Observer, ISignalListener
 {	
+	private final static int REFRESH_RATE = 10;	//Maximum table updates per second
+	
 	protected Color mColorBGHeader;
 	protected Color mColorBGSelected;
 	protected Color mColorBGEven;
@@ -253,9 +255,10 @@ public abstract class TablePanel<E> extends BasePanel
             mSimpleTimeFormat.setTimeZone(tz);
         }
         
+        //Only the updates are rate limited, rows are inserted and deleted as soon as they change
         getSignalVector().subscribe(this, SignalType.ADD);
         getSignalVector().subscribe(this, SignalType.REMOVE);
-        getSignalVector().subscribe(this, SignalType.CHANGE);
+        getSignalVector().subscribe(this, SignalType.CHANGE, REFRESH_RATE);
     }
     
     protected String getPropSheetPath () {
@@ -735,18 +738,18 @@ public abstract class TablePanel<E> extends BasePanel
         mTableModel.onSignal(src, aSignal);
         if (mCurSortColumn != -1 && aSignal.getType() == SignalType.CHANGE) {
             Comparator comparator = getComparator();
-            if (comparator != null) {
-                int aIndex = aSignal.getIndex();
+            int aIndex = PanelTableModel.getRowIndex(getSignalVector(), aSignal);
+            if (comparator != null && aIndex != -1) {
                 SignalVector data = getSignalVector();
                 Object updated = data.get(aIndex);
 
-                Object before = aIndex <= 0 && aIndex <= data.size() - 1 ? null : data.get(aIndex - 1);
+                Object before = updated == null || aIndex <= 0 && aIndex <= data.size() - 1 ? null : data.get(aIndex - 1);
                 boolean changed = false;
                 if (before != null) { //1st level test
                     changed = comparator.compare(before, updated) > 0;
                 }
 
-                if (!changed) { //2nd level test
+                if (!changed && updated != null) { //2nd level test
                     Object after = aIndex >= data.size() - 1 ? null : data.get(aIndex + 1);
                     if (after != null) {
                         changed = comparator.compare(after, updated) < 0;
@@ -788,6 +791,11 @@ public abstract class TablePanel<E> extends BasePanel
                     }
                 }
             }
+        } else if (aSignal.getType() == SignalType.BATCH) {
+            //A batch may leave the rows out of the order of the sort column
+            if (mCurSortColumn != -1) {
+                fireSorting();
+            }
         }
         revalidate();
         repaint();
@@ -93,6 +93,47 @@ public class SettingManager
 		return getMarketPropSheet().getIntVal("close_hour");
 	}
 	
+	//Symbols whose higher intervals are built from their m1 bars, separated by commas
+	public String[] getAggregateSymbols() {
+		return splitSymbols(getMarketPropSheet().getStrVal("aggregate_symbols"));
+	}
+	
+	private static String[] splitSymbols(String symbols) {
+		if (symbols == null || symbols.trim().length() == 0) {
+			return new String[0];
+		}
+		String[] symbolArray = symbols.split(",");
+		for (int i = 0; i < symbolArray.length; i++) {
+			symbolArray[i] = symbolArray[i].trim();
+		}
+		return symbolArray;
+	}
+	
+	//Memory budget of the indicator results shared between charts, in megabytes
+	public int getIndicatorCacheMB() {
+		return getMarketPropSheet().getIntVal("indicator_cache_mb");
+	}
+	
+	//Symbols replayed from the local history after a local login, separated by commas
+	public String[] getReplaySymbols() {
+		return splitSymbols(getMarketPropSheet().getStrVal("replay_symbols"));
+	}
+	
+	//Interval of the replayed files, T for the tick files
+	public String getReplayInterval() {
+		return getMarketPropSheet().getStrVal("replay_interval");
+	}
+	
+	//Replay speed as a multiple of real time, 0 for as fast as possible
+	public int getReplaySpeed() {
+		return getMarketPropSheet().getIntVal("replay_speed");
+	}
+	
+	//Closed positions loaded at a time from the local database, 0 for all of them at login
+	public int getClosedPositionPageSize() {
+		return getMarketPropSheet().getIntVal("closed_position_page_size");
+	}
+	
 	//reserve
 	public boolean marketIsOpen() {
 		int openWday = getMarketOpenWday();
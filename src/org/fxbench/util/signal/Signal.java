@@ -15,6 +15,7 @@
  */
 package org.fxbench.util.signal;
 
+import java.util.List;
 
 /**
  * AddSignal class
@@ -31,6 +32,7 @@ public class Signal {
     private Object element;
     private Object newElement;
     private Object oldElement;
+    private List<?> elements;
     /**
      * Index of added element
      */
@@ -77,6 +79,13 @@ public class Signal {
         return oldElement;
     }
     
+    /**
+     * Gets the elements of a BATCH signal, null for the other signals.
+     */
+    public List<?> getElements() {
+        return elements;
+    }
+    
     /**
      * Gets index where element was added.
      */
@@ -102,9 +111,19 @@ public class Signal {
     public static Signal newRemoveSignal(int index, Object element) {
     	return new Signal(SignalType.REMOVE, index, element);
     }
+    
+    /**
+     * Many elements were added at once, or the whole content was replaced.
+     * The listeners read the vector again instead of one row at a time.
+     */
+    public static Signal newBatchSignal(List<?> elements) {
+    	Signal signal = new Signal(SignalType.BATCH, 0, null);
+    	signal.elements = elements;
+    	return signal;
+    }
    
     public enum SignalType {
-    	ADD, CHANGE, REMOVE;
+    	ADD, CHANGE, REMOVE, BATCH;
     	public String getName() {
 			return name();
 		}
@@ -0,0 +1,180 @@
+/*
+* Copyright 2020 FXDaemon
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.fxbench.util.signal;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.Timer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.fxbench.entity.BaseEntity;
+import org.fxbench.util.signal.Signal.SignalType;
+
+/**
+ * Delivers the signals of a Signaler to a listener on the event dispatch thread,
+ * at most maxRate times per second.<br>
+ * Between two flushes only the latest CHANGE signal per key is kept, the key being
+ * the entity key of the element. ADD, REMOVE and BATCH signals are delivered in the order
+ * they were fired, and a CHANGE fired after them is never merged into one fired before.<br>
+ * Created by Signaler.subscribe(listener, type, maxRate).
+ */
+public class SignalDispatcher implements ISignalListener
+{
+	private final static Log logger = LogFactory.getLog(SignalDispatcher.class);
+
+	//The listener is held weakly so that it can still be collected like a directly subscribed one
+	private final WeakReference<ISignalListener> listenerRef;
+	private final Timer timer;
+	private final int flushInterval;
+
+	private final List<Signal> signals;				//Pending signals in the order they were fired
+	private final List<Signaler> sources;			//Source of each pending signal
+	private final Map<Object, Integer> changeIndexes;//Key of a pending CHANGE signal -> index in signals
+	private long lastFlushTime;
+	private int subscriptions;
+
+	private long deliveredCount;	//Signals passed to the listener
+	private long mergedCount;		//CHANGE signals replaced by a later one for the same key
+	private long droppedCount;		//Pending signals discarded because the listener went away
+
+	SignalDispatcher(ISignalListener listener, int maxRate) {
+		listenerRef = new WeakReference<ISignalListener>(listener);
+		flushInterval = 1000 / Math.max(1, maxRate);
+		signals = new ArrayList<Signal>();
+		sources = new ArrayList<Signaler>();
+		changeIndexes = new HashMap<Object, Integer>();
+		timer = new Timer(flushInterval, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				flush();
+			}
+		});
+		timer.setRepeats(false);
+	}
+
+	public void onSignal(Signaler src, Signal signal) {
+		if (signal == null) {
+			return;
+		}
+		synchronized (this) {
+			if (signal.getType() == SignalType.CHANGE) {
+				Object key = getKey(signal);
+				Integer index = changeIndexes.get(key);
+				if (index != null) {
+					signals.set(index.intValue(), signal);
+					sources.set(index.intValue(), src);
+					mergedCount++;
+					return;
+				}
+				changeIndexes.put(key, Integer.valueOf(signals.size()));
+			} else {
+				changeIndexes.clear();
+			}
+			signals.add(signal);
+			sources.add(src);
+			if (signals.size() == 1) {
+				long delay = lastFlushTime + flushInterval - System.currentTimeMillis();
+				timer.setInitialDelay((int)Math.max(0, Math.min(delay, flushInterval)));
+				timer.restart();
+			}
+		}
+	}
+
+	private Object getKey(Signal signal) {
+		Object element = signal.getElement();
+		if (element instanceof BaseEntity) {
+			String key = ((BaseEntity)element).getKey();
+			if (key != null) {
+				return key;
+			}
+		}
+		return Integer.valueOf(signal.getIndex());
+	}
+
+	//Runs on the event dispatch thread
+	private void flush() {
+		List<Signal> flushSignals;
+		List<Signaler> flushSources;
+		synchronized (this) {
+			flushSignals = new ArrayList<Signal>(signals);
+			flushSources = new ArrayList<Signaler>(sources);
+			signals.clear();
+			sources.clear();
+			changeIndexes.clear();
+			lastFlushTime = System.currentTimeMillis();
+		}
+		ISignalListener listener = listenerRef.get();
+		if (listener == null) {
+			synchronized (this) {
+				droppedCount += flushSignals.size();
+			}
+			return;
+		}
+		for (int i = 0; i < flushSignals.size(); i++) {
+			try {
+				listener.onSignal(flushSources.get(i), flushSignals.get(i));
+			} catch (Exception e) {
+				logger.error(e.getMessage(), e);
+			}
+		}
+		synchronized (this) {
+			deliveredCount += flushSignals.size();
+		}
+	}
+
+	synchronized void addSubscription() {
+		subscriptions++;
+	}
+
+	/**
+	 * @return true if no signal type is subscribed any more, the pending signals are then dropped
+	 */
+	synchronized boolean removeSubscription() {
+		subscriptions--;
+		if (subscriptions > 0) {
+			return false;
+		}
+		timer.stop();
+		droppedCount += signals.size();
+		signals.clear();
+		sources.clear();
+		changeIndexes.clear();
+		return true;
+	}
+
+	public synchronized long getDeliveredCount() {
+		return deliveredCount;
+	}
+
+	public synchronized long getMergedCount() {
+		return mergedCount;
+	}
+
+	public synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+
+	public synchronized int getPendingCount() {
+		return signals.size();
+	}
+}
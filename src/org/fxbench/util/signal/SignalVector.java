@@ -33,6 +33,9 @@ import org.fxbench.entity.Field;
 public abstract class SignalVector extends Signaler {
 	protected final List<BaseEntity> listEntity = new ArrayList<BaseEntity>();
     protected final Map<String, BaseEntity> mapEntity = new HashMap<String, BaseEntity>();
+    //Key -> index in listEntity, valid below validIndexes only, the rest is rebuilt on demand
+    private final Map<String, Integer> mapIndex = new HashMap<String, Integer>();
+    private int validIndexes = 0;
     private Comparator comparator = null;
     
     public boolean isEmpty() {
@@ -51,6 +54,8 @@ public abstract class SignalVector extends Signaler {
     	synchronized (listEntity) {
     		listEntity.clear();
     		mapEntity.clear();
+    		mapIndex.clear();
+    		validIndexes = 0;
     	}
     }
     
@@ -69,10 +74,42 @@ public abstract class SignalVector extends Signaler {
     	synchronized (listEntity) {
 	    	listEntity.add(index, entity);
 	    	mapEntity.put(entity.getKey(), entity);
+	    	invalidateIndexes(index);
     	}
     	notify(Signal.newAddSignal(index, entity));
     }
     
+    /**
+     * Adds entityList with a single BATCH signal. The list is sorted once with the
+     * comparator instead of an insertion per entity.
+     */
+    public void addAll(List<? extends BaseEntity> entityList) {
+    	if (entityList.isEmpty()) {
+    		return;
+    	}
+    	synchronized (listEntity) {
+    		invalidateIndexes(listEntity.size());
+    		listEntity.addAll(entityList);
+    		for (BaseEntity entity : entityList) {
+    			mapEntity.put(entity.getKey(), entity);
+    		}
+    		sort();
+    	}
+    	notify(Signal.newBatchSignal(new ArrayList<BaseEntity>(entityList)));
+    }
+    
+    /**
+     * Replaces the content with entityList, with a single BATCH signal.
+     */
+    public void replaceAll(List<? extends BaseEntity> entityList) {
+    	clear();
+    	if (entityList.isEmpty()) {
+    		notify(Signal.newBatchSignal(new ArrayList<BaseEntity>()));
+    	} else {
+    		addAll(entityList);
+    	}
+    }
+    
     /**
      * Sends CHANGE signal. Should be called when some element was changed directly (not with set() method call).
      */
@@ -123,6 +160,12 @@ public abstract class SignalVector extends Signaler {
     		synchronized (listEntity) {
     			oldEntity = listEntity.set(index, entity);
     			mapEntity.put(entity.getKey(), entity);
+    			if (oldEntity != null && !oldEntity.getKey().equals(entity.getKey())) {
+    				mapIndex.remove(oldEntity.getKey());
+    			}
+    			if (index < validIndexes) {
+    				mapIndex.put(entity.getKey(), Integer.valueOf(index));
+    			}
     		}
         	notify(Signal.newChangeSignal(index, entity, oldEntity));
         } catch (Exception ex) {
@@ -131,19 +174,39 @@ public abstract class SignalVector extends Signaler {
         return oldEntity;
     }
 
+    /**
+     * Index of the entity of key, -1 if there is none.<br>
+     * The indexes are kept in a map, an insertion or a removal only invalidates the indexes
+     * from its position on, which are rebuilt by the next lookup past it. Updates of existing
+     * entities, e.g. on every tick, find their index without a scan.
+     */
     public int indexOf(String key) {
-    	int index = -1;
-    	int i = 0;
     	synchronized (listEntity) {
-	        for (BaseEntity e : listEntity) {
-	        	if (e.getKey().equals(key)){
-	        		index = i;
-	        		break;
-	        	}
-	        	i++;
-	        }
+    		if (!mapEntity.containsKey(key)) {
+    			return -1;
+    		}
+    		//An index left over from before an invalidation is checked against the list
+    		Integer index = mapIndex.get(key);
+    		if (index != null && index.intValue() < validIndexes
+    				&& listEntity.get(index.intValue()).getKey().equals(key)) {
+    			return index.intValue();
+    		}
+    		while (validIndexes < listEntity.size()) {
+    			String validKey = listEntity.get(validIndexes).getKey();
+    			mapIndex.put(validKey, Integer.valueOf(validIndexes++));
+    			if (validKey.equals(key)) {
+    				return validIndexes - 1;
+    			}
+    		}
+    		return -1;
+    	}
+    }
+    
+    //Indexes from index on have moved
+    private void invalidateIndexes(int index) {
+    	if (index < validIndexes) {
+    		validIndexes = index;
     	}
-        return index;
     }
     
     public int indexOf(BaseEntity entity) {
@@ -161,7 +224,9 @@ public abstract class SignalVector extends Signaler {
 		    	entity = listEntity.remove(index);
 		    	if (entity instanceof BaseEntity) {
 		    		mapEntity.remove(entity.getKey());
+		    		mapIndex.remove(entity.getKey());
 		    	}
+		    	invalidateIndexes(index);
     		}
 	    	notify(Signal.newRemoveSignal(index, entity));
     	} catch (Exception ex) {
@@ -192,6 +257,7 @@ public abstract class SignalVector extends Signaler {
         if (comparator != null) {
         	synchronized (listEntity) {
         		Collections.sort(listEntity, comparator);
+        		invalidateIndexes(0);
         	}
         }
     }
@@ -20,6 +20,9 @@
  */
 package org.fxbench.util.signal;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import org.fxbench.util.signal.Signal.SignalType;
 
 /**
@@ -31,6 +34,8 @@ public class Signaler {
     private final WeakListener<ISignalListener> mAddListeners = new WeakListener<ISignalListener>();
     private final WeakListener<ISignalListener> mChangeListeners = new WeakListener<ISignalListener>();
     private final WeakListener<ISignalListener> mRemoveListeners = new WeakListener<ISignalListener>();
+    //Rate limited listeners, the dispatchers are kept as long as their listeners are alive
+    private final Map<ISignalListener, SignalDispatcher> mDispatchers = new WeakHashMap<ISignalListener, SignalDispatcher>();
 
     /**
      * This methods notifies all listeners that are subscribed for the signal type the same as aSignal.
@@ -39,7 +44,8 @@ public class Signaler {
     public void notify(Signal aSignal) {
         try {
             if (aSignal != null) {
-                if (SignalType.ADD.equals(aSignal.getType())) {
+                //A BATCH signal is mostly additions, it goes to the ADD listeners
+                if (SignalType.ADD.equals(aSignal.getType()) || SignalType.BATCH.equals(aSignal.getType())) {
                     synchronized (mAddListeners) {
                         for (ISignalListener listener : mAddListeners) {
                             listener.onSignal(this, aSignal);
@@ -88,6 +94,40 @@ public class Signaler {
         }
     }
 
+    /**
+     * This method subscribes the listener for receive signals of the specified type
+     * on the event dispatch thread, at most aMaxRate times per second.
+     * CHANGE signals fired in between are merged, see SignalDispatcher.
+     * NOTE: for each subscribe should be unsubscribe
+     * @param aListener listener
+     * @param aSignalType type
+     * @param aMaxRate maximum deliveries per second
+     */
+    public void subscribe(ISignalListener aListener, SignalType aSignalType, int aMaxRate) {
+        if (aListener != null && aSignalType != null) {
+            SignalDispatcher dispatcher;
+            synchronized (mDispatchers) {
+                dispatcher = mDispatchers.get(aListener);
+                if (dispatcher == null) {
+                    dispatcher = new SignalDispatcher(aListener, aMaxRate);
+                    mDispatchers.put(aListener, dispatcher);
+                }
+                dispatcher.addSubscription();
+            }
+            subscribe(dispatcher, aSignalType);
+        }
+    }
+
+    /**
+     * Returns the dispatcher of a listener subscribed with a maximum rate, null otherwise.
+     * @param aListener listener
+     */
+    public SignalDispatcher getDispatcher(ISignalListener aListener) {
+        synchronized (mDispatchers) {
+            return mDispatchers.get(aListener);
+        }
+    }
+
     /**
      * This method unsubscribes the listener from receive signals of the specified type.
      * NOTE: for each subscribe should be unsubscribe
@@ -96,19 +136,35 @@ public class Signaler {
      */
     public void unsubscribe(ISignalListener aListener, SignalType aSignalType) {
         if (aListener != null && aSignalType != null) {
-            if (aSignalType == SignalType.ADD) {
-                synchronized (mAddListeners) {
-                    mAddListeners.remove(aListener);
-                }
-            } else if (aSignalType == SignalType.CHANGE) {
-                synchronized (mChangeListeners) {
-                    mChangeListeners.remove(aListener);
-                }
-            } else if (aSignalType == SignalType.REMOVE) {
-                synchronized (mRemoveListeners) {
-                    mRemoveListeners.remove(aListener);
+            //A listener may be subscribed directly to some types and through its dispatcher to others
+            if (remove(aListener, aSignalType)) {
+                return;
+            }
+            synchronized (mDispatchers) {
+                SignalDispatcher dispatcher = mDispatchers.get(aListener);
+                if (dispatcher != null && remove(dispatcher, aSignalType)) {
+                    if (dispatcher.removeSubscription()) {
+                        mDispatchers.remove(aListener);
+                    }
                 }
             }
         }
     }
+
+    private boolean remove(ISignalListener aListener, SignalType aSignalType) {
+        if (aSignalType == SignalType.ADD) {
+            synchronized (mAddListeners) {
+                return mAddListeners.remove(aListener);
+            }
+        } else if (aSignalType == SignalType.CHANGE) {
+            synchronized (mChangeListeners) {
+                return mChangeListeners.remove(aListener);
+            }
+        } else if (aSignalType == SignalType.REMOVE) {
+            synchronized (mRemoveListeners) {
+                return mRemoveListeners.remove(aListener);
+            }
+        }
+        return false;
+    }
 }
@@ -43,7 +43,12 @@ public class WeakListener<E> implements Iterable<E> {
         return mListeners.keySet().iterator();
     }
 
-    public void remove(E aElement) {
-        mListeners.remove(aElement);
+    //true if aElement was a listener
+    public boolean remove(E aElement) {
+        if (mListeners.containsKey(aElement)) {
+            mListeners.remove(aElement);
+            return true;
+        }
+        return false;
     }
 }